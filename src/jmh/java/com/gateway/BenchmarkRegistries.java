@@ -0,0 +1,58 @@
+package com.gateway;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Registries shaped like real configurations for the benchmarks
+ * Each resource contributes a list route, an item route with a :param and a nested route,
+ * e.g. /api/v1/resource7, /api/v1/resource7/:id, /api/v1/resource7/:id/items/:itemId
+ */
+final class BenchmarkRegistries {
+
+	static final String SERVICE = "academic";
+
+	private BenchmarkRegistries() {
+	}
+
+	static Registry.Service service(int routes) {
+		Registry.Service service = new Registry.Service();
+		service.setName(SERVICE);
+		service.setHost("localhost");
+		service.setPort(8080);
+		service.setDefaultExposure(Registry.Exposure.PROTECTED);
+		for (int i = 0; service.getRoutes().size() < routes; i++) {
+			String base = "/api/v1/resource" + i;
+			add(service, "GET", base, Registry.Exposure.PUBLIC);
+			add(service, "GET", base + "/:id", Registry.Exposure.PUBLIC);
+			add(service, "POST", base + "/:id/items/:itemId", Registry.Exposure.PROTECTED);
+		}
+		service.getRoutes().subList(routes, service.getRoutes().size()).clear();
+		return service;
+	}
+
+	/*
+	 * Request paths against service(routes), a mix of first, middle and last routes plus misses
+	 * Always 16 paths so callers can cycle with a mask
+	 */
+	static String[] paths(int routes) {
+		int resources = Math.max(1, routes / 3);
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			int resource = i * (resources - 1) / 3;
+			paths.add("/api/v1/resource" + resource);
+			paths.add("/api/v1/resource" + resource + "/42");
+			paths.add("/api/v1/resource" + resource + "/42/items/7");
+			paths.add("/api/v1/unknown" + i + "/42");
+		}
+		return paths.toArray(String[]::new);
+	}
+
+	private static void add(Registry.Service service, String method, String path, Registry.Exposure exposure) {
+		Registry.Route route = new Registry.Route();
+		route.setMethod(method);
+		route.setPath(path);
+		route.setExposure(exposure);
+		service.getRoutes().add(route);
+	}
+}
@@ -0,0 +1,43 @@
+package com.gateway;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Internal network check of @IpRanges on typical client addresses
+ * The ranges are the default gateway.trust.internal-networks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpRangesBenchmarks {
+
+	@Param({"10.1.2.3", "172.20.0.9", "203.0.113.7", "::1", "fd00:1:2::7", "2001:db8::1"})
+	String ip;
+
+	private IpRanges internal;
+
+	@Setup
+	public void setup() {
+		internal = IpRanges.of(new GatewayProperties().getTrust().getInternalNetworks());
+	}
+
+	@Benchmark
+	public boolean isInternal() {
+		return internal.contains(ip);
+	}
+}
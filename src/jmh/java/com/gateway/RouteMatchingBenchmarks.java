@@ -0,0 +1,77 @@
+package com.gateway;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Route lookup for one request, linear Validator.PatternMatcher scan vs the compiled RouteTable
+ * The scan is how routes were matched before the table, it is kept as the baseline
+ * compile is the work a registry reload does per service before the new snapshot is swapped in
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMatchingBenchmarks {
+
+	@Param({"10", "100", "1000"})
+	int routes;
+
+	private Registry.Service service;
+	private RouteTable table;
+	private Validator validator;
+	private String[] paths;
+	private int next;
+
+	@Setup
+	public void setup() {
+		service = BenchmarkRegistries.service(routes);
+		table = RouteTable.compile(List.of(service));
+		validator = new Validator(null);
+		paths = BenchmarkRegistries.paths(routes);
+	}
+
+	private String nextPath() {
+		return paths[next++ & (paths.length - 1)];
+	}
+
+	@Benchmark
+	public Registry.Route patternMatcherScan() {
+		String path = nextPath();
+		for (Registry.Route route : service.getRoutes()) {
+			if (validator.PatternMatcher(route.getPath(), path)) {
+				return route;
+			}
+		}
+		return null;
+	}
+
+	@Benchmark
+	public Registry.Route routeTableFind() {
+		return table.findRoute(BenchmarkRegistries.SERVICE, "GET", nextPath());
+	}
+
+	@Benchmark
+	public RouteMatch routeTableMatch() {
+		return table.match(BenchmarkRegistries.SERVICE, "GET", nextPath());
+	}
+
+	@Benchmark
+	public RouteTable compile() {
+		return RouteTable.compile(List.of(service));
+	}
+}
@@ -0,0 +1,124 @@
+package com.gateway;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * End to end requests per second through a running gateway to an in-process stub upstream
+ * direct is the same request sent straight to the stub, the gap is what the gateway costs
+ * The registry has @routes routes so route matching cost shows up at scale
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+public class ThroughputBenchmarks {
+
+	private static final byte[] BODY = "{\"id\":42,\"name\":\"institute\"}".getBytes(StandardCharsets.UTF_8);
+
+	@Param({"10", "1000"})
+	int routes;
+
+	private HttpServer upstream;
+	private ConfigurableApplicationContext gateway;
+	private HttpClient client;
+	private HttpRequest throughGateway;
+	private HttpRequest direct;
+
+	@Setup
+	public void setup() throws IOException {
+		upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+		upstream.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		upstream.createContext("/", exchange -> {
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, BODY.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(BODY);
+			}
+		});
+		upstream.start();
+		int upstreamPort = upstream.getAddress().getPort();
+
+		SpringApplicationBuilder builder = new SpringApplicationBuilder(GatewayApplication.class)
+				.properties(
+						"server.port=0",
+						"spring.threads.virtual.enabled=true",
+						"logging.level.com.gateway=warn",
+						"services.list[0].name=" + BenchmarkRegistries.SERVICE,
+						"services.list[0].host=localhost",
+						"services.list[0].port=" + upstreamPort,
+						"services.list[0].default-exposure=private");
+		Registry.Service service = BenchmarkRegistries.service(routes);
+		for (int i = 0; i < service.getRoutes().size(); i++) {
+			Registry.Route route = service.getRoutes().get(i);
+			builder.properties(
+					"services.list[0].routes[" + i + "].path=" + route.getPath(),
+					"services.list[0].routes[" + i + "].method=" + route.getMethod(),
+					"services.list[0].routes[" + i + "].exposure=" + route.getExposure().name().toLowerCase());
+		}
+		gateway = builder.run();
+		int gatewayPort = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+
+		client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.build();
+		String path = "/api/v1/resource" + Math.max(0, routes / 3 - 1) + "/42";
+		throughGateway = HttpRequest.newBuilder(
+				URI.create("http://localhost:" + gatewayPort + "/" + BenchmarkRegistries.SERVICE + path)).GET().build();
+		direct = HttpRequest.newBuilder(URI.create("http://localhost:" + upstreamPort + path)).GET().build();
+	}
+
+	@TearDown
+	public void tearDown() {
+		gateway.close();
+		upstream.stop(0);
+	}
+
+	@Benchmark
+	public int gateway() throws IOException, InterruptedException {
+		return send(throughGateway);
+	}
+
+	@Benchmark
+	public int direct() throws IOException, InterruptedException {
+		return send(direct);
+	}
+
+	private int send(HttpRequest request) throws IOException, InterruptedException {
+		int status = client.send(request, HttpResponse.BodyHandlers.ofByteArray()).statusCode();
+		if (status != 200) {
+			throw new IllegalStateException("Unexpected status " + status);
+		}
+		return status;
+	}
+}
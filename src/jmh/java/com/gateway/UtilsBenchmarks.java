@@ -0,0 +1,51 @@
+package com.gateway;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Per request string handling of @Utils on typical url shapes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmarks {
+
+	@Param({
+			"/academic",
+			"/academic/api/institutes/42",
+			"/academic-service/api/v1/institutes/42/students/7/courses/3/grades"
+	})
+	String url;
+
+	private Utils utils;
+
+	@Setup
+	public void setup() {
+		utils = new Utils(null, null, null, null);
+	}
+
+	@Benchmark
+	public String extractServiceNameFromUrl() {
+		return utils.extractServiceNameFromUrl(url);
+	}
+
+	@Benchmark
+	public String removeServiceNameFromUrl() {
+		return utils.removeServiceNameFromUrl(url);
+	}
+}
@@ -0,0 +1,258 @@
+package com.gateway;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * AccessLog writes one JSON line per request, see gateway.access-log
+ * The request thread only fills an @Entry and puts it in a @RingBuffer, formatting and I/O happen on
+ * a background writer that drains the buffer in batches and flushes once per batch
+ * When the buffer is full the entry is dropped and counted, or with overflow BLOCK the request waits for room
+ * as long as the writer runs, once it stopped or died on an I/O error entries that do not fit are dropped
+ *
+ * Entries are written once the body reached the client, so bytes and duration cover the whole answer
+ * route is the template of the matched route, the raw path is left out as it may carry ids
+ */
+@Component
+public class AccessLog {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessLog.class);
+    private static final int BATCH = 1024;
+
+    private final GatewayProperties.AccessLog settings;
+    private final TrustedNetworks trustedNetworks;
+    private final RingBuffer<Entry> buffer;
+    private final OutputStream out;
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+
+    public AccessLog(GatewayProperties properties, TrustedNetworks trustedNetworks) throws IOException {
+        this.settings = properties.getAccessLog();
+        this.trustedNetworks = trustedNetworks;
+        this.buffer = new RingBuffer<>(settings.getBufferSize());
+        if (!settings.isEnabled()) {
+            this.out = null;
+            this.writer = null;
+            return;
+        }
+        this.out = new BufferedOutputStream(settings.getFile() == null || settings.getFile().isBlank()
+                ? new FileOutputStream(FileDescriptor.out)
+                : Files.newOutputStream(Path.of(settings.getFile()), StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+                64 * 1024);
+        this.writer = new Thread(this::drainLoop, "access-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /*
+     * One finished request, service and route are null when no route matched
+     */
+    public record Entry(long timestamp, String service, String route, String method, int status,
+                        long bytes, long durationMicros, long upstreamMicros, long authMicros, String clientIp) {
+    }
+
+    /*
+     * Returns response with its body wrapped so the entry is logged once the body was written
+     * Answers without a streamed body are logged right away
+     */
+    public ResponseEntity<?> wrap(RequestStats stats, HttpServletRequest request, int status, ResponseEntity<?> response) {
+        if (writer == null) {
+            return response;
+        }
+        String clientIp = trustedNetworks.clientIp(request);
+        if (!(response.getBody() instanceof StreamingResponseBody body)) {
+            append(entry(stats, request.getMethod(), clientIp, status, length(response.getBody())));
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders()).body((StreamingResponseBody) stream -> {
+            CountingOutputStream counting = new CountingOutputStream(stream);
+            try {
+                body.writeTo(counting);
+            } finally {
+                append(entry(stats, request.getMethod(), clientIp, status, counting.count));
+            }
+        });
+    }
+
+    /*
+     * Logs a request of the reactive engine, called by @ReactiveService once the body was written
+     * It runs on an event loop that must never wait, a full buffer drops the entry even with overflow BLOCK
+     */
+    public void log(RequestStats stats, String method, String clientIp, int status, long bytes) {
+        if (writer != null && !buffer.offer(entry(stats, method, clientIp, status, bytes))) {
+            dropped.increment();
+        }
+    }
+
+    private static long length(Object body) {
+        if (body == null) {
+            return 0;
+        }
+        if (body instanceof byte[] bytes) {
+            return bytes.length;
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static Entry entry(RequestStats stats, String method, String clientIp, int status, long bytes) {
+        RouteMatch match = stats.getMatch();
+        String service = match != null ? match.getService().getName() : null;
+        String route = match != null && match.getRoute() != null ? match.getRoute().getPath() : null;
+        return new Entry(System.currentTimeMillis(), service, route, method, status,
+                bytes, TimeUnit.NANOSECONDS.toMicros(stats.elapsedNanos()),
+                TimeUnit.NANOSECONDS.toMicros(stats.getUpstreamNanos()), TimeUnit.NANOSECONDS.toMicros(stats.getAuthNanos()),
+                clientIp);
+    }
+
+    void append(Entry entry) {
+        if (buffer.offer(entry)) {
+            return;
+        }
+        if (settings.getOverflow() == GatewayProperties.AccessLogOverflow.DROP) {
+            dropped.increment();
+            return;
+        }
+        while (!buffer.offer(entry)) {
+            if (!running) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    public long getDropped() { return dropped.sum(); }
+
+    /*
+     * Stops taking entries and writes out what is buffered
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void drainLoop() {
+        long idleNanos = Math.max(1, settings.getFlushInterval().toNanos());
+        StringBuilder line = new StringBuilder(256);
+        try {
+            while (true) {
+                int written = 0;
+                Entry entry;
+                while (written < BATCH && (entry = buffer.poll()) != null) {
+                    line.setLength(0);
+                    format(entry, line);
+                    out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+                    written++;
+                }
+                if (written > 0) {
+                    out.flush();
+                } else if (!running) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(idleNanos);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Access log writer stopped: {}", e.getMessage());
+        } finally {
+            // nothing drains the buffer anymore, BLOCK must not wait for room that never comes
+            running = false;
+            try {
+                out.flush();
+                if (settings.getFile() != null && !settings.getFile().isBlank()) {
+                    out.close();
+                }
+            } catch (IOException e) {
+                log.error("Failed to close access log: {}", e.getMessage());
+            }
+        }
+    }
+
+    static void format(Entry entry, StringBuilder line) {
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(entry.timestamp())).append('"');
+        field(line, "service", entry.service());
+        field(line, "route", entry.route());
+        field(line, "method", entry.method());
+        line.append(",\"status\":").append(entry.status());
+        line.append(",\"bytes\":").append(entry.bytes());
+        line.append(",\"duration_us\":").append(entry.durationMicros());
+        line.append(",\"upstream_us\":").append(entry.upstreamMicros());
+        line.append(",\"auth_us\":").append(entry.authMicros());
+        field(line, "client_ip", entry.clientIp());
+        line.append("}\n");
+    }
+
+    private static void field(StringBuilder line, String name, String value) {
+        line.append(",\"").append(name).append("\":");
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.gateway;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * Fan out endpoint, kept apart from the catch all mapping of @Controller like @MetricsController
+ * Path is gateway.batch.path, the more specific mapping wins over /** for POST
+ * Each part is handled by @Service, see @Batches for the format of the body and of the answer
+ * The batch body is capped by gateway.forwarding.max-body-size like any request body, larger ones get 413
+ */
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = "Authorization")
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class BatchController {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchController.class);
+
+    private final Service service;
+    private final Batches batches;
+
+    @Autowired
+    public BatchController(Service service, Batches batches) {
+        this.service = service;
+        this.batches = batches;
+    }
+
+    @PostMapping("${gateway.batch.path:/_gateway/batch}")
+    public ResponseEntity<StreamingResponseBody> batch(HttpServletRequest request) throws IOException {
+        List<Batches.Part> parts;
+        try {
+            parts = batches.parse(batches.readBody(request));
+        } catch (Forwarder.PayloadTooLargeException e) {
+            log.warn("Rejected batch: {}", e.getMessage());
+            return Controller.streaming(ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected batch: {}", e.getMessage());
+            return Controller.streaming(ResponseEntity.badRequest().body(e.getMessage()));
+        }
+        return ResponseEntity.ok().contentType(Batches.NDJSON).body(batches.run(request, parts, service::forwardRequest));
+    }
+}
@@ -0,0 +1,551 @@
+package com.gateway;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/*
+ * Batches fans one client request out to several gateway requests, served by @BatchController
+ * The body lists the parts, each with a method, a /service/path, headers and a body (text or any JSON value):
+ * {"requests": [{"id": "institute", "method": "GET", "path": "/academic/api/institutes/1", "headers": {"Accept": "application/json"}}]}
+ * Every part is handled like a request of its own by @Service: exposure, auth, rate limits, concurrency limits,
+ * metrics and access log
+ *
+ * Parts run concurrently on virtual threads, at most gateway.batch.max-concurrency of them at once
+ * The answer is one JSON line per part in the order they finish, written as soon as each part is done:
+ * {"index": 0, "id": "institute", "status": 200, "headers": {...}, "body": "..."}, bodies that are not text go
+ * out base64 encoded as bodyBase64
+ * Parts still running once the batch timeout is over are cancelled, they and the parts not started yet get 504
+ *
+ * Parts inherit the token, cookies, client address and forwarded header of the batch request, their own values
+ * for these are ignored so a part can neither borrow another identity nor another address
+ * PROTECTED parts share their verdicts, see @Verdicts
+ */
+@Component
+public class Batches {
+
+    private static final Logger log = LoggerFactory.getLogger(Batches.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    /*
+     * Part headers that are dropped, the batch request decides these
+     */
+    private static final Set<String> IGNORED_HEADERS = Set.of(
+            "host", "content-length", "transfer-encoding", "connection", "accept-encoding",
+            "authorization", "cookie", "forwarded", "x-forwarded-for");
+
+    /*
+     * Headers of the batch request every part carries
+     */
+    private static final List<String> INHERITED_HEADERS = List.of(HttpHeaders.AUTHORIZATION, HttpHeaders.COOKIE);
+
+    /*
+     * Answer headers that describe the framing of the part, not its content
+     */
+    private static final Set<String> FRAMING_HEADERS = Set.of("content-length", "transfer-encoding", "connection");
+
+    private final GatewayProperties.Batch settings;
+    private final long maxBodySize;
+    private final String forwardedHeader;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /*
+     * Handles one part, Service.forwardRequest in the gateway
+     */
+    @FunctionalInterface
+    public interface Handler {
+        ResponseEntity<?> handle(HttpServletRequest request);
+    }
+
+    /*
+     * One sub request of a batch
+     */
+    public record Part(String id, String method, String path, HttpHeaders headers, byte[] body) {
+    }
+
+    public Batches(GatewayProperties properties) {
+        this.settings = properties.getBatch();
+        this.maxBodySize = properties.getForwarding().getMaxBodySize().toBytes();
+        this.forwardedHeader = properties.getTrust().getForwardedHeader();
+    }
+
+    /*
+     * Body of the batch request, capped by gateway.forwarding.max-body-size like any other request body
+     * Throws Forwarder.PayloadTooLargeException from the Content-Length or once the limit is read past
+     */
+    public byte[] readBody(HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > maxBodySize) {
+            throw new Forwarder.PayloadTooLargeException(maxBodySize);
+        }
+        InputStream in = request.getInputStream();
+        byte[] body = in.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxBodySize + 1));
+        if (body.length > maxBodySize) {
+            throw new Forwarder.PayloadTooLargeException(maxBodySize);
+        }
+        return body;
+    }
+
+    /*
+     * Reads the parts of a batch body, throws IllegalArgumentException naming everything wrong with it
+     */
+    public List<Part> parse(byte[] body) {
+        JsonNode root;
+        try {
+            root = body != null && body.length > 0 ? MAPPER.readTree(body) : null;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Batch body is not valid JSON");
+        }
+        JsonNode requests = root != null ? root.get("requests") : null;
+        if (requests == null || !requests.isArray() || requests.isEmpty()) {
+            throw new IllegalArgumentException("Batch needs a non empty requests array");
+        }
+        if (requests.size() > settings.getMaxRequests()) {
+            throw new IllegalArgumentException("Batch has " + requests.size() + " requests, at most "
+                    + settings.getMaxRequests() + " are allowed");
+        }
+
+        List<Part> parts = new ArrayList<>(requests.size());
+        List<String> problems = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            JsonNode request = requests.get(i);
+            String at = "requests[" + i + "]";
+            if (!request.isObject()) {
+                problems.add(at + " must be an object");
+                continue;
+            }
+            String method = request.hasNonNull("method") ? request.get("method").asText().toUpperCase(Locale.ROOT) : "GET";
+            if (!Registry.METHODS.contains(method)) {
+                problems.add(at + ".method " + method + " is not an http method");
+            }
+            String path = request.hasNonNull("path") ? request.get("path").asText() : null;
+            if (path == null || !path.startsWith("/")) {
+                problems.add(at + ".path must start with /");
+            }
+
+            HttpHeaders headers = new HttpHeaders();
+            JsonNode headerNodes = request.get("headers");
+            if (headerNodes != null && !headerNodes.isNull()) {
+                if (!headerNodes.isObject()) {
+                    problems.add(at + ".headers must be an object");
+                } else {
+                    headerNodes.properties().forEach(header -> {
+                        if (header.getValue().isArray()) {
+                            header.getValue().forEach(value -> headers.add(header.getKey(), value.asText()));
+                        } else {
+                            headers.add(header.getKey(), header.getValue().asText());
+                        }
+                    });
+                }
+            }
+
+            byte[] content = new byte[0];
+            JsonNode bodyNode = request.get("body");
+            if (bodyNode != null && !bodyNode.isNull()) {
+                if (bodyNode.isTextual()) {
+                    content = bodyNode.asText().getBytes(StandardCharsets.UTF_8);
+                } else {
+                    content = bodyNode.toString().getBytes(StandardCharsets.UTF_8);
+                    if (!headers.containsKey(HttpHeaders.CONTENT_TYPE)) {
+                        headers.setContentType(MediaType.APPLICATION_JSON);
+                    }
+                }
+            }
+            String id = request.hasNonNull("id") ? request.get("id").asText() : Integer.toString(i);
+            parts.add(new Part(id, method, path, headers, content));
+        }
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException("Invalid batch: " + String.join("; ", problems));
+        }
+        return parts;
+    }
+
+    /*
+     * Body of the batch answer, the requests of the parts are built right away on the request thread
+     * from what the batch request carries, the parts only start once the body is written
+     */
+    public StreamingResponseBody run(HttpServletRequest batch, List<Part> parts, Handler handler) {
+        List<String> names = new ArrayList<>(INHERITED_HEADERS);
+        if (forwardedHeader != null) {
+            names.add(forwardedHeader);
+        }
+        HttpHeaders inherited = new HttpHeaders();
+        for (String name : names) {
+            List<String> values = Collections.list(batch.getHeaders(name));
+            if (!values.isEmpty()) {
+                inherited.addAll(name, values);
+            }
+        }
+        String remoteAddr = batch.getRemoteAddr();
+        Cookie[] cookies = batch.getCookies();
+        Verdicts verdicts = new Verdicts();
+
+        List<PartRequest> requests = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            requests.add(new PartRequest(batch, part, headers(part, inherited), remoteAddr, cookies, verdicts));
+        }
+        return out -> stream(requests, handler, out);
+    }
+
+    private HttpHeaders headers(Part part, HttpHeaders inherited) {
+        HttpHeaders headers = new HttpHeaders();
+        part.headers().forEach((name, values) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (!IGNORED_HEADERS.contains(lower) && (forwardedHeader == null || !forwardedHeader.equalsIgnoreCase(name))) {
+                headers.addAll(name, values);
+            }
+        });
+        inherited.forEach(headers::addAll);
+        return headers;
+    }
+
+    /*
+     * Starts parts while fewer than maxConcurrency run and writes each answer as it comes in
+     * Whatever is left when the timeout is over or the client went away is cancelled
+     */
+    private void stream(List<PartRequest> requests, Handler handler, OutputStream out) throws IOException {
+        int concurrency = Math.max(1, settings.getMaxConcurrency());
+        long timeout = settings.getTimeout().toNanos();
+        long deadline = System.nanoTime() + timeout;
+        BlockingQueue<Answer> done = new LinkedBlockingQueue<>();
+        Map<Integer, Future<?>> running = new HashMap<>();
+        boolean[] written = new boolean[requests.size()];
+        int next = 0;
+        int remaining = requests.size();
+
+        try {
+            while (remaining > 0) {
+                while (next < requests.size() && running.size() < concurrency) {
+                    int index = next++;
+                    running.put(index, executor.submit(() -> done.add(execute(index, requests.get(index), handler))));
+                }
+                Answer answer = timeout > 0 ? done.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) : done.take();
+                if (answer == null) {
+                    break;
+                }
+                running.remove(answer.index());
+                write(out, answer);
+                written[answer.index()] = true;
+                remaining--;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.values().forEach(task -> task.cancel(true));
+        }
+
+        if (remaining > 0) {
+            log.warn("Batch timed out after {}ms with {} of {} parts unanswered",
+                    settings.getTimeout().toMillis(), remaining, requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                if (!written[i]) {
+                    write(out, new Answer(i, requests.get(i).part.id(), HttpStatus.GATEWAY_TIMEOUT.value(),
+                            new HttpHeaders(), "Batch timed out".getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+        }
+    }
+
+    /*
+     * Runs one part and reads its answer, bodies over maxPartSize fail the part with 502
+     */
+    private Answer execute(int index, PartRequest request, Handler handler) {
+        String id = request.part.id();
+        try {
+            ResponseEntity<?> response = handler.handle(request);
+            return new Answer(index, id, response.getStatusCode().value(), response.getHeaders(), read(response.getBody()));
+        } catch (PartTooLargeException e) {
+            log.warn("Batch part {} answered more than {} bytes", id, settings.getMaxPartSize().toBytes());
+            return new Answer(index, id, HttpStatus.BAD_GATEWAY.value(), new HttpHeaders(),
+                    e.getMessage().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            log.error("Batch part {} failed: {}", id, e.getMessage());
+            return new Answer(index, id, HttpStatus.SERVICE_UNAVAILABLE.value(), new HttpHeaders(),
+                    ("Service unavailable: " + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private byte[] read(Object body) throws IOException {
+        if (body == null) {
+            return new byte[0];
+        }
+        if (body instanceof StreamingResponseBody streaming) {
+            LimitedBuffer buffer = new LimitedBuffer(settings.getMaxPartSize().toBytes());
+            streaming.writeTo(buffer);
+            return buffer.toByteArray();
+        }
+        if (body instanceof byte[] bytes) {
+            return bytes;
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void write(OutputStream out, Answer answer) throws IOException {
+        ObjectNode line = MAPPER.createObjectNode();
+        line.put("index", answer.index());
+        line.put("id", answer.id());
+        line.put("status", answer.status());
+        ObjectNode headers = line.putObject("headers");
+        answer.headers().forEach((name, values) -> {
+            if (!FRAMING_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                ArrayNode array = headers.putArray(name);
+                values.forEach(array::add);
+            }
+        });
+        if (answer.body().length > 0) {
+            if (isText(answer.headers())) {
+                line.put("body", new String(answer.body(), StandardCharsets.UTF_8));
+            } else {
+                line.put("bodyBase64", Base64.getEncoder().encodeToString(answer.body()));
+            }
+        }
+        out.write(MAPPER.writeValueAsBytes(line));
+        out.write('\n');
+        out.flush();
+    }
+
+    /*
+     * Text, JSON, XML and form bodies go out as strings, so do the plain answers of the gateway without a type
+     */
+    static boolean isText(HttpHeaders headers) {
+        MediaType type;
+        try {
+            type = headers.getContentType();
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        if (type == null) {
+            return true;
+        }
+        String subtype = type.getSubtype();
+        return type.getType().equals("text") || subtype.equals("json") || subtype.endsWith("+json")
+                || subtype.equals("xml") || subtype.endsWith("+xml") || subtype.equals("javascript")
+                || subtype.equals("x-www-form-urlencoded");
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private record Answer(int index, String id, int status, HttpHeaders headers, byte[] body) {
+    }
+
+    private static final class PartTooLargeException extends IOException {
+        PartTooLargeException(long limit) {
+            super("Part answer exceeds " + limit + " bytes");
+        }
+    }
+
+    /*
+     * Collects the answer of a part, failing once it grows over limit
+     */
+    private static final class LimitedBuffer extends OutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final long limit;
+
+        LimitedBuffer(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (buffer.size() + (long) length > limit) {
+                throw new PartTooLargeException(limit);
+            }
+            buffer.write(bytes, offset, length);
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+    }
+
+    /*
+     * Auth verdicts of one batch, the first PROTECTED part of each kind verifies the token and the others wait for it
+     * Services with remote auth share one verdict as they all ask the auth service about the same token,
+     * services with local auth check their own keys, issuer and audience so they get one verdict each
+     */
+    public static final class Verdicts {
+        public static final String ATTRIBUTE = Verdicts.class.getName();
+
+        private final Map<String, CompletableFuture<Boolean>> verdicts = new ConcurrentHashMap<>();
+
+        public boolean verify(Registry.Service service, BooleanSupplier check) {
+            String key = service.getAuth().getMode() == Registry.AuthMode.LOCAL ? "local:" + service.getName() : "remote";
+            CompletableFuture<Boolean> verdict = new CompletableFuture<>();
+            CompletableFuture<Boolean> shared = verdicts.putIfAbsent(key, verdict);
+            if (shared != null) {
+                return shared.join();
+            }
+            try {
+                verdict.complete(check.getAsBoolean());
+            } catch (RuntimeException e) {
+                verdict.complete(false);
+                throw e;
+            }
+            return verdict.join();
+        }
+    }
+
+    /*
+     * A part seen as a request of its own
+     * Everything read from the batch request was copied when the batch started, parts run on other threads
+     * Attributes are kept per part since @Service stores the route match of each part
+     */
+    private static final class PartRequest extends HttpServletRequestWrapper {
+        private final Part part;
+        private final String uri;
+        private final String query;
+        private final HttpHeaders headers;
+        private final String remoteAddr;
+        private final Cookie[] cookies;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        PartRequest(HttpServletRequest batch, Part part, HttpHeaders headers, String remoteAddr, Cookie[] cookies,
+                    Verdicts verdicts) {
+            super(batch);
+            this.part = part;
+            int question = part.path().indexOf('?');
+            this.uri = question < 0 ? part.path() : part.path().substring(0, question);
+            this.query = question < 0 ? null : part.path().substring(question + 1);
+            this.headers = headers;
+            this.remoteAddr = remoteAddr;
+            this.cookies = cookies;
+            this.attributes.put(Verdicts.ATTRIBUTE, verdicts);
+        }
+
+        @Override
+        public String getMethod() { return part.method(); }
+
+        @Override
+        public String getRequestURI() { return uri; }
+
+        @Override
+        public String getQueryString() { return query; }
+
+        @Override
+        public String getRemoteAddr() { return remoteAddr; }
+
+        @Override
+        public Cookie[] getCookies() { return cookies; }
+
+        @Override
+        public String getHeader(String name) { return headers.getFirst(name); }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            List<String> values = headers.get(name);
+            return Collections.enumeration(values != null ? values : List.of());
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() { return Collections.enumeration(headers.keySet()); }
+
+        @Override
+        public String getContentType() { return headers.getFirst(HttpHeaders.CONTENT_TYPE); }
+
+        @Override
+        public int getContentLength() { return part.body().length; }
+
+        @Override
+        public long getContentLengthLong() { return part.body().length; }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(part.body());
+            return new ServletInputStream() {
+                @Override
+                public int read() { return in.read(); }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) { return in.read(buffer, offset, length); }
+
+                @Override
+                public boolean isFinished() { return in.available() == 0; }
+
+                @Override
+                public boolean isReady() { return true; }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("Batch parts are read blocking");
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(part.body()), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Object getAttribute(String name) { return attributes.get(name); }
+
+        @Override
+        public Enumeration<String> getAttributeNames() { return Collections.enumeration(attributes.keySet()); }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            if (value == null) {
+                attributes.remove(name);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+
+        @Override
+        public void removeAttribute(String name) { attributes.remove(name); }
+    }
+}
@@ -0,0 +1,31 @@
+package com.gateway;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*
+ * Fixed size byte[] buffers shared by every in-flight request
+ * Buffers are handed out with @acquire and must be given back with @release
+ * If the pool is empty a fresh buffer is allocated, if it is full the returned buffer is dropped
+ * This keeps heap usage per request at one buffer no matter how large the payload is
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> buffers;
+
+    public BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.gateway;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/*
+ * Bulkhead caps the number of requests in flight to each service
+ * With virtual threads the gateway no longer runs out of threads, so without a cap
+ * one slow service could soak up every connection and request of the gateway
+ * The cap is services.list[*].client.max-concurrent-requests, 0 means no cap
+ * A request waits up to services.list[*].client.acquire-timeout for a free slot
+ */
+@Component
+public class Bulkhead {
+
+    private static final Permit UNLIMITED = new Permit(null);
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    /*
+     * Returns a permit to be released once the exchange with the service is over
+     * or null if the service stayed at its cap for the whole acquire timeout
+     */
+    public Permit tryAcquire(Registry.Service service) {
+        Registry.Client settings = service.getClient();
+        if (settings.getMaxConcurrentRequests() <= 0) {
+            return UNLIMITED;
+        }
+
+        Semaphore semaphore = permits.computeIfAbsent(service.getName(),
+                name -> new Semaphore(settings.getMaxConcurrentRequests()));
+        try {
+            if (semaphore.tryAcquire(settings.getAcquireTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                return new Permit(semaphore);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /*
+     * Same without waiting, for callers that must not block such as @ReactiveService
+     */
+    public Permit tryAcquireNow(Registry.Service service) {
+        Registry.Client settings = service.getClient();
+        if (settings.getMaxConcurrentRequests() <= 0) {
+            return UNLIMITED;
+        }
+
+        Semaphore semaphore = permits.computeIfAbsent(service.getName(),
+                name -> new Semaphore(settings.getMaxConcurrentRequests()));
+        return semaphore.tryAcquire() ? new Permit(semaphore) : null;
+    }
+
+    /*
+     * Caps of changed services are recreated from the new settings
+     * Permits still held release into the old semaphore, which is simply dropped
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        event.changed().forEach(permits::remove);
+    }
+
+    /*
+     * Free slots of the service, -1 when it has no cap
+     */
+    public int available(String serviceName) {
+        Semaphore semaphore = permits.get(serviceName);
+        return semaphore != null ? semaphore.availablePermits() : -1;
+    }
+
+    /*
+     * A slot taken from the service, releasing it more than once has no effect
+     */
+    public static class Permit {
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        public void release() {
+            if (semaphore != null && released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+    }
+}
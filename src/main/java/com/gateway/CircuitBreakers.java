@@ -0,0 +1,167 @@
+package com.gateway;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/*
+ * CircuitBreakers keeps one breaker per service, configured by services.list[*].circuit-breaker
+ * CLOSED -> calls go through, outcomes are kept in a sliding window of the last windowSize calls
+ * OPEN -> calls are rejected right away until openDuration has passed
+ * HALF_OPEN -> halfOpenCalls trial calls, all good closes the breaker, any failure opens it again
+ *
+ * Every successful @Breaker.tryAcquire must be followed by @Breaker.record or @Breaker.cancel
+ */
+@Component
+public class CircuitBreakers {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakers.class);
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public Breaker get(Registry.Service service) {
+        return breakers.computeIfAbsent(service.getName(), name -> new Breaker(name, service.getCircuitBreaker()));
+    }
+
+    /*
+     * Breakers of changed services start over closed with the new settings
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        event.changed().forEach(breakers::remove);
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /*
+     * State of one breaker, guarded by its own monitor
+     * The critical sections only touch a few ints, no I/O happens while holding it
+     */
+    public static final class Breaker {
+        private static final int FAILED = 1;
+        private static final int SLOW = 2;
+
+        private final String service;
+        private final Registry.CircuitBreaker settings;
+        private final byte[] window;
+        private final long slowCallNanos;
+        private final long openNanos;
+
+        private State state = State.CLOSED;
+        private int position;
+        private int calls;
+        private int failures;
+        private int slowCalls;
+        private long openedAt;
+        private int trialPermits;
+        private int trialSuccesses;
+
+        Breaker(String service, Registry.CircuitBreaker settings) {
+            this.service = service;
+            this.settings = settings;
+            this.window = new byte[Math.max(1, settings.getWindowSize())];
+            this.slowCallNanos = settings.getSlowCallThreshold().toNanos();
+            this.openNanos = settings.getOpenDuration().toNanos();
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        /*
+         * false while the breaker is open or all trial calls of the half open state are taken
+         */
+        public synchronized boolean tryAcquire() {
+            if (!settings.isEnabled()) {
+                return true;
+            }
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.nanoTime() - openedAt < openNanos) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    trialPermits = 0;
+                    trialSuccesses = 0;
+                    log.info("Circuit of service {} is half open", service);
+                    // fall through to take the first trial permit
+                case HALF_OPEN:
+                default:
+                    if (trialPermits < settings.getHalfOpenCalls()) {
+                        trialPermits++;
+                        return true;
+                    }
+                    return false;
+            }
+        }
+
+        /*
+         * Gives back an acquired call that never reached the service
+         */
+        public synchronized void cancel() {
+            if (state == State.HALF_OPEN && trialPermits > 0) {
+                trialPermits--;
+            }
+        }
+
+        public synchronized void record(boolean failed, long latencyNanos) {
+            if (!settings.isEnabled() || state == State.OPEN) {
+                return;
+            }
+            boolean slow = latencyNanos > slowCallNanos;
+
+            if (state == State.HALF_OPEN) {
+                if (failed || slow) {
+                    open();
+                } else if (++trialSuccesses >= settings.getHalfOpenCalls()) {
+                    close();
+                }
+                return;
+            }
+
+            if (calls == window.length) {
+                byte oldest = window[position];
+                failures -= oldest & FAILED;
+                slowCalls -= (oldest & SLOW) >> 1;
+            } else {
+                calls++;
+            }
+            window[position] = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+            position = (position + 1) % window.length;
+            failures += failed ? 1 : 0;
+            slowCalls += slow ? 1 : 0;
+
+            if (calls >= settings.getMinimumCalls()
+                    && (failures * 100 >= settings.getFailureRateThreshold() * calls
+                    || slowCalls * 100 >= settings.getSlowCallRateThreshold() * calls)) {
+                log.warn("Circuit of service {} opened, {} of {} calls failed and {} were slow",
+                        service, failures, calls, slowCalls);
+                open();
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+
+        private void close() {
+            state = State.CLOSED;
+            position = 0;
+            calls = 0;
+            failures = 0;
+            slowCalls = 0;
+            log.info("Circuit of service {} closed", service);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.gateway;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/*
+ * ConcurrencyLimits caps the requests in flight to each service with concurrency-limit.enabled, see Registry.ConcurrencyLimit
+ * Unlike the fixed cap of @Bulkhead the limit follows the service: every windowSize answers the average
+ * latency of the window is compared to the baseline latency of the service
+ * GRADIENT -> the limit is scaled by baseline * tolerance / latency, so it shrinks as soon as latency rises
+ * and grows by its square root while the latency stays within the tolerance and the limit is in use
+ * AIMD -> the limit grows by one while the latency stays within the tolerance, otherwise it is cut by backoffPercent
+ * Failed exchanges, 502, 503 and 504 cut the limit by backoffPercent with either algorithm
+ * The baseline follows faster windows right away and slower ones only slowly
+ *
+ * Requests over the limit are shed with 503 instead of waiting, each exposure may only fill its share of the limit
+ * so PUBLIC traffic is shed before PROTECTED and PRIVATE traffic with the default shares
+ *
+ * Every successful @tryAcquire must be followed by Permit.release, Permit.sample reports requests that reached the service
+ */
+@Component
+public class ConcurrencyLimits {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimits.class);
+    private static final Permit UNLIMITED = new Permit(null);
+
+    private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+    /*
+     * Returns a permit for a request of the given exposure, or null if it has to be shed
+     */
+    public Permit tryAcquire(Registry.Service service, Registry.Exposure exposure) {
+        Limiter limiter = get(service);
+        if (limiter == null) {
+            return UNLIMITED;
+        }
+        return limiter.tryAcquire(exposure) ? new Permit(limiter) : null;
+    }
+
+    /*
+     * Limiter of the service, null when its concurrency limit is off
+     */
+    public Limiter get(Registry.Service service) {
+        if (!service.getConcurrencyLimit().isEnabled()) {
+            return null;
+        }
+        return limiters.computeIfAbsent(service.getName(), name -> new Limiter(name, service.getConcurrencyLimit()));
+    }
+
+    /*
+     * Limits of changed services start over from initialLimit with the new settings
+     * Permits still held release into the old limiter, which is simply dropped
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        event.changed().forEach(limiters::remove);
+    }
+
+    /*
+     * Limit of one service, guarded by its own monitor
+     * The critical sections only touch a few numbers, no I/O happens while holding it
+     */
+    public static final class Limiter {
+        private static final double MIN_GRADIENT = 0.5;
+        private static final double SMOOTHING = 0.2;
+        private static final int BASELINE_WINDOWS = 100;
+
+        private final String service;
+        private final Registry.ConcurrencyLimit settings;
+        private final LongAdder[] shed = new LongAdder[Registry.Exposure.values().length];
+
+        private double limit;
+        private int inFlight;
+        private double baselineNanos;
+
+        private int samples;
+        private int successes;
+        private long latencySum;
+        private boolean dropped;
+        private int maxInFlight;
+
+        Limiter(String service, Registry.ConcurrencyLimit settings) {
+            this.service = service;
+            this.settings = settings;
+            this.limit = clamp(settings.getInitialLimit());
+            for (int i = 0; i < shed.length; i++) {
+                shed[i] = new LongAdder();
+            }
+        }
+
+        synchronized boolean tryAcquire(Registry.Exposure exposure) {
+            if (inFlight * 100L >= (long) limit * settings.getPercent(exposure)) {
+                shed[exposure.ordinal()].increment();
+                return false;
+            }
+            inFlight++;
+            maxInFlight = Math.max(maxInFlight, inFlight);
+            return true;
+        }
+
+        synchronized void release() {
+            inFlight--;
+        }
+
+        synchronized void sample(long latencyNanos, boolean drop) {
+            samples++;
+            if (drop) {
+                dropped = true;
+            } else {
+                successes++;
+                latencySum += latencyNanos;
+            }
+            if (samples >= Math.max(1, settings.getWindowSize())) {
+                update();
+            }
+        }
+
+        /*
+         * Closes the window, sets the new limit and moves the baseline
+         */
+        private void update() {
+            double latency = successes > 0 ? (double) latencySum / successes : baselineNanos;
+            if (baselineNanos == 0) {
+                baselineNanos = latency;
+            }
+            double tolerated = baselineNanos * settings.getRttTolerancePercent() / 100.0;
+            boolean used = maxInFlight * 2 >= (int) limit;
+            double backoff = limit * settings.getBackoffPercent() / 100.0;
+
+            double next;
+            if (dropped) {
+                next = backoff;
+            } else if (settings.getAlgorithm() == Registry.LimitAlgorithm.AIMD) {
+                next = latency > tolerated ? backoff : used ? limit + 1 : limit;
+            } else {
+                double gradient = Math.max(MIN_GRADIENT, Math.min(1, tolerated / latency));
+                double target = limit * gradient + (used ? Math.sqrt(limit) : 0);
+                next = limit * (1 - SMOOTHING) + target * SMOOTHING;
+            }
+            next = clamp(next);
+            if ((int) next != (int) limit) {
+                log.debug("Concurrency limit of service {} is now {}, latency {}us, baseline {}us", service,
+                        (int) next, (long) latency / 1000, (long) baselineNanos / 1000);
+            }
+            limit = next;
+
+            if (successes > 0) {
+                baselineNanos = latency < baselineNanos ? latency
+                        : baselineNanos + (latency - baselineNanos) / BASELINE_WINDOWS;
+            }
+            samples = 0;
+            successes = 0;
+            latencySum = 0;
+            dropped = false;
+            maxInFlight = inFlight;
+        }
+
+        private double clamp(double value) {
+            return Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), value));
+        }
+
+        public synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        public synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        public long getShed(Registry.Exposure exposure) {
+            return shed[exposure.ordinal()].sum();
+        }
+    }
+
+    /*
+     * A slot under the limit of the service, releasing it more than once has no effect
+     */
+    public static class Permit {
+        private final Limiter limiter;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Limiter limiter) {
+            this.limiter = limiter;
+        }
+
+        /*
+         * Reports the latency up to the response headers, drop for failed exchanges and overload answers
+         */
+        public void sample(long latencyNanos, boolean drop) {
+            if (limiter != null && !released.get()) {
+                limiter.sample(latencyNanos, drop);
+            }
+        }
+
+        public void release() {
+            if (limiter != null && released.compareAndSet(false, true)) {
+                limiter.release();
+            }
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.gateway;
 
+import java.nio.charset.StandardCharsets;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -20,6 +26,7 @@ import jakarta.servlet.http.HttpServletRequest;
 @CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = "Authorization")
 @RestController
 @RequestMapping("/")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class Controller {
 
     private static final Logger log = LoggerFactory.getLogger(Controller.class);
@@ -36,17 +43,44 @@ public class Controller {
      * HttpServletRequest contains whole HttpRequest which has all the components such as header, body, uri...
      * serviceName is extracted from the required header
      * request is passed as it is to the @forwardRequest handler
+     * The declared StreamingResponseBody body is what makes Spring MVC stream the answer, see @streaming
      * */
     @RequestMapping("/**")
-    public ResponseEntity<?> incomingRequest(HttpServletRequest request) {
+    public ResponseEntity<StreamingResponseBody> incomingRequest(HttpServletRequest request) {
         try {
-            return service.forwardRequest(request);
+            return streaming(service.forwardRequest(request));
         } catch (RuntimeException e) {
             log.error("Runtime exception while forwarding to service {}: {}", "TBA", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Service unavailable: " + e.getMessage());
+            return streaming(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Service unavailable: " + e.getMessage()));
         } catch (Exception e) {
             log.error("Unexpected exception while forwarding to service {}: {}", "TBA", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Unexpected error occurred");
+            return streaming(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Unexpected error occurred"));
+        }
+    }
+
+    /*
+     * Spring MVC only streams a ResponseEntity declared with a StreamingResponseBody body, anything else goes
+     * to the message converters, which cannot write the lambdas of @Forwarder and would skip their completion
+     * Upstream answers pass through as they are, the text and bytes the gateway answers itself are wrapped
+     */
+    static ResponseEntity<StreamingResponseBody> streaming(ResponseEntity<?> response) {
+        Object body = response.getBody();
+        if (body == null || body instanceof StreamingResponseBody) {
+            return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders())
+                    .body((StreamingResponseBody) body);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        byte[] bytes;
+        if (body instanceof byte[] raw) {
+            bytes = raw;
+        } else {
+            bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            if (headers.getContentType() == null) {
+                headers.setContentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8));
+            }
         }
+        headers.setContentLength(bytes.length);
+        return ResponseEntity.status(response.getStatusCode()).headers(headers).body(out -> out.write(bytes));
     }
 }
@@ -0,0 +1,177 @@
+package com.gateway;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.function.Consumer;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * Forwarder pipes the request body to the upstream and the upstream body back to the client
+ * Nothing is buffered as a whole, bytes move through pooled fixed size buffers from @BufferPool
+ * Bodies are never decoded, binary payloads pass through untouched
+ */
+@Component
+public class Forwarder {
+
+    private final Utils utils;
+    private final GatewayProperties.Forwarding properties;
+    private final BufferPool bufferPool;
+
+    public Forwarder(Utils utils, GatewayProperties properties) {
+        this.utils = utils;
+        this.properties = properties.getForwarding();
+        this.bufferPool = new BufferPool(this.properties.getBufferSize(), this.properties.getBufferPoolSize());
+    }
+
+    /*
+     * @exchange sends the incoming request to the target url and returns the upstream status and headers
+     * The upstream body is not read here, it is copied to the client by UpstreamResponse.toResponseEntity
+     * Known Content-Length is passed on as is, otherwise the body goes out with chunked transfer
+     *
+     * Throws PayloadTooLargeException if the body is bigger than gateway.forwarding.max-body-size
+     */
+    public UpstreamResponse exchange(ClientHttpRequestFactory factory, String targetUrl,
+                                     HttpMethod method, HttpServletRequest request) throws IOException {
+        return exchange(factory, targetUrl, method, request, headers -> { });
+    }
+
+    /*
+     * Same as above, headers adjusts the upstream request headers after the client headers were copied
+     * e.g. @ResponseCache swaps the validators of the client for its own
+     */
+    public UpstreamResponse exchange(ClientHttpRequestFactory factory, String targetUrl, HttpMethod method,
+                                     HttpServletRequest request, Consumer<HttpHeaders> headers) throws IOException {
+        long maxBodySize = properties.getMaxBodySize().toBytes();
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > maxBodySize) {
+            throw new PayloadTooLargeException(maxBodySize);
+        }
+
+        ClientHttpRequest upstreamRequest = factory.createRequest(URI.create(targetUrl), method);
+        utils.copyRequestHeaders(request, upstreamRequest.getHeaders());
+        headers.accept(upstreamRequest.getHeaders());
+
+        if (hasBody(request)) {
+            if (upstreamRequest instanceof StreamingHttpOutputMessage streaming) {
+                streaming.setBody(out -> copy(request.getInputStream(), out, maxBodySize));
+            } else {
+                copy(request.getInputStream(), upstreamRequest.getBody(), maxBodySize);
+            }
+        }
+
+        ClientHttpResponse upstreamResponse = upstreamRequest.execute();
+        try {
+            return new UpstreamResponse(upstreamResponse, utils.copyResponseHeaders(upstreamResponse.getHeaders()));
+        } catch (IOException | RuntimeException e) {
+            upstreamResponse.close();
+            throw e;
+        }
+    }
+
+    /*
+     * true if the client sent a body, such a request cannot be replayed once it was streamed
+     */
+    public static boolean hasBody(HttpServletRequest request) {
+        return request.getContentLengthLong() > 0 || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null;
+    }
+
+    /*
+     * Runs callback once the upstream body has been copied to the client, or the copy failed
+     * Used to hold per request resources such as a @Bulkhead permit until the exchange is really over
+     */
+    public static ResponseEntity<StreamingResponseBody> whenComplete(ResponseEntity<StreamingResponseBody> response,
+                                                                     Runnable callback) {
+        StreamingResponseBody body = response.getBody();
+        return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders()).body(out -> {
+            try {
+                body.writeTo(out);
+            } finally {
+                callback.run();
+            }
+        });
+    }
+
+    /*
+     * Copies in to out with one pooled buffer, failing once more than limit bytes were read
+     */
+    private long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = bufferPool.acquire();
+        try {
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                if (total > limit) {
+                    throw new PayloadTooLargeException(limit);
+                }
+                out.write(buffer, 0, read);
+            }
+            out.flush();
+            return total;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /*
+     * Status and headers of the upstream answer with its body still unread on the connection
+     * Either hand it to the client with @toResponseEntity or drop it with @close
+     */
+    public class UpstreamResponse implements Closeable {
+        private final ClientHttpResponse response;
+        private final HttpStatusCode statusCode;
+        private final HttpHeaders headers;
+
+        private UpstreamResponse(ClientHttpResponse response, HttpHeaders headers) throws IOException {
+            this.response = response;
+            this.statusCode = response.getStatusCode();
+            this.headers = headers;
+        }
+
+        public HttpStatusCode getStatusCode() { return statusCode; }
+
+        public HttpHeaders getHeaders() { return headers; }
+
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        /*
+         * Response for the client, the body is streamed from the upstream connection through pooled buffers
+         */
+        public ResponseEntity<StreamingResponseBody> toResponseEntity() {
+            StreamingResponseBody body = out -> {
+                try (response) {
+                    copy(response.getBody(), out, Long.MAX_VALUE);
+                }
+            };
+            return ResponseEntity.status(statusCode).headers(headers).body(body);
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+
+    public static class PayloadTooLargeException extends IOException {
+        public PayloadTooLargeException(long limit) {
+            super("Request body exceeds " + limit + " bytes");
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.gateway;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/*
+ * Gateway wide tuning read from the `gateway` section of application.yml
+ * Service specific settings stay under `services.list[*]` in @Registry
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway")
+public class GatewayProperties {
+
+    private final Forwarding forwarding = new Forwarding();
+    private final Client client = new Client();
+    private final AuthCache authCache = new AuthCache();
+    private final Metrics metrics = new Metrics();
+    private final ResponseCache responseCache = new ResponseCache();
+    private final RateLimit rateLimit = new RateLimit();
+    private final RegistrySource registry = new RegistrySource();
+    private final Trust trust = new Trust();
+    private final Jwks jwks = new Jwks();
+    private final Compression compression = new Compression();
+    private final AccessLog accessLog = new AccessLog();
+    private final Batch batch = new Batch();
+
+    public Forwarding getForwarding() { return forwarding; }
+    public Client getClient() { return client; }
+    public AuthCache getAuthCache() { return authCache; }
+    public Metrics getMetrics() { return metrics; }
+    public ResponseCache getResponseCache() { return responseCache; }
+    public RateLimit getRateLimit() { return rateLimit; }
+    public RegistrySource getRegistry() { return registry; }
+    public Trust getTrust() { return trust; }
+    public Jwks getJwks() { return jwks; }
+    public Compression getCompression() { return compression; }
+    public AccessLog getAccessLog() { return accessLog; }
+    public Batch getBatch() { return batch; }
+
+    /*
+     * Streaming proxy settings used by @Forwarder
+     * bufferSize is the size of each pooled copy buffer
+     * bufferPoolSize is how many idle buffers are kept around for reuse
+     * maxBodySize caps the request body, larger uploads are rejected with 413
+     * streamTimeout bounds how long a response body may take to reach the client, 0 means no limit
+     */
+    public static class Forwarding {
+        private int bufferSize = 16 * 1024;
+        private int bufferPoolSize = 256;
+        private DataSize maxBodySize = DataSize.ofMegabytes(10);
+        private Duration streamTimeout = Duration.ofMinutes(5);
+
+        public int getBufferSize() { return bufferSize; }
+        public void setBufferSize(int bufferSize) { this.bufferSize = bufferSize; }
+
+        public int getBufferPoolSize() { return bufferPoolSize; }
+        public void setBufferPoolSize(int bufferPoolSize) { this.bufferPoolSize = bufferPoolSize; }
+
+        public DataSize getMaxBodySize() { return maxBodySize; }
+        public void setMaxBodySize(DataSize maxBodySize) { this.maxBodySize = maxBodySize; }
+
+        public Duration getStreamTimeout() { return streamTimeout; }
+        public void setStreamTimeout(Duration streamTimeout) { this.streamTimeout = streamTimeout; }
+    }
+
+    /*
+     * Which http client @UpstreamClients builds for every service
+     * POOLED -> Apache HttpClient with a keep-alive pool per service, all services.list[*].client settings apply
+     * JDK -> java.net.http.HttpClient, only connect and read timeouts apply, pooling is left to the JDK
+     */
+    public static class Client {
+        private Engine engine = Engine.POOLED;
+
+        public Engine getEngine() { return engine; }
+        public void setEngine(Engine engine) { this.engine = engine; }
+    }
+
+    public enum Engine {
+        POOLED,
+        JDK
+    }
+
+    /*
+     * Verdict cache in front of the auth service, used by @TokenCache
+     * ttl applies to accepted tokens, negativeTtl to rejected ones
+     * Keep ttl below the token lifetime, a revoked token stays valid here until its entry expires
+     */
+    public static class AuthCache {
+        private boolean enabled = true;
+        private Duration ttl = Duration.ofSeconds(60);
+        private Duration negativeTtl = Duration.ofSeconds(5);
+        private int maxEntries = 10_000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getTtl() { return ttl; }
+        public void setTtl(Duration ttl) { this.ttl = ttl; }
+
+        public Duration getNegativeTtl() { return negativeTtl; }
+        public void setNegativeTtl(Duration negativeTtl) { this.negativeTtl = negativeTtl; }
+
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+    }
+
+    /*
+     * Scrape endpoint of @MetricsController, only answered for internal callers
+     * The path is matched before the catch all /** so its first segment cannot be a service name
+     */
+    public static class Metrics {
+        private String path = "/_gateway/metrics";
+
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+    }
+
+    /*
+     * Memory of @ResponseCache shared by all routes with services.list[*].routes[*].cache.enabled
+     * maxSize bounds the bodies and headers kept, least recently used answers go first
+     * Answers larger than maxEntrySize are passed through without being stored
+     */
+    public static class ResponseCache {
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+        private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+
+        public DataSize getMaxSize() { return maxSize; }
+        public void setMaxSize(DataSize maxSize) { this.maxSize = maxSize; }
+
+        public DataSize getMaxEntrySize() { return maxEntrySize; }
+        public void setMaxEntrySize(DataSize maxEntrySize) { this.maxEntrySize = maxEntrySize; }
+    }
+
+    /*
+     * In memory bucket store of @RateLimiter, used unless a RateLimitStore bean is defined
+     * Buckets that filled up again are swept every sweepInterval, an absent bucket is a full one
+     */
+    public static class RateLimit {
+        private Duration sweepInterval = Duration.ofSeconds(30);
+
+        public Duration getSweepInterval() { return sweepInterval; }
+        public void setSweepInterval(Duration sweepInterval) { this.sweepInterval = sweepInterval; }
+    }
+
+    /*
+     * Hot reload of the `services` section by @RegistryReloader
+     * file is a YAML file with a services.list, checked for changes every pollInterval, not watched while unset
+     * reloadPath is the admin endpoint that reloads the file, or the YAML sent as the request body
+     * Everything outside services.list still needs a restart to change
+     */
+    public static class RegistrySource {
+        private String file;
+        private Duration pollInterval = Duration.ofSeconds(5);
+        private String reloadPath = "/_gateway/registry/reload";
+
+        public String getFile() { return file; }
+        public void setFile(String file) { this.file = file; }
+
+        public Duration getPollInterval() { return pollInterval; }
+        public void setPollInterval(Duration pollInterval) { this.pollInterval = pollInterval; }
+
+        public String getReloadPath() { return reloadPath; }
+        public void setReloadPath(String reloadPath) { this.reloadPath = reloadPath; }
+    }
+
+    /*
+     * Networks trusted by @TrustedNetworks, entries are CIDR blocks or single addresses, IPv4 or IPv6
+     * internalNetworks may call PRIVATE routes and the admin endpoints, services.list[*].internal-networks replaces it per service
+     * trustedProxies are the load balancers in front of the gateway, only their forwardedHeader is believed,
+     * empty means the client is always the peer address
+     */
+    public static class Trust {
+        private List<String> internalNetworks = new ArrayList<>(List.of(
+                "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16", "127.0.0.0/8", "::1/128", "fc00::/7"));
+        private List<String> trustedProxies = new ArrayList<>();
+        private String forwardedHeader = "X-Forwarded-For";
+
+        public List<String> getInternalNetworks() { return internalNetworks; }
+        public void setInternalNetworks(List<String> internalNetworks) { this.internalNetworks = internalNetworks; }
+
+        public List<String> getTrustedProxies() { return trustedProxies; }
+        public void setTrustedProxies(List<String> trustedProxies) { this.trustedProxies = trustedProxies; }
+
+        public String getForwardedHeader() { return forwardedHeader; }
+        public void setForwardedHeader(String forwardedHeader) { this.forwardedHeader = forwardedHeader; }
+    }
+
+    /*
+     * Key sets of services with local auth, see @JwtVerifier
+     * Each jwks location is fetched every refreshInterval in the background, a token signed with an unknown
+     * key triggers an early fetch at most every minRefreshInterval, timeout bounds fetches from a url
+     */
+    public static class Jwks {
+        private Duration refreshInterval = Duration.ofMinutes(5);
+        private Duration minRefreshInterval = Duration.ofSeconds(30);
+        private Duration timeout = Duration.ofSeconds(5);
+
+        public Duration getRefreshInterval() { return refreshInterval; }
+        public void setRefreshInterval(Duration refreshInterval) { this.refreshInterval = refreshInterval; }
+
+        public Duration getMinRefreshInterval() { return minRefreshInterval; }
+        public void setMinRefreshInterval(Duration minRefreshInterval) { this.minRefreshInterval = minRefreshInterval; }
+
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+    }
+
+    /*
+     * Edge compression by @ResponseCompression, routes opt in with services.list[*].routes[*].compression
+     * level is the zlib level from 1 (fastest) to 9 (smallest)
+     * poolSize is how many idle Deflaters per encoding are kept for reuse, each holds native zlib memory
+     */
+    public static class Compression {
+        private int level = 6;
+        private int poolSize = 64;
+
+        public int getLevel() { return level; }
+        public void setLevel(int level) { this.level = level; }
+
+        public int getPoolSize() { return poolSize; }
+        public void setPoolSize(int poolSize) { this.poolSize = poolSize; }
+    }
+
+    /*
+     * Structured access log, one JSON line per request, see the AccessLog component
+     * file is appended to, stdout while unset
+     * bufferSize entries wait for the writer, when they are all taken overflow DROP discards new entries
+     * and BLOCK makes requests wait for room
+     * flushInterval is how long the idle writer sleeps before looking for new entries
+     */
+    public static class AccessLog {
+        private boolean enabled = true;
+        private String file;
+        private int bufferSize = 65_536;
+        private AccessLogOverflow overflow = AccessLogOverflow.DROP;
+        private Duration flushInterval = Duration.ofMillis(100);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getFile() { return file; }
+        public void setFile(String file) { this.file = file; }
+
+        public int getBufferSize() { return bufferSize; }
+        public void setBufferSize(int bufferSize) { this.bufferSize = bufferSize; }
+
+        public AccessLogOverflow getOverflow() { return overflow; }
+        public void setOverflow(AccessLogOverflow overflow) { this.overflow = overflow; }
+
+        public Duration getFlushInterval() { return flushInterval; }
+        public void setFlushInterval(Duration flushInterval) { this.flushInterval = flushInterval; }
+    }
+
+    public enum AccessLogOverflow {
+        DROP,
+        BLOCK
+    }
+
+    /*
+     * Fan out endpoint of @BatchController, see @Batches
+     * maxRequests caps the parts of one batch, maxConcurrency how many of them run at once
+     * timeout bounds the whole batch, parts still running then are answered 504, 0 means no limit
+     * maxPartSize caps the answer body of each part, which is held in memory until the part is written
+     */
+    public static class Batch {
+        private String path = "/_gateway/batch";
+        private int maxRequests = 20;
+        private int maxConcurrency = 8;
+        private Duration timeout = Duration.ofSeconds(10);
+        private DataSize maxPartSize = DataSize.ofMegabytes(1);
+
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+
+        public int getMaxRequests() { return maxRequests; }
+        public void setMaxRequests(int maxRequests) { this.maxRequests = maxRequests; }
+
+        public int getMaxConcurrency() { return maxConcurrency; }
+        public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+
+        public DataSize getMaxPartSize() { return maxPartSize; }
+        public void setMaxPartSize(DataSize maxPartSize) { this.maxPartSize = maxPartSize; }
+    }
+}
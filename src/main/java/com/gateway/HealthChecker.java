@@ -0,0 +1,123 @@
+package com.gateway;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/*
+ * HealthChecker probes every instance of the services that have services.list[*].health-check.path set
+ * A scheduled executor wakes up every interval per service, the probes themselves run on virtual threads
+ * so a hanging instance never delays the probes of the others
+ * A probe passes on any 2xx answer within the timeout, results feed LoadBalancer.Endpoint
+ */
+@Component
+public class HealthChecker {
+
+    private static final Logger log = LoggerFactory.getLogger(HealthChecker.class);
+
+    private final Registry registry;
+    private final LoadBalancer loadBalancer;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "health-checker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService probes = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+    private final List<ScheduledFuture<?>> tasks = new ArrayList<>();
+    private final Map<LoadBalancer.Endpoint, Boolean> running = new ConcurrentHashMap<>();
+
+    public HealthChecker(Registry registry, LoadBalancer loadBalancer) {
+        this.registry = registry;
+        this.loadBalancer = loadBalancer;
+    }
+
+    /*
+     * Schedules one task per service with a health check path
+     */
+    @PostConstruct
+    public synchronized void start() {
+        for (Registry.Service service : registry.getList()) {
+            Registry.HealthCheck healthCheck = service.getHealthCheck();
+            if (healthCheck.getPath() == null || healthCheck.getPath().isBlank()) {
+                continue;
+            }
+            long interval = healthCheck.getInterval().toMillis();
+            tasks.add(scheduler.scheduleWithFixedDelay(() -> probeAll(service), 0, interval, TimeUnit.MILLISECONDS));
+            log.info("Health checking service {} on {} every {} ms", service.getName(), healthCheck.getPath(), interval);
+        }
+    }
+
+    /*
+     * Probes are scheduled again for the new list of services
+     * Endpoints of unchanged services keep their health, see LoadBalancer
+     */
+    @EventListener
+    public synchronized void onRegistryReloaded(RegistryReloadedEvent event) {
+        tasks.forEach(task -> task.cancel(false));
+        tasks.clear();
+        start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        tasks.forEach(task -> task.cancel(false));
+        tasks.clear();
+        scheduler.shutdownNow();
+        probes.shutdownNow();
+    }
+
+    private void probeAll(Registry.Service service) {
+        for (LoadBalancer.Endpoint endpoint : loadBalancer.endpoints(service)) {
+            /*
+             * Skip the endpoint while its previous probe is still waiting on the timeout
+             */
+            if (running.putIfAbsent(endpoint, Boolean.TRUE) == null) {
+                probes.execute(() -> {
+                    try {
+                        endpoint.recordProbe(probe(endpoint, service.getHealthCheck()), service.getHealthCheck());
+                    } finally {
+                        running.remove(endpoint);
+                    }
+                });
+            }
+        }
+    }
+
+    private boolean probe(LoadBalancer.Endpoint endpoint, Registry.HealthCheck healthCheck) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + endpoint.getAddress() + healthCheck.getPath()))
+                    .timeout(healthCheck.getTimeout())
+                    .GET()
+                    .build();
+            int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            return status >= 200 && status < 300;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.debug("Health check of {} failed: {}", endpoint.getAddress(), e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.gateway;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * Hedging sends a second attempt for slow GET and HEAD requests of routes with hedge.enabled, see Registry.Hedge
+ * The first attempt runs on its own virtual thread, when it has no response after the hedge delay and the
+ * hedge budget of the route allows, a second attempt starts and the first usable response wins
+ * The losing attempt is interrupted, which aborts its blocking upstream call, whatever it still returns is discarded
+ *
+ * The p95 delay is read at most once per second from the latency of the hedged requests of the route over the last
+ * one to two WINDOW_NANOS, two histograms are rotated so the delay follows the upstream when it gets faster again
+ * Before MIN_SAMPLES requests were measured in that window the route is not hedged and the attempt runs on the request thread
+ */
+@Component
+public class Hedging {
+
+    static final Set<String> METHODS = Set.of("GET", "HEAD");
+    private static final long MIN_SAMPLES = 100;
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final long windowNanos;
+
+    private final Map<Registry.Route, RouteState> routes = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder won = new LongAdder();
+
+    public Hedging() {
+        this(WINDOW_NANOS);
+    }
+
+    Hedging(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /*
+     * One upstream attempt, called once or twice per request
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T call() throws IOException;
+    }
+
+    public boolean isHedged(Registry.Route route, HttpMethod method, HttpServletRequest request) {
+        return route != null && route.getHedge().isEnabled() && METHODS.contains(method.name())
+                && !Forwarder.hasBody(request);
+    }
+
+    /*
+     * Runs attempt, and a second time if the first is slower than the hedge delay of route
+     * Results failing usable (e.g. rejected before reaching the upstream) only win when no attempt has a usable one,
+     * then the outcome of the first attempt is returned
+     * discard releases the result of the losing attempt
+     */
+    public <T> T race(Registry.Route route, Attempt<T> attempt, Predicate<T> usable, Consumer<T> discard) throws IOException {
+        RouteState state = state(route);
+        long start = System.nanoTime();
+        try {
+            return race(state, route.getHedge(), attempt, usable, discard);
+        } finally {
+            state.record(System.nanoTime() - start);
+        }
+    }
+
+    /*
+     * Counts an upstream latency of route into its current window, race does so for every request
+     */
+    void record(Registry.Route route, long nanos) {
+        state(route).record(nanos);
+    }
+
+    private RouteState state(Registry.Route route) {
+        return routes.computeIfAbsent(route, key -> new RouteState(key.getHedge(), windowNanos));
+    }
+
+    private <T> T race(RouteState state, Registry.Hedge settings, Attempt<T> attempt,
+                       Predicate<T> usable, Consumer<T> discard) throws IOException {
+        state.budget.deposit();
+        long delay = state.delayNanos(settings);
+        if (delay < 0) {
+            return attempt.call();
+        }
+
+        Running<T> first = start(attempt);
+        try {
+            return first.result.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // no response yet, hedge
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } catch (InterruptedException e) {
+            throw interrupted(discard, first);
+        }
+
+        if (!state.budget.withdraw()) {
+            return await(first, discard);
+        }
+        issued.increment();
+        Running<T> second = start(attempt);
+        try {
+            CompletableFuture.anyOf(first.result.exceptionally(e -> null), second.result.exceptionally(e -> null)).get();
+            Running<T> winner = first.result.isDone() ? first : second;
+            Running<T> loser = winner == first ? second : first;
+            if (!winner.isUsable(usable)) {
+                loser.result.exceptionally(e -> null).get();
+                if (!loser.isUsable(usable)) {
+                    cancel(second, discard);
+                    return first.result.get();
+                }
+                Running<T> swap = winner;
+                winner = loser;
+                loser = swap;
+            }
+            cancel(loser, discard);
+            if (winner == second) {
+                won.increment();
+            }
+            return winner.result.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } catch (InterruptedException e) {
+            throw interrupted(discard, first, second);
+        }
+    }
+
+    public long getIssued() { return issued.sum(); }
+    public long getWon() { return won.sum(); }
+
+    private <T> Running<T> start(Attempt<T> attempt) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(attempt.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return new Running<>(result, task);
+    }
+
+    private <T> T await(Running<T> running, Consumer<T> discard) throws IOException {
+        try {
+            return running.result.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } catch (InterruptedException e) {
+            throw interrupted(discard, running);
+        }
+    }
+
+    /*
+     * Interrupts the attempt, a result it still produces is discarded
+     */
+    private static <T> void cancel(Running<T> running, Consumer<T> discard) {
+        running.task.cancel(true);
+        running.result.thenAccept(discard);
+    }
+
+    @SafeVarargs
+    private static <T> IOException interrupted(Consumer<T> discard, Running<T>... attempts) {
+        for (Running<T> running : attempts) {
+            cancel(running, discard);
+        }
+        Thread.currentThread().interrupt();
+        return new InterruptedIOException("Interrupted while waiting for the upstream");
+    }
+
+    private static IOException rethrow(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException io) {
+            return io;
+        }
+        if (cause instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IOException(cause);
+    }
+
+    /*
+     * Routes are replaced on reload, state of routes that are gone is dropped
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        Set<Registry.Route> current = new HashSet<>();
+        event.current().forEach(service -> current.addAll(service.getRoutes()));
+        routes.keySet().retainAll(current);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private record Running<T>(CompletableFuture<T> result, Future<?> task) {
+        boolean isUsable(Predicate<T> usable) {
+            return result.isDone() && !result.isCompletedExceptionally() && usable.test(result.join());
+        }
+    }
+
+    /*
+     * Hedge budget, latency window and cached delay of one route
+     * Latencies go to current, once it is windowNanos old it becomes previous and a new one starts,
+     * a window that saw no request at all leaves previous empty
+     */
+    private static final class RouteState {
+        private final Retries.Budget budget;
+        private final long windowNanos;
+        private volatile LatencyHistogram current = new LatencyHistogram();
+        private volatile LatencyHistogram previous = new LatencyHistogram();
+        private volatile long windowStart = System.nanoTime();
+        private volatile long delayNanos;
+        private volatile long computedAt;
+        private volatile boolean computed;
+
+        RouteState(Registry.Hedge settings, long windowNanos) {
+            this.budget = new Retries.Budget(settings.getBudgetPercent(), settings.getMinHedgesPerSecond());
+            this.windowNanos = windowNanos;
+        }
+
+        void record(long nanos) {
+            rotate(System.nanoTime());
+            current.record(nanos);
+        }
+
+        private void rotate(long now) {
+            if (now - windowStart < windowNanos) {
+                return;
+            }
+            synchronized (this) {
+                long age = now - windowStart;
+                if (age >= windowNanos) {
+                    previous = age < 2 * windowNanos ? current : new LatencyHistogram();
+                    current = new LatencyHistogram();
+                    windowStart = now;
+                }
+            }
+        }
+
+        long delayNanos(Registry.Hedge settings) {
+            if (settings.getDelay() != null) {
+                return settings.getDelay().toNanos();
+            }
+            long now = System.nanoTime();
+            if (computed && now - computedAt < DELAY_REFRESH_NANOS) {
+                return delayNanos;
+            }
+            rotate(now);
+            LatencyHistogram recent = current;
+            LatencyHistogram older = previous;
+            long delay = recent.getCount() + older.getCount() < MIN_SAMPLES ? -1
+                    : Math.max(settings.getMinDelay().toNanos(), TimeUnit.MICROSECONDS.toNanos(recent.quantileMicros(0.95, older)));
+            delayNanos = delay;
+            computedAt = now;
+            computed = true;
+            return delay;
+        }
+    }
+}
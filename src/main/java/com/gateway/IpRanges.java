@@ -0,0 +1,353 @@
+package com.gateway;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * IpRanges is an immutable set of CIDR blocks, e.g. 10.0.0.0/8, 172.16.0.0/12, fc00::/7
+ * Blocks are turned into numeric ranges at build time, sorted and merged, one array set for IPv4 (32 bit)
+ * and one for IPv6 (128 bit as two longs)
+ * @contains parses the textual address by index and binary searches the ranges,
+ * no split, no regex, no InetAddress and no allocation
+ * IPv4 mapped IPv6 addresses (::ffff:10.1.2.3) are checked against the IPv4 ranges
+ */
+public final class IpRanges {
+
+    private static final int VALID = 0;
+    private static final int HIGH = 1;
+    private static final int LOW = 2;
+
+    private final long[] v4Start;
+    private final long[] v4End;
+    private final long[] v6StartHigh;
+    private final long[] v6StartLow;
+    private final long[] v6EndHigh;
+    private final long[] v6EndLow;
+
+    private IpRanges(List<long[]> v4, List<long[]> v6) {
+        v4Start = new long[v4.size()];
+        v4End = new long[v4.size()];
+        for (int i = 0; i < v4.size(); i++) {
+            v4Start[i] = v4.get(i)[0];
+            v4End[i] = v4.get(i)[1];
+        }
+        v6StartHigh = new long[v6.size()];
+        v6StartLow = new long[v6.size()];
+        v6EndHigh = new long[v6.size()];
+        v6EndLow = new long[v6.size()];
+        for (int i = 0; i < v6.size(); i++) {
+            v6StartHigh[i] = v6.get(i)[0];
+            v6StartLow[i] = v6.get(i)[1];
+            v6EndHigh[i] = v6.get(i)[2];
+            v6EndLow[i] = v6.get(i)[3];
+        }
+    }
+
+    /*
+     * Builds the set from CIDR blocks, a bare address is a block of one
+     * Throws IllegalArgumentException naming the first block that does not parse
+     */
+    public static IpRanges of(List<String> blocks) {
+        List<long[]> v4 = new ArrayList<>();
+        List<long[]> v6 = new ArrayList<>();
+        for (String block : blocks) {
+            String text = block.trim();
+            int slash = text.indexOf('/');
+            String address = slash < 0 ? text : text.substring(0, slash);
+            int prefix;
+            try {
+                prefix = slash < 0 ? -1 : Integer.parseInt(text.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid CIDR block: " + block);
+            }
+            // -1 stands for no prefix, a written one must not be negative
+            if (slash >= 0 && prefix < 0) {
+                throw new IllegalArgumentException("Invalid CIDR block: " + block);
+            }
+
+            if (address.indexOf(':') < 0) {
+                long value = parse4(address, 0, address.length());
+                if (value < 0 || prefix > 32) {
+                    throw new IllegalArgumentException("Invalid CIDR block: " + block);
+                }
+                int bits = prefix < 0 ? 32 : prefix;
+                long hostMask = bits == 0 ? 0xFFFFFFFFL : (1L << (32 - bits)) - 1;
+                v4.add(new long[] {value & ~hostMask, value | hostMask});
+            } else {
+                if (walk6(address, 0, address.length(), VALID) == 0 || prefix > 128) {
+                    throw new IllegalArgumentException("Invalid CIDR block: " + block);
+                }
+                int bits = prefix < 0 ? 128 : prefix;
+                long high = walk6(address, 0, address.length(), HIGH);
+                long low = walk6(address, 0, address.length(), LOW);
+                if (high == 0 && (low >>> 32) == 0xFFFFL && bits >= 96) {
+                    long hostMask = bits == 96 ? 0xFFFFFFFFL : (1L << (128 - bits)) - 1;
+                    long value = low & 0xFFFFFFFFL;
+                    v4.add(new long[] {value & ~hostMask, value | hostMask});
+                    continue;
+                }
+                long hostHigh = bits >= 64 ? 0 : (bits == 0 ? -1L : -1L >>> bits);
+                long hostLow = bits >= 128 ? 0 : (bits <= 64 ? -1L : -1L >>> (bits - 64));
+                v6.add(new long[] {high & ~hostHigh, low & ~hostLow, high | hostHigh, low | hostLow});
+            }
+        }
+        return new IpRanges(merge4(v4), merge6(v6));
+    }
+
+    public boolean isEmpty() {
+        return v4Start.length == 0 && v6StartHigh.length == 0;
+    }
+
+    public boolean contains(CharSequence address) {
+        return contains(address, 0, address.length());
+    }
+
+    /*
+     * Checks the address in address[from, to), e.g. one entry of an X-Forwarded-For header
+     * Anything that is not an IP literal is not contained
+     */
+    public boolean contains(CharSequence address, int from, int to) {
+        boolean v6 = false;
+        for (int i = from; i < to; i++) {
+            if (address.charAt(i) == ':') {
+                v6 = true;
+                break;
+            }
+        }
+        if (!v6) {
+            long value = parse4(address, from, to);
+            return value >= 0 && contains4(value);
+        }
+
+        if (walk6(address, from, to, VALID) == 0) {
+            return false;
+        }
+        long high = walk6(address, from, to, HIGH);
+        long low = walk6(address, from, to, LOW);
+        if (high == 0 && (low >>> 32) == 0xFFFFL) {
+            return contains4(low & 0xFFFFFFFFL);
+        }
+        return contains6(high, low);
+    }
+
+    private boolean contains4(long value) {
+        int low = 0;
+        int high = v4Start.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (v4Start[mid] <= value) {
+                if (value <= v4End[mid]) {
+                    return true;
+                }
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains6(long valueHigh, long valueLow) {
+        int low = 0;
+        int high = v6StartHigh.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(v6StartHigh[mid], v6StartLow[mid], valueHigh, valueLow) <= 0) {
+                if (compare(valueHigh, valueLow, v6EndHigh[mid], v6EndLow[mid]) <= 0) {
+                    return true;
+                }
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return false;
+    }
+
+    private static int compare(long aHigh, long aLow, long bHigh, long bLow) {
+        int high = Long.compareUnsigned(aHigh, bHigh);
+        return high != 0 ? high : Long.compareUnsigned(aLow, bLow);
+    }
+
+    /*
+     * Dotted quad in s[from, to) as an unsigned 32 bit value, -1 if it is not one
+     */
+    static long parse4(CharSequence s, int from, int to) {
+        long value = 0;
+        int octets = 0;
+        int i = from;
+        while (i < to) {
+            int octet = 0;
+            int digits = 0;
+            while (i < to && s.charAt(i) != '.') {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9' || ++digits > 3) {
+                    return -1;
+                }
+                octet = octet * 10 + (c - '0');
+                i++;
+            }
+            if (digits == 0 || octet > 255 || ++octets > 4) {
+                return -1;
+            }
+            value = (value << 8) | octet;
+            if (i < to) {
+                i++;
+                if (i == to) {
+                    return -1;
+                }
+            }
+        }
+        return octets == 4 ? value : -1;
+    }
+
+    /*
+     * Walks the IPv6 literal in s[from, to), full, with ::, with a dotted IPv4 tail, a %zone is ignored
+     * part HIGH or LOW returns that half of the 128 bit value, VALID returns 1 for a well formed literal, 0 otherwise
+     * Called once per part so no holder object is needed for the two halves
+     */
+    static long walk6(CharSequence s, int from, int to, int part) {
+        int end = to;
+        for (int i = from; i < end; i++) {
+            if (s.charAt(i) == '%') {
+                end = i;
+                break;
+            }
+        }
+
+        long headHigh = 0;
+        long headLow = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        int headGroups = 0;
+        int tailGroups = 0;
+        boolean compressed = false;
+
+        int i = from;
+        if (end - from >= 2 && s.charAt(from) == ':' && s.charAt(from + 1) == ':') {
+            compressed = true;
+            i = from + 2;
+        } else if (end == from || s.charAt(from) == ':') {
+            return part == VALID ? 0 : -1;
+        }
+
+        while (i < end) {
+            int start = i;
+            boolean dotted = false;
+            int group = 0;
+            while (i < end && s.charAt(i) != ':') {
+                char c = s.charAt(i);
+                if (c == '.') {
+                    dotted = true;
+                } else if (!dotted) {
+                    int digit = Character.digit(c, 16);
+                    if (digit < 0) {
+                        return part == VALID ? 0 : -1;
+                    }
+                    group = (group << 4) | digit;
+                }
+                i++;
+            }
+
+            int groups;
+            long value;
+            if (dotted) {
+                long v4 = i == end ? parse4(s, start, end) : -1;
+                if (v4 < 0) {
+                    return part == VALID ? 0 : -1;
+                }
+                groups = 2;
+                value = v4;
+            } else {
+                if (i - start == 0 || i - start > 4) {
+                    return part == VALID ? 0 : -1;
+                }
+                groups = 1;
+                value = group;
+            }
+
+            int shift = 16 * groups;
+            if (compressed) {
+                tailHigh = (tailHigh << shift) | (tailLow >>> (64 - shift));
+                tailLow = (tailLow << shift) | value;
+                tailGroups += groups;
+            } else {
+                headHigh = (headHigh << shift) | (headLow >>> (64 - shift));
+                headLow = (headLow << shift) | value;
+                headGroups += groups;
+            }
+
+            if (i < end) {
+                i++;
+                if (i < end && s.charAt(i) == ':') {
+                    if (compressed) {
+                        return part == VALID ? 0 : -1;
+                    }
+                    compressed = true;
+                    i++;
+                } else if (i == end) {
+                    return part == VALID ? 0 : -1;
+                }
+            }
+        }
+
+        int total = headGroups + tailGroups;
+        if (compressed ? total > 7 : total != 8) {
+            return part == VALID ? 0 : -1;
+        }
+        if (part == VALID) {
+            return 1;
+        }
+
+        int shift = 16 * (8 - headGroups);
+        long high;
+        long low;
+        if (shift == 0) {
+            high = headHigh;
+            low = headLow;
+        } else if (shift < 64) {
+            high = (headHigh << shift) | (headLow >>> (64 - shift));
+            low = headLow << shift;
+        } else if (shift < 128) {
+            high = headLow << (shift - 64);
+            low = 0;
+        } else {
+            high = 0;
+            low = 0;
+        }
+        return part == HIGH ? high | tailHigh : low | tailLow;
+    }
+
+    private static List<long[]> merge4(List<long[]> ranges) {
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(Arrays.copyOf(range, 2));
+            }
+        }
+        return merged;
+    }
+
+    private static List<long[]> merge6(List<long[]> ranges) {
+        ranges.sort((a, b) -> compare(a[0], a[1], b[0], b[1]));
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && compare(range[0], range[1], last[2], last[3]) <= 0) {
+                if (compare(range[2], range[3], last[2], last[3]) > 0) {
+                    last[2] = range[2];
+                    last[3] = range[3];
+                }
+            } else {
+                merged.add(Arrays.copyOf(range, 4));
+            }
+        }
+        return merged;
+    }
+}
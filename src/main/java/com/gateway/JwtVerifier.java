@@ -0,0 +1,385 @@
+package com.gateway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/*
+ * JwtVerifier checks signed JWTs in process for services with auth.mode local, see Registry.Auth
+ * The signature is checked with the JDK against the key named by kid in the JWKS of the service,
+ * RS256/384/512, PS256/384/512 and ES256/384/512 are accepted, anything else (none, HS*) is rejected
+ *
+ * Key sets are kept per jwks location, shared by services using the same one, and fetched again
+ * every gateway.jwks.refresh-interval on a background thread, a failed fetch keeps the previous keys
+ * Requests never wait for a fetch, a token that cannot be checked yet is UNKNOWN and left to the auth service
+ */
+@Component
+public class JwtVerifier {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtVerifier.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public enum Verdict {
+        VALID,
+        INVALID,
+        UNKNOWN
+    }
+
+    private final Registry registry;
+    private final GatewayProperties.Jwks settings;
+    private final Map<String, KeySet> keySets = new ConcurrentHashMap<>();
+    private final HttpClient http;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwks-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public JwtVerifier(Registry registry, GatewayProperties properties) {
+        this.registry = registry;
+        this.settings = properties.getJwks();
+        this.http = HttpClient.newBuilder().connectTimeout(settings.getTimeout()).build();
+    }
+
+    /*
+     * Starts fetching the key sets of all local auth services so they are ready before the first token
+     */
+    @PostConstruct
+    public void start() {
+        watch(registry.getList());
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    /*
+     * New jwks locations start loading, locations no service uses anymore stop being refreshed
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        Set<String> used = watch(event.current());
+        keySets.entrySet().removeIf(entry -> {
+            if (used.contains(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().cancel();
+            return true;
+        });
+    }
+
+    private Set<String> watch(List<Registry.Service> services) {
+        Set<String> locations = new HashSet<>();
+        for (Registry.Service service : services) {
+            Registry.Auth auth = service.getAuth();
+            if (auth.getMode() == Registry.AuthMode.LOCAL && auth.getJwks() != null) {
+                locations.add(auth.getJwks());
+                keySet(auth.getJwks());
+            }
+        }
+        return locations;
+    }
+
+    private KeySet keySet(String location) {
+        return keySets.computeIfAbsent(location, key -> {
+            KeySet keySet = new KeySet(key);
+            long interval = Math.max(1000, settings.getRefreshInterval().toMillis());
+            keySet.task = refresher.scheduleWithFixedDelay(keySet::refresh, 0, interval, TimeUnit.MILLISECONDS);
+            return keySet;
+        });
+    }
+
+    /*
+     * Fetches the key set of location now, on the calling thread
+     */
+    void refresh(String location) {
+        keySet(location).refresh();
+    }
+
+    /*
+     * VALID -> signature, exp, nbf, iss and aud are good
+     * INVALID -> the token is a JWT that fails any of them
+     * UNKNOWN -> not a JWT, or signed with a key that is not loaded (yet)
+     */
+    public Verdict verify(String token, Registry.Auth auth) {
+        int first = token.indexOf('.');
+        int second = first < 0 ? -1 : token.indexOf('.', first + 1);
+        if (second < 0 || token.indexOf('.', second + 1) >= 0) {
+            return Verdict.UNKNOWN;
+        }
+
+        JsonNode header;
+        JsonNode claims;
+        byte[] signature;
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            header = MAPPER.readTree(decoder.decode(token.substring(0, first)));
+            claims = MAPPER.readTree(decoder.decode(token.substring(first + 1, second)));
+            signature = decoder.decode(token.substring(second + 1));
+        } catch (IOException | IllegalArgumentException e) {
+            return Verdict.UNKNOWN;
+        }
+        if (header == null || !header.isObject() || claims == null || !claims.isObject()) {
+            return Verdict.UNKNOWN;
+        }
+
+        String algorithm = header.path("alg").asText();
+        if (!isSupported(algorithm)) {
+            log.warn("Rejected token signed with unsupported algorithm {}", algorithm);
+            return Verdict.INVALID;
+        }
+
+        KeySet keySet = keySet(auth.getJwks());
+        Map<String, PublicKey> keys = keySet.keys;
+        if (keys == null) {
+            return Verdict.UNKNOWN;
+        }
+        JsonNode kid = header.get("kid");
+        PublicKey key = kid != null ? keys.get(kid.asText()) : keys.size() == 1 ? keys.values().iterator().next() : null;
+        if (key == null) {
+            keySet.refreshSoon();
+            return Verdict.UNKNOWN;
+        }
+
+        try {
+            byte[] signed = token.substring(0, second).getBytes(StandardCharsets.US_ASCII);
+            if (!verifySignature(algorithm, key, signed, signature)) {
+                return Verdict.INVALID;
+            }
+        } catch (GeneralSecurityException e) {
+            log.warn("Token signature could not be checked: {}", e.getMessage());
+            return Verdict.INVALID;
+        }
+        return checkClaims(claims, auth, System.currentTimeMillis() / 1000) ? Verdict.VALID : Verdict.INVALID;
+    }
+
+    /*
+     * exp is required, nbf optional, both in seconds, clock skew applies to both
+     */
+    static boolean checkClaims(JsonNode claims, Registry.Auth auth, long nowSeconds) {
+        long skew = auth.getClockSkew().toSeconds();
+        JsonNode exp = claims.get("exp");
+        if (exp == null || !exp.isNumber() || exp.asLong() + skew <= nowSeconds) {
+            return false;
+        }
+        JsonNode nbf = claims.get("nbf");
+        if (nbf != null && (!nbf.isNumber() || nbf.asLong() - skew > nowSeconds)) {
+            return false;
+        }
+        if (auth.getIssuer() != null && !auth.getIssuer().equals(claims.path("iss").asText(null))) {
+            return false;
+        }
+        if (!auth.getAudience().isEmpty()) {
+            JsonNode aud = claims.get("aud");
+            if (aud == null) {
+                return false;
+            }
+            if (aud.isArray()) {
+                for (JsonNode value : aud) {
+                    if (auth.getAudience().contains(value.asText())) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return auth.getAudience().contains(aud.asText());
+        }
+        return true;
+    }
+
+    private static boolean isSupported(String algorithm) {
+        return switch (algorithm) {
+            case "RS256", "RS384", "RS512", "PS256", "PS384", "PS512", "ES256", "ES384", "ES512" -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean verifySignature(String algorithm, PublicKey key, byte[] signed, byte[] signature)
+            throws GeneralSecurityException {
+        String bits = algorithm.substring(2);
+        Signature verifier;
+        switch (algorithm.charAt(0)) {
+            case 'R':
+                if (!(key instanceof RSAPublicKey)) {
+                    return false;
+                }
+                verifier = Signature.getInstance("SHA" + bits + "withRSA");
+                break;
+            case 'P':
+                if (!(key instanceof RSAPublicKey)) {
+                    return false;
+                }
+                verifier = Signature.getInstance("RSASSA-PSS");
+                verifier.setParameter(new PSSParameterSpec("SHA-" + bits, "MGF1",
+                        new MGF1ParameterSpec("SHA-" + bits), Integer.parseInt(bits) / 8, 1));
+                break;
+            default:
+                if (!(key instanceof ECPublicKey)) {
+                    return false;
+                }
+                /*
+                 * JWS carries r || s, the P1363 format of the JDK, not DER
+                 */
+                verifier = Signature.getInstance("SHA" + bits + "withECDSAinP1363Format");
+                break;
+        }
+        verifier.initVerify(key);
+        verifier.update(signed);
+        return verifier.verify(signature);
+    }
+
+    /*
+     * Public signing keys of a JWKS document by kid, keys for other uses than sig are skipped
+     * Keys without kid are kept under an empty kid
+     */
+    static Map<String, PublicKey> parseKeys(JsonNode jwks) throws GeneralSecurityException {
+        Map<String, PublicKey> keys = new HashMap<>();
+        for (JsonNode jwk : jwks.path("keys")) {
+            if (jwk.has("use") && !"sig".equals(jwk.get("use").asText())) {
+                continue;
+            }
+            String kid = jwk.path("kid").asText("");
+            switch (jwk.path("kty").asText()) {
+                case "RSA":
+                    keys.put(kid, KeyFactory.getInstance("RSA").generatePublic(
+                            new RSAPublicKeySpec(unsigned(jwk, "n"), unsigned(jwk, "e"))));
+                    break;
+                case "EC":
+                    AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                    parameters.init(new ECGenParameterSpec(curve(jwk.path("crv").asText())));
+                    ECPoint point = new ECPoint(unsigned(jwk, "x"), unsigned(jwk, "y"));
+                    keys.put(kid, KeyFactory.getInstance("EC").generatePublic(
+                            new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class))));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return keys;
+    }
+
+    private static BigInteger unsigned(JsonNode jwk, String field) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path(field).asText()));
+    }
+
+    private static String curve(String crv) throws GeneralSecurityException {
+        return switch (crv) {
+            case "P-256" -> "secp256r1";
+            case "P-384" -> "secp384r1";
+            case "P-521" -> "secp521r1";
+            default -> throw new GeneralSecurityException("Unsupported curve " + crv);
+        };
+    }
+
+    /*
+     * Keys of one jwks location, replaced as a whole on every successful fetch
+     * keys stays null until the first fetch succeeds
+     */
+    private final class KeySet {
+        private final String location;
+        private volatile Map<String, PublicKey> keys;
+        private volatile long lastFetch;
+        private volatile ScheduledFuture<?> task;
+
+        KeySet(String location) {
+            this.location = location;
+        }
+
+        synchronized void refresh() {
+            lastFetch = System.nanoTime();
+            try {
+                Map<String, PublicKey> fetched = parseKeys(MAPPER.readTree(fetch()));
+                keys = Map.copyOf(fetched);
+                log.info("Loaded {} signing keys from {}", fetched.size(), location);
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                log.error("Failed to load signing keys from {}: {}", location, e.getMessage());
+            }
+        }
+
+        /*
+         * Early fetch for a kid that is not known yet, keys may have been rotated
+         */
+        void refreshSoon() {
+            long since = System.nanoTime() - lastFetch;
+            if (since >= settings.getMinRefreshInterval().toNanos() && !refresher.isShutdown()) {
+                lastFetch = System.nanoTime();
+                refresher.execute(this::refresh);
+            }
+        }
+
+        void cancel() {
+            ScheduledFuture<?> scheduled = task;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+
+        private byte[] fetch() throws IOException {
+            if (location.startsWith("http://") || location.startsWith("https://")) {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(location))
+                        .timeout(settings.getTimeout())
+                        .header("Accept", "application/json")
+                        .GET()
+                        .build();
+                try {
+                    HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                    if (response.statusCode() != 200) {
+                        throw new IOException("status " + response.statusCode());
+                    }
+                    return response.body();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted", e);
+                }
+            }
+            Resource resource = new DefaultResourceLoader().getResource(location);
+            try (InputStream in = resource.getInputStream()) {
+                return in.readAllBytes();
+            }
+        }
+    }
+}
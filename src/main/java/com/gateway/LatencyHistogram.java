@@ -0,0 +1,103 @@
+package com.gateway;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * LatencyHistogram records durations in microseconds into log-linear buckets, HDR histogram style
+ * Every power of two is split into SUB_BUCKETS equal buckets, so a bucket is at most 12.5% wide
+ * Values below SUB_BUCKETS get one exact bucket each
+ * Recording is a few shifts and an atomic increment, it never allocates or locks
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSumSeconds() {
+        return sumMicros.sum() / 1_000_000.0;
+    }
+
+    /*
+     * Number of recorded values up to upperMicros, bucket granularity
+     */
+    public long countAtOrBelow(long upperMicros) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (upperBound(i) > upperMicros) {
+                break;
+            }
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /*
+     * Value in microseconds below which the given fraction of the recorded values fall, e.g. 0.99
+     * Reported as the upper bound of the bucket it lands in, 0 if nothing was recorded
+     */
+    public long quantileMicros(double quantile) {
+        return quantileMicros(quantile, null);
+    }
+
+    /*
+     * Same over the values recorded in this and other together, other may be null
+     */
+    public long quantileMicros(double quantile, LatencyHistogram other) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += count(i, other);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += count(i, other);
+            if (seen >= target) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private long count(int index, LatencyHistogram other) {
+        return other != null ? counts.get(index) + other.counts.get(index) : counts.get(index);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS | sub) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,362 @@
+package com.gateway;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/*
+ * LoadBalancer picks the instance of a service each request is sent to
+ * Every instance is an @Endpoint with a lock free counter of requests in flight
+ * The strategy is services.list[*].load-balancing, see Registry.LoadBalancing
+ * Picking never takes a lock, a request only touches atomics
+ * Endpoints marked down by @HealthChecker or ejected as outliers are skipped
+ * Outlier ejection is capped per service, the last available endpoint is never ejected
+ */
+@Component
+public class LoadBalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancer.class);
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    /*
+     * Picks the endpoint for one request, the caller must call acquire / release around the exchange
+     * Returns null when no endpoint of the service is available, the request should fail fast
+     */
+    public Endpoint choose(Registry.Service service) {
+        return pool(service).choose();
+    }
+
+    /*
+     * All endpoints of the service
+     */
+    public List<Endpoint> endpoints(Registry.Service service) {
+        return List.of(pool(service).endpoints);
+    }
+
+    /*
+     * Endpoints of changed services are rebuilt from the new instance list, health included
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        event.changed().forEach(pools::remove);
+    }
+
+    private Pool pool(Registry.Service service) {
+        return pools.computeIfAbsent(service.getName(), name -> new Pool(service));
+    }
+
+    /*
+     * Runtime side of one instance
+     * healthy is driven by active probes, ejectedUntil by passive outlier detection on live traffic
+     */
+    public static final class Endpoint {
+        private final String service;
+        private final String host;
+        private final int port;
+        private final int weight;
+        private final Registry.OutlierDetection outlierDetection;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private volatile boolean healthy = true;
+        private final AtomicInteger probeFailures = new AtomicInteger();
+        private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger ejections = new AtomicInteger();
+        private volatile long ejectedUntil;
+        private volatile boolean ejected;
+        private Endpoint[] siblings = {this};
+
+        Endpoint(Registry.Service service, String host, int port, int weight) {
+            this.service = service.getName();
+            this.host = host;
+            this.port = port;
+            this.weight = Math.max(1, weight);
+            this.outlierDetection = service.getOutlierDetection();
+        }
+
+        public String getHost() { return host; }
+        public int getPort() { return port; }
+        public int getWeight() { return weight; }
+        public int getInFlight() { return inFlight.get(); }
+        public boolean isHealthy() { return healthy; }
+
+        public String getAddress() {
+            return host + ":" + port;
+        }
+
+        public void acquire() {
+            inFlight.incrementAndGet();
+        }
+
+        public void release() {
+            inFlight.decrementAndGet();
+        }
+
+        /*
+         * Healthy and not ejected, an expired ejection admits the endpoint again
+         */
+        public boolean isAvailable() {
+            if (!healthy) {
+                return false;
+            }
+            if (ejected) {
+                if (System.nanoTime() - ejectedUntil < 0) {
+                    return false;
+                }
+                ejected = false;
+                log.info("Endpoint {} of service {} admitted again after ejection", getAddress(), service);
+            }
+            return true;
+        }
+
+        /*
+         * Passive outlier detection, called with the status of every live exchange
+         * Only statuses in outlierDetection.failureStatuses count against the endpoint
+         */
+        public void recordResponse(int status, long latencyNanos) {
+            if (outlierDetection.getFailureStatuses().contains(status)) {
+                recordFailure();
+            } else {
+                recordSuccess(latencyNanos);
+            }
+        }
+
+        public void recordSuccess(long latencyNanos) {
+            if (latencyNanos > outlierDetection.getSlowCallThreshold().toNanos()) {
+                recordFailure();
+                return;
+            }
+            consecutiveFailures.set(0);
+            ejections.set(0);
+        }
+
+        public void recordFailure() {
+            if (!outlierDetection.isEnabled()) {
+                return;
+            }
+            if (consecutiveFailures.incrementAndGet() < outlierDetection.getConsecutiveFailures() || ejected) {
+                return;
+            }
+            consecutiveFailures.set(0);
+            /*
+             * Siblings decide one at a time so two endpoints failing together cannot both take the last slot
+             */
+            synchronized (siblings) {
+                long now = System.nanoTime();
+                if (!mayEject(now)) {
+                    log.debug("Endpoint {} of service {} keeps failing, not ejected to keep the service reachable",
+                            getAddress(), service);
+                    return;
+                }
+                long base = outlierDetection.getBaseEjectionTime().toNanos();
+                long ejection = Math.min(base << Math.min(ejections.getAndIncrement(), 16),
+                        outlierDetection.getMaxEjectionTime().toNanos());
+                ejectedUntil = now + ejection;
+                ejected = true;
+                log.warn("Endpoint {} of service {} ejected for {} ms after repeated failures",
+                        getAddress(), service, ejection / 1_000_000);
+            }
+        }
+
+        /*
+         * Another endpoint must stay available and at most maxEjectionPercent of them may be ejected,
+         * counting this one
+         */
+        private boolean mayEject(long now) {
+            int ejectedNow = 0;
+            int othersAvailable = 0;
+            for (Endpoint sibling : siblings) {
+                if (sibling == this) {
+                    continue;
+                }
+                if (sibling.isEjected(now)) {
+                    ejectedNow++;
+                } else if (sibling.healthy) {
+                    othersAvailable++;
+                }
+            }
+            return othersAvailable > 0
+                    && (ejectedNow + 1) * 100 <= outlierDetection.getMaxEjectionPercent() * siblings.length;
+        }
+
+        private boolean isEjected(long now) {
+            return ejected && now - ejectedUntil < 0;
+        }
+
+        /*
+         * Active health checking, called with the outcome of every probe
+         */
+        void recordProbe(boolean success, Registry.HealthCheck healthCheck) {
+            if (success) {
+                probeFailures.set(0);
+                if (!healthy && probeSuccesses.incrementAndGet() >= healthCheck.getHealthyThreshold()) {
+                    healthy = true;
+                    log.info("Endpoint {} of service {} is healthy again", getAddress(), service);
+                }
+            } else {
+                probeSuccesses.set(0);
+                if (healthy && probeFailures.incrementAndGet() >= healthCheck.getUnhealthyThreshold()) {
+                    healthy = false;
+                    log.warn("Endpoint {} of service {} failed {} health checks, taken out",
+                            getAddress(), service, healthCheck.getUnhealthyThreshold());
+                }
+            }
+        }
+
+        /*
+         * true if this endpoint carries less load per weight than other
+         */
+        boolean lessLoadedThan(Endpoint other) {
+            return (long) inFlight.get() * other.weight < (long) other.inFlight.get() * weight;
+        }
+    }
+
+    /*
+     * Endpoints of one service with the precomputed data the strategies need
+     * schedule is a smooth weighted round robin order, e.g. weights a=2 b=1 -> [a, b, a]
+     * cumulativeWeights is used to draw weighted random endpoints
+     */
+    private static final class Pool {
+        private final Registry.LoadBalancing strategy;
+        private final Endpoint[] endpoints;
+        private final int[] schedule;
+        private final int[] cumulativeWeights;
+        private final AtomicLong next = new AtomicLong();
+
+        Pool(Registry.Service service) {
+            this.strategy = service.getLoadBalancing();
+
+            List<Endpoint> list = new ArrayList<>();
+            for (Registry.Instance instance : service.getInstances()) {
+                list.add(new Endpoint(service, instance.getHost(), instance.getPort(), instance.getWeight()));
+            }
+            if (list.isEmpty()) {
+                list.add(new Endpoint(service, service.getHost(), service.getPort(), 1));
+            }
+            this.endpoints = list.toArray(Endpoint[]::new);
+            for (Endpoint endpoint : endpoints) {
+                endpoint.siblings = endpoints;
+            }
+
+            this.cumulativeWeights = new int[endpoints.length];
+            int total = 0;
+            for (int i = 0; i < endpoints.length; i++) {
+                total += endpoints[i].weight;
+                cumulativeWeights[i] = total;
+            }
+            this.schedule = smoothSchedule(endpoints, total);
+        }
+
+        Endpoint choose() {
+            if (endpoints.length == 1) {
+                return endpoints[0].isAvailable() ? endpoints[0] : null;
+            }
+            switch (strategy) {
+                case LEAST_REQUESTS: {
+                    /*
+                     * Start the scan at a rotating offset so ties do not all land on the first endpoint
+                     */
+                    int offset = (int) (next.getAndIncrement() % endpoints.length);
+                    Endpoint best = null;
+                    for (int i = 0; i < endpoints.length; i++) {
+                        Endpoint candidate = endpoints[(offset + i) % endpoints.length];
+                        if (candidate.isAvailable() && (best == null || candidate.lessLoadedThan(best))) {
+                            best = candidate;
+                        }
+                    }
+                    return best;
+                }
+                case POWER_OF_TWO: {
+                    Endpoint first = weightedRandom();
+                    Endpoint second = weightedRandom();
+                    if (first == second) {
+                        second = endpoints[ThreadLocalRandom.current().nextInt(endpoints.length)];
+                    }
+                    boolean firstAvailable = first.isAvailable();
+                    boolean secondAvailable = second.isAvailable();
+                    if (firstAvailable && secondAvailable) {
+                        return second.lessLoadedThan(first) ? second : first;
+                    }
+                    if (firstAvailable || secondAvailable) {
+                        return firstAvailable ? first : second;
+                    }
+                    return firstAvailableFrom(ThreadLocalRandom.current().nextInt(endpoints.length));
+                }
+                case ROUND_ROBIN:
+                default: {
+                    long start = next.getAndIncrement();
+                    for (int i = 0; i < schedule.length; i++) {
+                        Endpoint candidate = endpoints[schedule[(int) ((start + i) % schedule.length)]];
+                        if (candidate.isAvailable()) {
+                            return candidate;
+                        }
+                    }
+                    return null;
+                }
+            }
+        }
+
+        private Endpoint weightedRandom() {
+            int total = cumulativeWeights[cumulativeWeights.length - 1];
+            int point = ThreadLocalRandom.current().nextInt(total);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (point < cumulativeWeights[i]) {
+                    return endpoints[i];
+                }
+            }
+            return endpoints[endpoints.length - 1];
+        }
+
+        private Endpoint firstAvailableFrom(int offset) {
+            for (int i = 0; i < endpoints.length; i++) {
+                Endpoint candidate = endpoints[(offset + i) % endpoints.length];
+                if (candidate.isAvailable()) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        /*
+         * Smooth weighted round robin run once for a full cycle of total picks
+         * Each step every endpoint gains its weight, the highest is picked and loses total
+         */
+        private static int[] smoothSchedule(Endpoint[] endpoints, int total) {
+            int divisor = 0;
+            for (Endpoint endpoint : endpoints) {
+                divisor = gcd(divisor, endpoint.weight);
+            }
+            int cycle = total / divisor;
+
+            int[] schedule = new int[cycle];
+            int[] current = new int[endpoints.length];
+            for (int step = 0; step < cycle; step++) {
+                int best = 0;
+                for (int i = 0; i < endpoints.length; i++) {
+                    current[i] += endpoints[i].weight / divisor;
+                    if (current[i] > current[best]) {
+                        best = i;
+                    }
+                }
+                current[best] -= cycle;
+                schedule[step] = best;
+            }
+            return schedule;
+        }
+
+        private static int gcd(int a, int b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+    }
+}
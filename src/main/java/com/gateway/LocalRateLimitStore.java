@@ -0,0 +1,71 @@
+package com.gateway;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * In memory @RateLimitStore of a single gateway
+ * The state of a bucket is one AtomicLong, its theoretical arrival time, updated with CAS
+ * A bucket whose arrival time is in the past is full again and is swept, it is recreated on demand
+ * The sweep runs every sweepInterval once @start was called, the map stays usable while it runs
+ */
+public class LocalRateLimitStore implements RateLimitStore, AutoCloseable {
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final long sweepIntervalMillis;
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rate-limit-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LocalRateLimitStore(Duration sweepInterval) {
+        this.sweepIntervalMillis = Math.max(1, sweepInterval.toMillis());
+    }
+
+    public void start() {
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long acquire(String key, long intervalNanos, long burstNanos) {
+        long now = System.nanoTime();
+        AtomicLong state = buckets.get(key);
+        if (state == null) {
+            state = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        while (true) {
+            long arrival = state.get();
+            long next = (arrival - now > 0 ? arrival : now) + intervalNanos;
+            long allowedAt = next - burstNanos;
+            if (allowedAt - now > 0) {
+                return allowedAt - now;
+            }
+            if (state.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /*
+     * Number of buckets currently held
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    void sweep() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(state -> state.get() - now <= 0);
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+}
@@ -0,0 +1,296 @@
+package com.gateway;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/*
+ * Metrics keeps request counters and latency histograms per service, route template and exposure
+ * The hot path only bumps LongAdders and @LatencyHistogram buckets, nothing is locked or allocated
+ * once the series of a route exists
+ * Series are found by the Registry.Route object, requests that matched no route share one series
+ * per service under the route label "*", raw paths never become labels
+ * A series is identified by its labels, so a registry reload keeps the series of routes that stayed
+ * The method label is the one the route is declared for, "*" for routes that accept any method
+ *
+ * @scrape renders everything in the Prometheus text format, served by @MetricsController
+ */
+@Component
+public class Metrics {
+
+    /*
+     * Histogram bucket bounds in seconds exposed to Prometheus, the recorded resolution is finer
+     */
+    private static final double[] BUCKETS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+    private static final String[] STATUS_CLASSES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+    private static final String UNMATCHED = "*";
+
+    private final Map<Object, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final Map<String, RouteMetrics> series = new ConcurrentHashMap<>();
+    private final LongAdder unknownService = new LongAdder();
+
+    private final Registry registry;
+    private final TokenCache tokenCache;
+    private final LoadBalancer loadBalancer;
+    private final CircuitBreakers circuitBreakers;
+    private final ResponseCache responseCache;
+    private final ResponseCompression compression;
+    private final AccessLog accessLog;
+    private final Hedging hedging;
+    private final ConcurrencyLimits concurrencyLimits;
+
+    public Metrics(Registry registry, TokenCache tokenCache, LoadBalancer loadBalancer, CircuitBreakers circuitBreakers,
+                   ResponseCache responseCache, ResponseCompression compression, AccessLog accessLog, Hedging hedging,
+                   ConcurrencyLimits concurrencyLimits) {
+        this.registry = registry;
+        this.tokenCache = tokenCache;
+        this.loadBalancer = loadBalancer;
+        this.circuitBreakers = circuitBreakers;
+        this.responseCache = responseCache;
+        this.compression = compression;
+        this.accessLog = accessLog;
+        this.hedging = hedging;
+        this.concurrencyLimits = concurrencyLimits;
+    }
+
+    /*
+     * Records one finished request, stats.getMatch() is null when the service was not found
+     */
+    public void record(RequestStats stats, int status) {
+        RouteMatch match = stats.getMatch();
+        if (match == null) {
+            unknownService.increment();
+            return;
+        }
+        RouteMetrics metrics = forMatch(match);
+        long total = stats.elapsedNanos();
+        long auth = stats.getAuthNanos();
+        long upstream = stats.getUpstreamNanos();
+
+        metrics.statuses[status >= 100 && status < 600 ? status / 100 : 0].increment();
+        metrics.total.record(total);
+        if (auth > 0) {
+            metrics.auth.record(auth);
+        }
+        if (upstream > 0) {
+            metrics.upstream.record(upstream);
+        }
+        metrics.overhead.record(Math.max(0, total - auth - upstream));
+    }
+
+    /*
+     * Upstream latency of the route, used to size decisions on the observed distribution
+     */
+    public LatencyHistogram upstreamLatency(RouteMatch match) {
+        return forMatch(match).upstream;
+    }
+
+    private RouteMetrics forMatch(RouteMatch match) {
+        Object key = match.getRoute() != null ? match.getRoute() : match.getService();
+        RouteMetrics metrics = routes.get(key);
+        if (metrics == null) {
+            String labels = labels(match.getService(), match.getRoute());
+            metrics = series.computeIfAbsent(labels, RouteMetrics::new);
+            routes.putIfAbsent(key, metrics);
+        }
+        return metrics;
+    }
+
+    /*
+     * Route objects are replaced on reload, they are looked up again by labels on their next request
+     * Series of routes that are gone are dropped
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        Set<String> current = new HashSet<>();
+        for (Registry.Service service : event.current()) {
+            current.add(labels(service, null));
+            for (Registry.Route route : service.getRoutes()) {
+                current.add(labels(service, route));
+            }
+        }
+        routes.clear();
+        series.keySet().retainAll(current);
+    }
+
+    private static String labels(Registry.Service service, Registry.Route route) {
+        String template = route != null ? route.getPath() : UNMATCHED;
+        String method = route != null && route.getMethod() != null ? route.getMethod().toUpperCase() : UNMATCHED;
+        Registry.Exposure exposure = route != null && route.getExposure() != null
+                ? route.getExposure() : service.getDefaultExposure();
+        return "service=\"" + escape(service.getName()) + "\",route=\"" + escape(template)
+                + "\",method=\"" + escape(method) + "\",exposure=\"" + exposure + "\"";
+    }
+
+    /*
+     * Prometheus text exposition format 0.0.4
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+
+        header(out, "gateway_requests_total", "counter", "Requests answered by the gateway by status class");
+        for (RouteMetrics metrics : series.values()) {
+            for (int i = 0; i < STATUS_CLASSES.length; i++) {
+                long count = metrics.statuses[i].sum();
+                if (count > 0) {
+                    out.append("gateway_requests_total{").append(metrics.labels)
+                            .append(",status=\"").append(STATUS_CLASSES[i]).append("\"} ").append(count).append('\n');
+                }
+            }
+        }
+        header(out, "gateway_unknown_service_requests_total", "counter", "Requests for services that are not registered");
+        out.append("gateway_unknown_service_requests_total ").append(unknownService.sum()).append('\n');
+
+        histogram(out, "gateway_request_duration_seconds", "Time from request arrival to response headers", Series.TOTAL);
+        histogram(out, "gateway_upstream_duration_seconds", "Time waiting on upstream response headers, all attempts", Series.UPSTREAM);
+        histogram(out, "gateway_auth_duration_seconds", "Time spent verifying tokens", Series.AUTH);
+        histogram(out, "gateway_overhead_duration_seconds", "Request time not spent on auth or upstream", Series.OVERHEAD);
+
+        header(out, "gateway_auth_cache_hits_total", "counter", "Token verdicts served from the cache");
+        out.append("gateway_auth_cache_hits_total ").append(tokenCache.getHits()).append('\n');
+        header(out, "gateway_auth_cache_misses_total", "counter", "Token verdicts asked from the auth service");
+        out.append("gateway_auth_cache_misses_total ").append(tokenCache.getMisses()).append('\n');
+        header(out, "gateway_auth_cache_evictions_total", "counter", "Token verdicts evicted before expiry");
+        out.append("gateway_auth_cache_evictions_total ").append(tokenCache.getEvictions()).append('\n');
+
+        header(out, "gateway_response_cache_hits_total", "counter", "Answers served from the response cache");
+        out.append("gateway_response_cache_hits_total ").append(responseCache.getHits()).append('\n');
+        header(out, "gateway_response_cache_misses_total", "counter", "Cacheable requests fetched from the upstream");
+        out.append("gateway_response_cache_misses_total ").append(responseCache.getMisses()).append('\n');
+        header(out, "gateway_response_cache_revalidations_total", "counter", "Stale entries revalidated with If-None-Match");
+        out.append("gateway_response_cache_revalidations_total ").append(responseCache.getRevalidations()).append('\n');
+        header(out, "gateway_response_cache_evictions_total", "counter", "Entries evicted to stay within max-size");
+        out.append("gateway_response_cache_evictions_total ").append(responseCache.getEvictions()).append('\n');
+        header(out, "gateway_response_cache_bytes", "gauge", "Bytes held by the response cache");
+        out.append("gateway_response_cache_bytes ").append(responseCache.getBytes()).append('\n');
+
+        header(out, "gateway_compressed_responses_total", "counter", "Answers encoded by edge compression");
+        out.append("gateway_compressed_responses_total ").append(compression.getResponses()).append('\n');
+        header(out, "gateway_compression_bytes_total", "counter", "Bytes before and after edge compression");
+        out.append("gateway_compression_bytes_total{stage=\"in\"} ").append(compression.getBytesIn()).append('\n');
+        out.append("gateway_compression_bytes_total{stage=\"out\"} ").append(compression.getBytesOut()).append('\n');
+
+        header(out, "gateway_hedges_issued_total", "counter", "Second attempts sent for slow requests of hedged routes");
+        out.append("gateway_hedges_issued_total ").append(hedging.getIssued()).append('\n');
+        header(out, "gateway_hedges_won_total", "counter", "Hedged requests answered by the second attempt");
+        out.append("gateway_hedges_won_total ").append(hedging.getWon()).append('\n');
+
+        header(out, "gateway_access_log_dropped_total", "counter", "Access log entries dropped while the buffer was full");
+        out.append("gateway_access_log_dropped_total ").append(accessLog.getDropped()).append('\n');
+
+        header(out, "gateway_circuit_open", "gauge", "1 while the circuit of the service is not closed");
+        for (Registry.Service service : registry.getList()) {
+            boolean open = circuitBreakers.get(service).getState() != CircuitBreakers.State.CLOSED;
+            out.append("gateway_circuit_open{service=\"").append(escape(service.getName())).append("\"} ")
+                    .append(open ? 1 : 0).append('\n');
+        }
+
+        header(out, "gateway_concurrency_limit", "gauge", "Adaptive concurrency limit of the service");
+        for (Registry.Service service : registry.getList()) {
+            ConcurrencyLimits.Limiter limiter = concurrencyLimits.get(service);
+            if (limiter != null) {
+                out.append("gateway_concurrency_limit{service=\"").append(escape(service.getName())).append("\"} ")
+                        .append(limiter.getLimit()).append('\n');
+            }
+        }
+        header(out, "gateway_requests_shed_total", "counter", "Requests shed over the concurrency limit by exposure");
+        for (Registry.Service service : registry.getList()) {
+            ConcurrencyLimits.Limiter limiter = concurrencyLimits.get(service);
+            if (limiter != null) {
+                for (Registry.Exposure exposure : Registry.Exposure.values()) {
+                    out.append("gateway_requests_shed_total{service=\"").append(escape(service.getName()))
+                            .append("\",exposure=\"").append(exposure).append("\"} ")
+                            .append(limiter.getShed(exposure)).append('\n');
+                }
+            }
+        }
+
+        header(out, "gateway_endpoint_in_flight", "gauge", "Requests in flight per service instance");
+        for (Registry.Service service : registry.getList()) {
+            for (LoadBalancer.Endpoint endpoint : loadBalancer.endpoints(service)) {
+                out.append("gateway_endpoint_in_flight{service=\"").append(escape(service.getName()))
+                        .append("\",endpoint=\"").append(escape(endpoint.getAddress())).append("\"} ")
+                        .append(endpoint.getInFlight()).append('\n');
+            }
+        }
+        header(out, "gateway_endpoint_available", "gauge", "1 while the instance is healthy and not ejected");
+        for (Registry.Service service : registry.getList()) {
+            for (LoadBalancer.Endpoint endpoint : loadBalancer.endpoints(service)) {
+                out.append("gateway_endpoint_available{service=\"").append(escape(service.getName()))
+                        .append("\",endpoint=\"").append(escape(endpoint.getAddress())).append("\"} ")
+                        .append(endpoint.isAvailable() ? 1 : 0).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private void histogram(StringBuilder out, String name, String help, Series kind) {
+        header(out, name, "histogram", help);
+        for (RouteMetrics metrics : series.values()) {
+            LatencyHistogram histogram = metrics.get(kind);
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            for (double bound : BUCKETS) {
+                out.append(name).append("_bucket{").append(metrics.labels).append(",le=\"").append(bound).append("\"} ")
+                        .append(histogram.countAtOrBelow((long) (bound * 1_000_000))).append('\n');
+            }
+            out.append(name).append("_bucket{").append(metrics.labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+            out.append(name).append("_sum{").append(metrics.labels).append("} ").append(histogram.getSumSeconds()).append('\n');
+            out.append(name).append("_count{").append(metrics.labels).append("} ").append(count).append('\n');
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private enum Series {
+        TOTAL,
+        UPSTREAM,
+        AUTH,
+        OVERHEAD
+    }
+
+    /*
+     * All series of one route, labels are rendered once when the route is first seen
+     */
+    private static final class RouteMetrics {
+        private final String labels;
+        private final LongAdder[] statuses = new LongAdder[STATUS_CLASSES.length];
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LatencyHistogram upstream = new LatencyHistogram();
+        private final LatencyHistogram auth = new LatencyHistogram();
+        private final LatencyHistogram overhead = new LatencyHistogram();
+
+        RouteMetrics(String labels) {
+            this.labels = labels;
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+
+        LatencyHistogram get(Series series) {
+            switch (series) {
+                case UPSTREAM: return upstream;
+                case AUTH: return auth;
+                case OVERHEAD: return overhead;
+                case TOTAL:
+                default: return total;
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.gateway;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * Prometheus scrape endpoint, kept apart from the catch all mapping of @Controller
+ * Path is gateway.metrics.path, the more specific mapping wins over /** for GET
+ * Like a PRIVATE route it only answers callers from the internal network
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class MetricsController {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+    private final TrustedNetworks trustedNetworks;
+
+    @Autowired
+    public MetricsController(Metrics metrics, TrustedNetworks trustedNetworks) {
+        this.metrics = metrics;
+        this.trustedNetworks = trustedNetworks;
+    }
+
+    @GetMapping(value = "${gateway.metrics.path:/_gateway/metrics}", produces = CONTENT_TYPE)
+    public ResponseEntity<String> scrape(HttpServletRequest request) {
+        if (!trustedNetworks.isInternal(request, null)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Access denied: metrics");
+        }
+        return ResponseEntity.ok(metrics.scrape());
+    }
+}
@@ -0,0 +1,17 @@
+package com.gateway;
+
+/*
+ * Where @RateLimiter keeps the state of its buckets
+ * LocalRateLimitStore is used unless a bean of this type is defined, a shared store
+ * (e.g. the same GCRA step run as a script in Redis) lets several gateways enforce one limit
+ */
+public interface RateLimitStore {
+
+    /*
+     * One GCRA step for the bucket key
+     * intervalNanos is the time one request costs (period / limit), burstNanos how far ahead
+     * of now the bucket may run (intervalNanos * burst)
+     * Returns 0 if the request is allowed, otherwise the nanos until it would be
+     */
+    long acquire(String key, long intervalNanos, long burstNanos);
+}
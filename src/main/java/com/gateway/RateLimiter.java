@@ -0,0 +1,168 @@
+package com.gateway;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * RateLimiter enforces services.list[*].rate-limit and services.list[*].routes[*].rate-limit
+ * Each limit is a GCRA bucket per client key, kept in a @RateLimitStore
+ * The route limit is checked first, a request rejected there does not use up the service limit
+ * @check runs before the exposure checks, a rejected request reaches neither the auth service nor the upstream
+ * Limits keyed on the token subject of PROTECTED routes wait for @checkVerified, called once the token
+ * passed the auth check, so a forged sub never gets a bucket of its own
+ * Both engines share the store, @Service and @ReactiveService call the overload of their request type
+ */
+@Component
+public class RateLimiter {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final RateLimitStore store;
+    private final Utils utils;
+    private final TrustedNetworks trustedNetworks;
+
+    public RateLimiter(ObjectProvider<RateLimitStore> stores, GatewayProperties properties, Utils utils,
+                       TrustedNetworks trustedNetworks) {
+        this.store = stores.getIfAvailable(() -> new LocalRateLimitStore(properties.getRateLimit().getSweepInterval()));
+        this.utils = utils;
+        this.trustedNetworks = trustedNetworks;
+    }
+
+    /*
+     * Returns 0 if the request is within the limits of its route and service,
+     * otherwise the nanos the client should wait before trying again
+     * Subject limits of PROTECTED routes are left to @checkVerified
+     */
+    public long check(RouteMatch match, HttpServletRequest request) {
+        return check(match, limit -> clientKey(limit, request, false), false);
+    }
+
+    /*
+     * Subject limits of a PROTECTED route, once its token has been verified
+     */
+    public long checkVerified(RouteMatch match, HttpServletRequest request) {
+        return check(match, limit -> clientKey(limit, request, true), true);
+    }
+
+    /*
+     * Same for the reactive engine, see @ReactiveService
+     */
+    public long check(RouteMatch match, ServerHttpRequest request) {
+        return check(match, limit -> clientKey(limit, request, false), false);
+    }
+
+    public long checkVerified(RouteMatch match, ServerHttpRequest request) {
+        return check(match, limit -> clientKey(limit, request, true), true);
+    }
+
+    private long check(RouteMatch match, Function<Registry.RateLimit, String> clientKeys, boolean verified) {
+        Registry.Service service = match.getService();
+        Registry.Route route = match.getRoute();
+        boolean protectedRoute = match.getExposure() == Registry.Exposure.PROTECTED;
+        if (route != null) {
+            String scope = service.getName() + " " + (route.getMethod() != null ? route.getMethod() : "*") + " " + route.getPath();
+            long wait = check(route.getRateLimit(), scope, clientKeys, protectedRoute, verified);
+            if (wait > 0) {
+                return wait;
+            }
+        }
+        return check(service.getRateLimit(), service.getName(), clientKeys, protectedRoute, verified);
+    }
+
+    private long check(Registry.RateLimit limit, String scope, Function<Registry.RateLimit, String> clientKeys,
+                       boolean protectedRoute, boolean verified) {
+        boolean bySubject = protectedRoute && limit.getKey() == Registry.RateLimitKey.SUBJECT;
+        if (limit.getLimit() <= 0 || bySubject != verified) {
+            return 0;
+        }
+        long interval = Math.max(1, limit.getPeriod().toNanos() / limit.getLimit());
+        int burst = limit.getBurst() > 0 ? limit.getBurst() : limit.getLimit();
+        return store.acquire(scope + "|" + clientKeys.apply(limit), interval, interval * burst);
+    }
+
+    /*
+     * Who shares a bucket, addresses are the client behind trusted proxies, callers without the configured header or token fall back to their address
+     * The subject is only used once the token has been verified, before that a subject limit keys on the address
+     */
+    String clientKey(Registry.RateLimit limit, HttpServletRequest request, boolean verified) {
+        return clientKey(limit, verified, request::getHeader, () -> utils.extractToken(request),
+                () -> trustedNetworks.clientIp(request));
+    }
+
+    String clientKey(Registry.RateLimit limit, ServerHttpRequest request, boolean verified) {
+        return clientKey(limit, verified, request.getHeaders()::getFirst, () -> utils.extractToken(request),
+                () -> trustedNetworks.clientIp(request));
+    }
+
+    private static String clientKey(Registry.RateLimit limit, boolean verified, Function<String, String> headers,
+                                    Supplier<String> token, Supplier<String> clientIp) {
+        switch (limit.getKey()) {
+            case GLOBAL:
+                return "*";
+            case HEADER: {
+                String value = limit.getHeader() != null ? headers.apply(limit.getHeader()) : null;
+                if (value != null) {
+                    return "header:" + value;
+                }
+                break;
+            }
+            case SUBJECT: {
+                String value = verified ? token.get() : null;
+                if (value != null) {
+                    return "sub:" + subject(value);
+                }
+                break;
+            }
+            case IP:
+            default:
+                break;
+        }
+        return "ip:" + clientIp.get();
+    }
+
+    /*
+     * sub claim of a JWT, tokens that are not JWTs or carry no sub are keyed by their hash
+     */
+    static String subject(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length == 3) {
+            try {
+                JsonNode claims = MAPPER.readTree(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+                JsonNode sub = claims.get("sub");
+                if (sub != null && sub.isTextual()) {
+                    return sub.asText();
+                }
+            } catch (Exception e) {
+                // not a JWT, fall back to the hash
+            }
+        }
+        return TokenCache.hash(token);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (store instanceof LocalRateLimitStore local) {
+            local.start();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (store instanceof LocalRateLimitStore local) {
+            local.close();
+        }
+    }
+}
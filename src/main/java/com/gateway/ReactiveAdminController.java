@@ -0,0 +1,51 @@
+package com.gateway;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/*
+ * @MetricsController and @RegistryController for the reactive engine, same paths and same internal only access
+ * A reload reads and compiles the registry, it runs off the event loop
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAdminController {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+    private final RegistryReloader reloader;
+    private final TrustedNetworks trustedNetworks;
+
+    public ReactiveAdminController(Metrics metrics, RegistryReloader reloader, TrustedNetworks trustedNetworks) {
+        this.metrics = metrics;
+        this.reloader = reloader;
+        this.trustedNetworks = trustedNetworks;
+    }
+
+    @GetMapping(value = "${gateway.metrics.path:/_gateway/metrics}", produces = CONTENT_TYPE)
+    public ResponseEntity<String> scrape(ServerHttpRequest request) {
+        if (!trustedNetworks.isInternal(trustedNetworks.clientIp(request), null)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Access denied: metrics");
+        }
+        return ResponseEntity.ok(metrics.scrape());
+    }
+
+    @PostMapping("${gateway.registry.reload-path:/_gateway/registry/reload}")
+    public Mono<ResponseEntity<String>> reload(ServerHttpRequest request, @RequestBody(required = false) byte[] body) {
+        if (!trustedNetworks.isInternal(trustedNetworks.clientIp(request), null)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).body("Access denied: registry"));
+        }
+        return Mono.fromCallable(() -> RegistryController.reload(reloader, body))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
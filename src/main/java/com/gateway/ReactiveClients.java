@@ -0,0 +1,88 @@
+package com.gateway;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/*
+ * ReactiveClients is @UpstreamClients for the reactive engine, one non-blocking WebClient per service
+ * Each service gets its own Reactor Netty connection pool, maxConnections applies per instance host:port
+ * like the pooled engine, a request waits up to acquireTimeout for a connection without holding a thread
+ * Redirects and decompression are left to the client of the gateway
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveClients {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveClients.class);
+
+    private final Duration drainTimeout;
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    public ReactiveClients(GatewayProperties properties) {
+        Duration streamTimeout = properties.getForwarding().getStreamTimeout();
+        this.drainTimeout = streamTimeout.isZero() ? Duration.ofMinutes(5) : streamTimeout;
+    }
+
+    public WebClient getWebClient(Registry.Service service) {
+        return clients.computeIfAbsent(service.getName(), name -> {
+            Client client = createClient(service);
+            log.info("Created reactive client for service {}", name);
+            return client;
+        }).webClient();
+    }
+
+    private static Client createClient(Registry.Service service) {
+        Registry.Client settings = service.getClient();
+        ConnectionProvider provider = ConnectionProvider.builder("service-" + service.getName())
+                .maxConnections(settings.getMaxConnections())
+                .pendingAcquireTimeout(settings.getAcquireTimeout())
+                .maxIdleTime(settings.getIdleTimeout())
+                .build();
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.getConnectTimeout().toMillis())
+                .responseTimeout(settings.getReadTimeout())
+                .followRedirect(false)
+                .compress(false);
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+        return new Client(provider, webClient);
+    }
+
+    /*
+     * Clients of changed services are replaced on their next use
+     * The old pools still carry requests in flight, they are disposed once a body could still be streaming
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        for (String name : event.changed()) {
+            Client retired = clients.remove(name);
+            if (retired != null) {
+                retired.provider().disposeLater().delaySubscription(drainTimeout).subscribe();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        clients.values().forEach(client -> client.provider().dispose());
+        clients.clear();
+    }
+
+    private record Client(ConnectionProvider provider, WebClient webClient) {
+    }
+}
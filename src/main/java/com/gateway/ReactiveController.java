@@ -0,0 +1,31 @@
+package com.gateway;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/*
+ * @Controller of the reactive engine, active with spring.main.web-application-type=reactive
+ * The exchange is answered by @ReactiveService, which writes status, headers and body itself
+ */
+@CrossOrigin(origins = "*", allowedHeaders = "*", exposedHeaders = "Authorization")
+@RestController
+@RequestMapping("/")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveController {
+
+    private final ReactiveService service;
+
+    public ReactiveController(ReactiveService service) {
+        this.service = service;
+    }
+
+    @RequestMapping("/**")
+    public Mono<Void> incomingRequest(ServerWebExchange exchange) {
+        return service.forwardRequest(exchange);
+    }
+}
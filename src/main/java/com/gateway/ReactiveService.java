@@ -0,0 +1,339 @@
+package com.gateway;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/*
+ * ReactiveService runs the stages of @Service without blocking a thread, with spring.main.web-application-type=reactive
+ * Service resolution, exposure check and auth follow @Validator, @TrustedNetworks and @Utils like the servlet engine
+ * Bodies flow as DataBuffers between the Netty connections of the client and the upstream, a slow reader on one
+ * side stops the reads on the other, nothing is buffered beyond the buffers in flight
+ *
+ * Requests over a @RateLimiter limit are answered 429 before the exposure checks, subject limits once the token passed auth
+ * Requests pass the @ConcurrencyLimits, circuit breaker, @LoadBalancer and @Bulkhead of the service like on
+ * the servlet engine, a full bulkhead answers 503 right away as there is no thread to park
+ * Every answer is counted in @Metrics when its headers go out and written to the @AccessLog once the body went out
+ * Retries, @ResponseCache and @ResponseCompression only run on the servlet engine
+ */
+@org.springframework.stereotype.Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveService.class);
+    private static final MediaType TEXT = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
+    private final Registry registry;
+    private final Utils utils;
+    private final Validator validator;
+    private final ReactiveClients clients;
+    private final Bulkhead bulkhead;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final LoadBalancer loadBalancer;
+    private final CircuitBreakers circuitBreakers;
+    private final Metrics metrics;
+    private final TrustedNetworks trustedNetworks;
+    private final RateLimiter rateLimiter;
+    private final AccessLog accessLog;
+    private final long maxBodySize;
+    private final Duration streamTimeout;
+
+    public ReactiveService(Registry registry, Utils utils, Validator validator, ReactiveClients clients, Bulkhead bulkhead,
+                           ConcurrencyLimits concurrencyLimits, LoadBalancer loadBalancer,
+                           CircuitBreakers circuitBreakers, Metrics metrics,
+                           TrustedNetworks trustedNetworks, RateLimiter rateLimiter, AccessLog accessLog,
+                           GatewayProperties properties) {
+        this.registry = registry;
+        this.utils = utils;
+        this.validator = validator;
+        this.clients = clients;
+        this.bulkhead = bulkhead;
+        this.concurrencyLimits = concurrencyLimits;
+        this.loadBalancer = loadBalancer;
+        this.circuitBreakers = circuitBreakers;
+        this.metrics = metrics;
+        this.trustedNetworks = trustedNetworks;
+        this.rateLimiter = rateLimiter;
+        this.accessLog = accessLog;
+        this.maxBodySize = properties.getForwarding().getMaxBodySize().toBytes();
+        this.streamTimeout = properties.getForwarding().getStreamTimeout();
+    }
+
+    /*
+     * Answers the exchange, the returned Mono completes once the whole body was written to the client
+     */
+    public Mono<Void> forwardRequest(ServerWebExchange exchange) {
+        RequestStats stats = new RequestStats();
+        ServerHttpRequest request = exchange.getRequest();
+        CountingResponse response = new CountingResponse(exchange.getResponse());
+        response.beforeCommit(() -> {
+            metrics.record(stats, status(response));
+            return Mono.empty();
+        });
+        return Mono.defer(() -> handle(request, response, stats))
+                .onErrorResume(e -> {
+                    if (response.isCommitted()) {
+                        log.debug("Failed streaming {}: {}", request.getPath(), e.getMessage());
+                        return Mono.error(e);
+                    }
+                    log.error("Error forwarding request", e);
+                    return answer(response, HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage() != null ? e.getMessage() : "");
+                })
+                .doFinally(signal -> accessLog.log(stats, request.getMethod().name(), trustedNetworks.clientIp(request),
+                        status(response), response.bytes.get()));
+    }
+
+    private Mono<Void> handle(ServerHttpRequest request, ServerHttpResponse response, RequestStats stats) {
+        String url = request.getPath().value();
+        String serviceName = utils.extractServiceNameFromUrl(url);
+        String requestPath = utils.removeServiceNameFromUrl(url);
+        HttpMethod method = request.getMethod();
+
+        RouteMatch match = validator.checkExposure(serviceName, method.name(), requestPath);
+        stats.setMatch(match);
+        Registry.Service service = match.getService();
+        Registry.Exposure exposure = match.getExposure();
+
+        long wait = rateLimiter.check(match, request);
+        if (wait > 0) {
+            return tooManyRequests(response, wait, serviceName, url);
+        }
+
+        switch (exposure) {
+            case PUBLIC:
+                log.debug("PUBLIC route accessed: {}", url);
+                return forward(match, requestPath, method, request, response, stats);
+
+            case PRIVATE:
+                String clientIp = trustedNetworks.clientIp(request);
+                if (trustedNetworks.isInternal(clientIp, service)) {
+                    log.debug("PRIVATE route accessed from internal IP: {}", clientIp);
+                    return forward(match, requestPath, method, request, response, stats);
+                }
+                log.warn("Blocked PRIVATE route request from external IP: {}", clientIp);
+                return answer(response, HttpStatus.FORBIDDEN, "Access denied: PRIVATE route");
+
+            case PROTECTED:
+                long authStart = System.nanoTime();
+                return utils.isAuthenticated(request, service, clients, registry).flatMap(authenticated -> {
+                    stats.addAuthNanos(System.nanoTime() - authStart);
+                    if (authenticated) {
+                        long verifiedWait = rateLimiter.checkVerified(match, request);
+                        if (verifiedWait > 0) {
+                            return tooManyRequests(response, verifiedWait, serviceName, url);
+                        }
+                        log.debug("PROTECTED route accessed by authenticated user");
+                        return forward(match, requestPath, method, request, response, stats);
+                    }
+                    log.warn("Blocked PROTECTED route: unauthenticated user");
+                    return answer(response, HttpStatus.UNAUTHORIZED, "Authentication required");
+                });
+
+            default:
+                log.error("Unknown exposure type: {}", exposure);
+                return answer(response, HttpStatus.INTERNAL_SERVER_ERROR, "Unknown exposure type");
+        }
+    }
+
+    /*
+     * @forward sends the request to an instance of the service picked by @LoadBalancer, see Service.exchange
+     * The limit, the breaker and the endpoint learn the outcome once the upstream headers arrived or the exchange failed,
+     * the slots and the in flight count of the endpoint are held until the body was streamed
+     * Known Content-Length is passed on as is, otherwise the body goes out chunked
+     */
+    private Mono<Void> forward(RouteMatch match, String requestPath, HttpMethod method, ServerHttpRequest request,
+                               ServerHttpResponse response, RequestStats stats) {
+        Registry.Service service = match.getService();
+        if (request.getHeaders().getContentLength() > maxBodySize) {
+            log.warn("Rejected request to {}: body exceeds {} bytes", request.getPath(), maxBodySize);
+            return answer(response, HttpStatus.PAYLOAD_TOO_LARGE, "Request body exceeds " + maxBodySize + " bytes");
+        }
+
+        ConcurrencyLimits.Permit limit = concurrencyLimits.tryAcquire(service, match.getExposure());
+        if (limit == null) {
+            log.warn("Service {} is over its concurrency limit, shedding {} request {}",
+                    service.getName(), match.getExposure(), requestPath);
+            return answer(response, HttpStatus.SERVICE_UNAVAILABLE, "Service " + service.getName() + " is overloaded, try again later.");
+        }
+
+        CircuitBreakers.Breaker breaker = circuitBreakers.get(service);
+        if (!breaker.tryAcquire()) {
+            limit.release();
+            log.warn("Circuit of service {} is open, rejecting {}", service.getName(), requestPath);
+            return answer(response, HttpStatus.SERVICE_UNAVAILABLE, "Service " + service.getName() + " is currently unavailable.");
+        }
+
+        LoadBalancer.Endpoint endpoint = loadBalancer.choose(service);
+        if (endpoint == null) {
+            breaker.cancel();
+            limit.release();
+            log.warn("No available instance of service {}", service.getName());
+            return answer(response, HttpStatus.SERVICE_UNAVAILABLE, "Service " + service.getName() + " is currently unavailable.");
+        }
+        String targetUrl = utils.createTargetUrl(endpoint, requestPath);
+
+        Bulkhead.Permit permit = bulkhead.tryAcquireNow(service);
+        if (permit == null) {
+            breaker.cancel();
+            limit.release();
+            log.warn("Service {} is at its concurrency limit, rejecting {}", service.getName(), targetUrl);
+            return answer(response, HttpStatus.SERVICE_UNAVAILABLE, "Service " + service.getName() + " is busy, try again later.");
+        }
+
+        log.debug("✅ Request Forwarded : {}", targetUrl);
+
+        endpoint.acquire();
+        long start = System.nanoTime();
+        AtomicBoolean settled = new AtomicBoolean();
+
+        WebClient.RequestBodySpec upstreamRequest = clients.getWebClient(service)
+                .method(method)
+                .uri(URI.create(targetUrl))
+                .headers(headers -> utils.copyRequestHeaders(request.getHeaders(), headers));
+        WebClient.RequestHeadersSpec<?> withBody = hasBody(request)
+                ? upstreamRequest.body(BodyInserters.fromDataBuffers(limit(request.getBody(), maxBodySize)))
+                : upstreamRequest;
+
+        Mono<Void> exchange = withBody.exchangeToMono(upstream -> {
+            settled.set(true);
+            long latency = System.nanoTime() - start;
+            stats.addUpstreamNanos(latency);
+            HttpStatusCode status = upstream.statusCode();
+            boolean failed = status.is5xxServerError();
+            breaker.record(failed, latency);
+            limit.sample(latency, Retries.isRetryableStatus(status));
+            endpoint.recordResponse(status.value(), latency);
+            response.setStatusCode(status);
+            response.getHeaders().putAll(utils.copyResponseHeaders(upstream.headers().asHttpHeaders()));
+            return response.writeWith(upstream.body(BodyExtractors.toDataBuffers()));
+        });
+        if (!streamTimeout.isZero()) {
+            exchange = exchange.timeout(streamTimeout);
+        }
+
+        return exchange
+                .onErrorResume(e -> {
+                    if (!settled.compareAndSet(false, true)) {
+                        return Mono.error(e);
+                    }
+                    long latency = System.nanoTime() - start;
+                    stats.addUpstreamNanos(latency);
+                    if (tooLarge(e)) {
+                        breaker.cancel();
+                        log.warn("Rejected request to {}: body exceeds {} bytes", request.getPath(), maxBodySize);
+                        return answer(response, HttpStatus.PAYLOAD_TOO_LARGE, "Request body exceeds " + maxBodySize + " bytes");
+                    }
+                    breaker.record(true, latency);
+                    limit.sample(latency, true);
+                    endpoint.recordFailure();
+                    log.error("Service {} is unavailable for {}: {}", service.getName(), request.getPath(), e.getMessage());
+                    return answer(response, HttpStatus.SERVICE_UNAVAILABLE,
+                            "Service " + service.getName() + " is currently unavailable.");
+                })
+                .doOnCancel(() -> {
+                    if (settled.compareAndSet(false, true)) {
+                        breaker.cancel();
+                    }
+                })
+                .doFinally(signal -> {
+                    endpoint.release();
+                    permit.release();
+                    limit.release();
+                });
+    }
+
+    /*
+     * true if the client sent a body, see Forwarder.hasBody
+     */
+    static boolean hasBody(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        return headers.getContentLength() > 0 || headers.containsKey(HttpHeaders.TRANSFER_ENCODING);
+    }
+
+    /*
+     * Passes body on, failing once more than limit bytes went through
+     */
+    static Flux<DataBuffer> limit(Flux<DataBuffer> body, long limit) {
+        AtomicLong total = new AtomicLong();
+        return body.<DataBuffer>handle((buffer, sink) -> {
+            if (total.addAndGet(buffer.readableByteCount()) > limit) {
+                DataBufferUtils.release(buffer);
+                sink.error(new Forwarder.PayloadTooLargeException(limit));
+            } else {
+                sink.next(buffer);
+            }
+        });
+    }
+
+    private static boolean tooLarge(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof Forwarder.PayloadTooLargeException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Mono<Void> answer(ServerHttpResponse response, HttpStatus status, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        response.setStatusCode(status);
+        response.getHeaders().setContentType(TEXT);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(bytes)));
+    }
+
+    private static Mono<Void> tooManyRequests(ServerHttpResponse response, long wait, String serviceName, String url) {
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999));
+        log.warn("Rate limit of service {} exceeded for {}", serviceName, url);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+        return answer(response, HttpStatus.TOO_MANY_REQUESTS, "Too many requests, retry after " + retryAfter + "s");
+    }
+
+    private static int status(ServerHttpResponse response) {
+        HttpStatusCode status = response.getStatusCode();
+        return status != null ? status.value() : 200;
+    }
+
+    /*
+     * Counts the body bytes handed to the client connection, for the @AccessLog
+     */
+    private static final class CountingResponse extends ServerHttpResponseDecorator {
+        private final AtomicLong bytes = new AtomicLong();
+
+        CountingResponse(ServerHttpResponse delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (body instanceof Mono<? extends DataBuffer> single) {
+                return super.writeWith(single.doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount())));
+            }
+            return super.writeWith(Flux.from(body).doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount())));
+        }
+    }
+}
@@ -5,9 +5,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Component
 @ConfigurationProperties(prefix = "services")
@@ -15,11 +21,22 @@ public class Registry {
 
     private static final Logger log = LoggerFactory.getLogger(Registry.class);
 
+    /*
+     * list is what was bound from the configuration at startup
+     * The services in use live in the current routeTable snapshot, replaced as a whole by @update
+     */
     private List<Service> list = new ArrayList<>();
+    private final AtomicReference<RouteTable> routeTable = new AtomicReference<>(RouteTable.compile(List.of()));
 
-    public List<Service> getList() { return list; }
+    public List<Service> getList() { return routeTable.get().getServices(); }
     public void setList(List<Service> list) { this.list = list; }
 
+    /*
+     * Compiled lookup structure for the request path, read once per request so a request
+     * sees a single snapshot even if the registry is reloaded meanwhile
+     */
+    public RouteTable getRouteTable() { return routeTable.get(); }
+
     // ANSI color codes
     private static final String RESET = "\u001B[0m";
     private static final String GREEN = "\u001B[32m";
@@ -28,10 +45,111 @@ public class Registry {
     private static final String MAGENTA = "\u001B[35m";
 
     @PostConstruct
+    public void init() {
+        update(list);
+    }
+
+    /*
+     * @update validates services, compiles them and swaps the new snapshot in
+     * Readers never lock, they keep using the snapshot they already hold
+     * Throws IllegalArgumentException and keeps the current snapshot if services are invalid
+     * Returns the snapshot that was replaced
+     */
+    public synchronized RouteTable update(List<Service> services) {
+        validate(services);
+        RouteTable previous = routeTable.getAndSet(RouteTable.compile(services));
+        logServices();
+        return previous;
+    }
+
+    /*
+     * Checks what requests would trip over later, all problems are reported at once
+     */
+    static void validate(List<Service> services) {
+        List<String> problems = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < services.size(); i++) {
+            Service service = services.get(i);
+            String at = "services.list[" + i + "]";
+            if (service.getName() == null || service.getName().isBlank() || service.getName().contains("/")) {
+                problems.add(at + ".name must be a single path segment");
+            } else if (!names.add(service.getName())) {
+                problems.add(at + ".name " + service.getName() + " is used twice");
+            }
+            if (service.getDefaultExposure() == null) {
+                problems.add(at + ".default-exposure is missing");
+            }
+            if (service.getInstances().isEmpty() && !isAddress(service.getHost(), service.getPort())) {
+                problems.add(at + " needs a host and a port between 1 and 65535");
+            }
+            for (int j = 0; j < service.getInstances().size(); j++) {
+                Instance instance = service.getInstances().get(j);
+                if (!isAddress(instance.getHost(), instance.getPort())) {
+                    problems.add(at + ".instances[" + j + "] needs a host and a port between 1 and 65535");
+                }
+            }
+            if (service.getAuth().getMode() == AuthMode.LOCAL
+                    && (service.getAuth().getJwks() == null || service.getAuth().getJwks().isBlank())) {
+                problems.add(at + ".auth.jwks is needed for local auth");
+            }
+            ConcurrencyLimit limit = service.getConcurrencyLimit();
+            if (limit.getMinLimit() < 1 || limit.getInitialLimit() < limit.getMinLimit()
+                    || limit.getMaxLimit() < limit.getInitialLimit()) {
+                problems.add(at + ".concurrency-limit needs 1 <= min-limit <= initial-limit <= max-limit");
+            }
+            for (Exposure exposure : Exposure.values()) {
+                if (limit.getPercent(exposure) < 1 || limit.getPercent(exposure) > 100) {
+                    problems.add(at + ".concurrency-limit." + exposure.name().toLowerCase(Locale.ROOT)
+                            + "-percent must be between 1 and 100");
+                }
+            }
+            int maxEjectionPercent = service.getOutlierDetection().getMaxEjectionPercent();
+            if (maxEjectionPercent < 0 || maxEjectionPercent > 100) {
+                problems.add(at + ".outlier-detection.max-ejection-percent must be between 0 and 100");
+            }
+            try {
+                IpRanges.of(service.getInternalNetworks());
+            } catch (IllegalArgumentException e) {
+                problems.add(at + ".internal-networks: " + e.getMessage());
+            }
+            for (int j = 0; j < service.getRoutes().size(); j++) {
+                Route route = service.getRoutes().get(j);
+                String routeAt = at + ".routes[" + j + "]";
+                if (route.getPath() == null || !route.getPath().startsWith("/")) {
+                    problems.add(routeAt + ".path must start with /");
+                }
+                if (route.getMethod() != null && !METHODS.contains(route.getMethod().toUpperCase(Locale.ROOT))) {
+                    problems.add(routeAt + ".method " + route.getMethod() + " is not an http method");
+                }
+                if (route.getExposure() == null) {
+                    problems.add(routeAt + ".exposure is missing");
+                }
+                if (route.getHedge().isEnabled() && route.getMethod() != null
+                        && !Hedging.METHODS.contains(route.getMethod().toUpperCase(Locale.ROOT))) {
+                    problems.add(routeAt + ".hedge only applies to GET and HEAD routes");
+                }
+            }
+        }
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException("Invalid registry: " + String.join("; ", problems));
+        }
+    }
+
+    static final Set<String> METHODS = Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "TRACE");
+
+    private static boolean isAddress(String host, int port) {
+        return host != null && !host.isBlank() && port > 0 && port <= 65535;
+    }
+
     public void logServices() {
+        List<Service> list = getList();
         log.info(GREEN + "Loaded {} services from configuration" + RESET, list.size());
         for (Service service : list) {
             log.info(CYAN + "Service: {} at {}:{}" + RESET, service.getName(), service.getHost(), service.getPort());
+            for (Instance instance : service.getInstances()) {
+                log.info(CYAN + "Instance: {}:{} weight {} ({})" + RESET,
+                        instance.getHost(), instance.getPort(), instance.getWeight(), service.getLoadBalancing());
+            }
             log.info(YELLOW + "Default Exposure: {}" + RESET, service.getDefaultExposure());
             for (Route route : service.getRoutes()) {
                 log.info(MAGENTA + "Route: {} [{}] -> Exposure: {}" + RESET,
@@ -46,6 +164,17 @@ public class Registry {
         private int port;
         private Exposure defaultExposure;  // use enum here
         private final List<Route> routes = new ArrayList<>();
+        private final List<Instance> instances = new ArrayList<>();
+        private LoadBalancing loadBalancing = LoadBalancing.ROUND_ROBIN;
+        private final Client client = new Client();
+        private final HealthCheck healthCheck = new HealthCheck();
+        private final OutlierDetection outlierDetection = new OutlierDetection();
+        private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+        private final Retry retry = new Retry();
+        private final RateLimit rateLimit = new RateLimit();
+        private final ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+        private final List<String> internalNetworks = new ArrayList<>();
+        private final Auth auth = new Auth();
 
         public String getName() { return name; }
         public void setName(String name) { this.name = name; }
@@ -60,12 +189,204 @@ public class Registry {
         public void setDefaultExposure(Exposure defaultExposure) { this.defaultExposure = defaultExposure; }
 
         public List<Route> getRoutes() { return routes; }
+
+        /*
+         * Instances the traffic is spread over by @LoadBalancer
+         * When none are listed, host and port are the only instance
+         */
+        public List<Instance> getInstances() { return instances; }
+
+        public LoadBalancing getLoadBalancing() { return loadBalancing; }
+        public void setLoadBalancing(LoadBalancing loadBalancing) { this.loadBalancing = loadBalancing; }
+
+        public Client getClient() { return client; }
+
+        public HealthCheck getHealthCheck() { return healthCheck; }
+
+        public OutlierDetection getOutlierDetection() { return outlierDetection; }
+
+        public CircuitBreaker getCircuitBreaker() { return circuitBreaker; }
+
+        public Retry getRetry() { return retry; }
+
+        public RateLimit getRateLimit() { return rateLimit; }
+
+        public ConcurrencyLimit getConcurrencyLimit() { return concurrencyLimit; }
+
+        /*
+         * CIDR blocks allowed on the PRIVATE routes of this service, empty means gateway.trust.internal-networks
+         */
+        public List<String> getInternalNetworks() { return internalNetworks; }
+
+        public Auth getAuth() { return auth; }
+    }
+
+    /*
+     * How PROTECTED routes of a service check tokens
+     * REMOTE -> the auth service is asked, verdicts cached by @TokenCache
+     * LOCAL -> signed JWTs are verified in process by @JwtVerifier against the keys of the jwks file or url,
+     * exp and nbf are checked with clockSkew, iss against issuer and aud against audience when they are set
+     * Tokens LOCAL cannot decide (no JWT, unknown key, keys not loaded yet) go to the auth service while fallback is on
+     */
+    public static class Auth {
+        private AuthMode mode = AuthMode.REMOTE;
+        private String jwks;
+        private String issuer;
+        private List<String> audience = new ArrayList<>();
+        private Duration clockSkew = Duration.ofSeconds(30);
+        private boolean fallback = true;
+
+        public AuthMode getMode() { return mode; }
+        public void setMode(AuthMode mode) { this.mode = mode; }
+
+        public String getJwks() { return jwks; }
+        public void setJwks(String jwks) { this.jwks = jwks; }
+
+        public String getIssuer() { return issuer; }
+        public void setIssuer(String issuer) { this.issuer = issuer; }
+
+        public List<String> getAudience() { return audience; }
+        public void setAudience(List<String> audience) { this.audience = audience; }
+
+        public Duration getClockSkew() { return clockSkew; }
+        public void setClockSkew(Duration clockSkew) { this.clockSkew = clockSkew; }
+
+        public boolean isFallback() { return fallback; }
+        public void setFallback(boolean fallback) { this.fallback = fallback; }
+    }
+
+    public enum AuthMode {
+        REMOTE,
+        LOCAL
+    }
+
+    /*
+     * Active probing of every instance by @HealthChecker, disabled while path is not set
+     * An instance is taken out after unhealthyThreshold failed probes in a row
+     * and put back after healthyThreshold successful probes in a row
+     */
+    public static class HealthCheck {
+        private String path;
+        private Duration interval = Duration.ofSeconds(10);
+        private Duration timeout = Duration.ofSeconds(2);
+        private int unhealthyThreshold = 3;
+        private int healthyThreshold = 2;
+
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+
+        public Duration getTimeout() { return timeout; }
+        public void setTimeout(Duration timeout) { this.timeout = timeout; }
+
+        public int getUnhealthyThreshold() { return unhealthyThreshold; }
+        public void setUnhealthyThreshold(int unhealthyThreshold) { this.unhealthyThreshold = unhealthyThreshold; }
+
+        public int getHealthyThreshold() { return healthyThreshold; }
+        public void setHealthyThreshold(int healthyThreshold) { this.healthyThreshold = healthyThreshold; }
+    }
+
+    /*
+     * Passive ejection of instances based on live traffic, see LoadBalancer.Endpoint
+     * A connection error, a timeout, a status in failureStatuses or a response slower than slowCallThreshold
+     * is a failure, other answers of the application such as a plain 500 are not held against the instance
+     * After consecutiveFailures failures in a row the instance is ejected for baseEjectionTime,
+     * doubled on every repeated ejection up to maxEjectionTime, then admitted again
+     * At most maxEjectionPercent of the instances are ejected at once and the last available one never is
+     */
+    public static class OutlierDetection {
+        private boolean enabled = true;
+        private int consecutiveFailures = 5;
+        private List<Integer> failureStatuses = new ArrayList<>(List.of(502, 503, 504));
+        private int maxEjectionPercent = 50;
+        private Duration slowCallThreshold = Duration.ofSeconds(10);
+        private Duration baseEjectionTime = Duration.ofSeconds(30);
+        private Duration maxEjectionTime = Duration.ofMinutes(5);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getConsecutiveFailures() { return consecutiveFailures; }
+        public void setConsecutiveFailures(int consecutiveFailures) { this.consecutiveFailures = consecutiveFailures; }
+
+        public Duration getSlowCallThreshold() { return slowCallThreshold; }
+        public void setSlowCallThreshold(Duration slowCallThreshold) { this.slowCallThreshold = slowCallThreshold; }
+
+        public Duration getBaseEjectionTime() { return baseEjectionTime; }
+        public void setBaseEjectionTime(Duration baseEjectionTime) { this.baseEjectionTime = baseEjectionTime; }
+
+        public Duration getMaxEjectionTime() { return maxEjectionTime; }
+        public void setMaxEjectionTime(Duration maxEjectionTime) { this.maxEjectionTime = maxEjectionTime; }
+
+        public List<Integer> getFailureStatuses() { return failureStatuses; }
+        public void setFailureStatuses(List<Integer> failureStatuses) { this.failureStatuses = failureStatuses; }
+
+        public int getMaxEjectionPercent() { return maxEjectionPercent; }
+        public void setMaxEjectionPercent(int maxEjectionPercent) { this.maxEjectionPercent = maxEjectionPercent; }
+    }
+
+    /*
+     * One running copy of a service, weight is its share of traffic relative to the other instances
+     */
+    public static class Instance {
+        private String host;
+        private int port;
+        private int weight = 1;
+
+        public String getHost() { return host; }
+        public void setHost(String host) { this.host = host; }
+
+        public int getPort() { return port; }
+        public void setPort(int port) { this.port = port; }
+
+        public int getWeight() { return weight; }
+        public void setWeight(int weight) { this.weight = weight; }
+    }
+
+    /*
+     * Connection pool settings for one service, used by @UpstreamClients
+     * connectTimeout bounds the TCP connect, readTimeout the wait for response bytes
+     * maxConnections caps the keep-alive pool of each instance, idle connections are closed after idleTimeout
+     * acquireTimeout is how long a request waits for a free pooled connection or @Bulkhead slot
+     * maxConcurrentRequests caps requests in flight to the service, 0 means no cap
+     */
+    public static class Client {
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration readTimeout = Duration.ofSeconds(30);
+        private Duration acquireTimeout = Duration.ofSeconds(1);
+        private Duration idleTimeout = Duration.ofSeconds(30);
+        private int maxConnections = 50;
+        private int maxConcurrentRequests = 0;
+
+        public Duration getConnectTimeout() { return connectTimeout; }
+        public void setConnectTimeout(Duration connectTimeout) { this.connectTimeout = connectTimeout; }
+
+        public Duration getReadTimeout() { return readTimeout; }
+        public void setReadTimeout(Duration readTimeout) { this.readTimeout = readTimeout; }
+
+        public Duration getAcquireTimeout() { return acquireTimeout; }
+        public void setAcquireTimeout(Duration acquireTimeout) { this.acquireTimeout = acquireTimeout; }
+
+        public Duration getIdleTimeout() { return idleTimeout; }
+        public void setIdleTimeout(Duration idleTimeout) { this.idleTimeout = idleTimeout; }
+
+        public int getMaxConnections() { return maxConnections; }
+        public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+
+        public int getMaxConcurrentRequests() { return maxConcurrentRequests; }
+        public void setMaxConcurrentRequests(int maxConcurrentRequests) { this.maxConcurrentRequests = maxConcurrentRequests; }
     }
 
     public static class Route {
         private String path;
         private String method;
         private Exposure exposure; // use enum here
+        private final Cache cache = new Cache();
+        private final RateLimit rateLimit = new RateLimit();
+        private final Compression compression = new Compression();
+        private final Hedge hedge = new Hedge();
 
         public String getPath() { return path; }
         public void setPath(String path) { this.path = path; }
@@ -75,6 +396,279 @@ public class Registry {
 
         public Exposure getExposure() { return exposure; }
         public void setExposure(Exposure exposure) { this.exposure = exposure; }
+
+        public Cache getCache() { return cache; }
+
+        public RateLimit getRateLimit() { return rateLimit; }
+
+        public Compression getCompression() { return compression; }
+
+        public Hedge getHedge() { return hedge; }
+    }
+
+    /*
+     * Request hedging of a GET or HEAD route by @Hedging, off unless enabled
+     * When the first attempt has no response after delay a second one is sent, @LoadBalancer sees the first
+     * one in flight so it usually lands on another instance,
+     * the first response wins and the other attempt is cancelled
+     * Without a delay the route waits for the p95 of its upstream latency, at least minDelay,
+     * and does not hedge before that p95 rests on enough requests
+     * At most budgetPercent of the requests of the route are hedged, plus minHedgesPerSecond
+     */
+    public static class Hedge {
+        private boolean enabled;
+        private Duration delay;
+        private Duration minDelay = Duration.ofMillis(10);
+        private int budgetPercent = 10;
+        private int minHedgesPerSecond = 1;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getDelay() { return delay; }
+        public void setDelay(Duration delay) { this.delay = delay; }
+
+        public Duration getMinDelay() { return minDelay; }
+        public void setMinDelay(Duration minDelay) { this.minDelay = minDelay; }
+
+        public int getBudgetPercent() { return budgetPercent; }
+        public void setBudgetPercent(int budgetPercent) { this.budgetPercent = budgetPercent; }
+
+        public int getMinHedgesPerSecond() { return minHedgesPerSecond; }
+        public void setMinHedgesPerSecond(int minHedgesPerSecond) { this.minHedgesPerSecond = minHedgesPerSecond; }
+    }
+
+    /*
+     * Response compression of a route by @ResponseCompression, off unless enabled
+     * Bodies of one of mimeTypes (type/subtype or type/*) are gzip or deflate encoded for clients that accept it,
+     * unless their Content-Length is below minSize, bodies the upstream already encoded pass through untouched
+     */
+    public static class Compression {
+        private boolean enabled;
+        private DataSize minSize = DataSize.ofKilobytes(1);
+        private List<String> mimeTypes = new ArrayList<>(List.of(
+                "application/json", "application/problem+json", "application/javascript", "application/xml",
+                "text/*", "image/svg+xml"));
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public DataSize getMinSize() { return minSize; }
+        public void setMinSize(DataSize minSize) { this.minSize = minSize; }
+
+        public List<String> getMimeTypes() { return mimeTypes; }
+        public void setMimeTypes(List<String> mimeTypes) { this.mimeTypes = mimeTypes; }
+    }
+
+    /*
+     * Request rate limit of a service or of a single route, see @RateLimiter, off while limit is 0
+     * limit requests per period go through on average, up to burst of them at once (0 -> limit)
+     * key decides which requests share a bucket
+     * GLOBAL -> all callers, IP -> client address, SUBJECT -> sub of the verified bearer token on PROTECTED routes,
+     * client address elsewhere, HEADER -> value of header
+     */
+    public static class RateLimit {
+        private int limit;
+        private Duration period = Duration.ofSeconds(1);
+        private int burst;
+        private RateLimitKey key = RateLimitKey.IP;
+        private String header;
+
+        public int getLimit() { return limit; }
+        public void setLimit(int limit) { this.limit = limit; }
+
+        public Duration getPeriod() { return period; }
+        public void setPeriod(Duration period) { this.period = period; }
+
+        public int getBurst() { return burst; }
+        public void setBurst(int burst) { this.burst = burst; }
+
+        public RateLimitKey getKey() { return key; }
+        public void setKey(RateLimitKey key) { this.key = key; }
+
+        public String getHeader() { return header; }
+        public void setHeader(String header) { this.header = header; }
+    }
+
+    public enum RateLimitKey {
+        GLOBAL,
+        IP,
+        SUBJECT,
+        HEADER
+    }
+
+    /*
+     * Response caching of a route by @ResponseCache, off unless enabled
+     * Only GET answers with status 200 are stored, freshness follows the upstream Cache-Control / Expires
+     * defaultTtl applies when the upstream sends neither, 0 means such answers are only stored if they
+     * carry an ETag and are revalidated on every request
+     */
+    public static class Cache {
+        private boolean enabled;
+        private Duration defaultTtl = Duration.ZERO;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getDefaultTtl() { return defaultTtl; }
+        public void setDefaultTtl(Duration defaultTtl) { this.defaultTtl = defaultTtl; }
+    }
+
+    /*
+     * Circuit breaker of a service, see @CircuitBreakers
+     * Over the last windowSize calls, once at least minimumCalls were made, the breaker opens when
+     * failureRateThreshold percent failed or slowCallRateThreshold percent took longer than slowCallThreshold
+     * While open calls are rejected, after openDuration halfOpenCalls trial calls decide to close or open again
+     */
+    public static class CircuitBreaker {
+        private boolean enabled = true;
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private int failureRateThreshold = 50;
+        private int slowCallRateThreshold = 100;
+        private Duration slowCallThreshold = Duration.ofSeconds(5);
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenCalls = 5;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getWindowSize() { return windowSize; }
+        public void setWindowSize(int windowSize) { this.windowSize = windowSize; }
+
+        public int getMinimumCalls() { return minimumCalls; }
+        public void setMinimumCalls(int minimumCalls) { this.minimumCalls = minimumCalls; }
+
+        public int getFailureRateThreshold() { return failureRateThreshold; }
+        public void setFailureRateThreshold(int failureRateThreshold) { this.failureRateThreshold = failureRateThreshold; }
+
+        public int getSlowCallRateThreshold() { return slowCallRateThreshold; }
+        public void setSlowCallRateThreshold(int slowCallRateThreshold) { this.slowCallRateThreshold = slowCallRateThreshold; }
+
+        public Duration getSlowCallThreshold() { return slowCallThreshold; }
+        public void setSlowCallThreshold(Duration slowCallThreshold) { this.slowCallThreshold = slowCallThreshold; }
+
+        public Duration getOpenDuration() { return openDuration; }
+        public void setOpenDuration(Duration openDuration) { this.openDuration = openDuration; }
+
+        public int getHalfOpenCalls() { return halfOpenCalls; }
+        public void setHalfOpenCalls(int halfOpenCalls) { this.halfOpenCalls = halfOpenCalls; }
+    }
+
+    /*
+     * Retries of a service, see @Retries
+     * Only idempotent requests without a body are retried, on connection errors and 502, 503, 504
+     * maxAttempts counts the first try, 1 turns retries off
+     * The wait before attempt n is a random value up to min(maxBackoff, backoff * 2^n)
+     * budgetPercent caps retries to that share of the requests, minRetriesPerSecond is allowed on top
+     */
+    public static class Retry {
+        private int maxAttempts = 2;
+        private Duration backoff = Duration.ofMillis(50);
+        private Duration maxBackoff = Duration.ofSeconds(1);
+        private int budgetPercent = 20;
+        private int minRetriesPerSecond = 10;
+
+        public int getMaxAttempts() { return maxAttempts; }
+        public void setMaxAttempts(int maxAttempts) { this.maxAttempts = maxAttempts; }
+
+        public Duration getBackoff() { return backoff; }
+        public void setBackoff(Duration backoff) { this.backoff = backoff; }
+
+        public Duration getMaxBackoff() { return maxBackoff; }
+        public void setMaxBackoff(Duration maxBackoff) { this.maxBackoff = maxBackoff; }
+
+        public int getBudgetPercent() { return budgetPercent; }
+        public void setBudgetPercent(int budgetPercent) { this.budgetPercent = budgetPercent; }
+
+        public int getMinRetriesPerSecond() { return minRetriesPerSecond; }
+        public void setMinRetriesPerSecond(int minRetriesPerSecond) { this.minRetriesPerSecond = minRetriesPerSecond; }
+    }
+
+    /*
+     * Adaptive concurrency limit of a service by @ConcurrencyLimits, off unless enabled
+     * The limit starts at initialLimit and stays between minLimit and maxLimit, it is revised every windowSize answers
+     * Latency up to rttTolerancePercent of the baseline is fine, beyond that the limit shrinks,
+     * failed exchanges and overload answers cut it to backoffPercent
+     * publicPercent, protectedPercent and privatePercent are the shares of the limit requests of each exposure
+     * may fill, lower shares are shed first
+     */
+    public static class ConcurrencyLimit {
+        private boolean enabled;
+        private LimitAlgorithm algorithm = LimitAlgorithm.GRADIENT;
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private int windowSize = 20;
+        private int rttTolerancePercent = 150;
+        private int backoffPercent = 90;
+        private int publicPercent = 80;
+        private int protectedPercent = 90;
+        private int privatePercent = 100;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public LimitAlgorithm getAlgorithm() { return algorithm; }
+        public void setAlgorithm(LimitAlgorithm algorithm) { this.algorithm = algorithm; }
+
+        public int getInitialLimit() { return initialLimit; }
+        public void setInitialLimit(int initialLimit) { this.initialLimit = initialLimit; }
+
+        public int getMinLimit() { return minLimit; }
+        public void setMinLimit(int minLimit) { this.minLimit = minLimit; }
+
+        public int getMaxLimit() { return maxLimit; }
+        public void setMaxLimit(int maxLimit) { this.maxLimit = maxLimit; }
+
+        public int getWindowSize() { return windowSize; }
+        public void setWindowSize(int windowSize) { this.windowSize = windowSize; }
+
+        public int getRttTolerancePercent() { return rttTolerancePercent; }
+        public void setRttTolerancePercent(int rttTolerancePercent) { this.rttTolerancePercent = rttTolerancePercent; }
+
+        public int getBackoffPercent() { return backoffPercent; }
+        public void setBackoffPercent(int backoffPercent) { this.backoffPercent = backoffPercent; }
+
+        public int getPublicPercent() { return publicPercent; }
+        public void setPublicPercent(int publicPercent) { this.publicPercent = publicPercent; }
+
+        public int getProtectedPercent() { return protectedPercent; }
+        public void setProtectedPercent(int protectedPercent) { this.protectedPercent = protectedPercent; }
+
+        public int getPrivatePercent() { return privatePercent; }
+        public void setPrivatePercent(int privatePercent) { this.privatePercent = privatePercent; }
+
+        public int getPercent(Exposure exposure) {
+            switch (exposure) {
+                case PUBLIC: return publicPercent;
+                case PROTECTED: return protectedPercent;
+                case PRIVATE:
+                default: return privatePercent;
+            }
+        }
+    }
+
+    /*
+     * How @ConcurrencyLimits moves the limit of a service
+     * GRADIENT -> scaled by how far latency is above the baseline, grows by its square root while healthy
+     * AIMD -> grows by one while healthy, cut to backoffPercent once latency exceeds the tolerance
+     */
+    public enum LimitAlgorithm {
+        GRADIENT,
+        AIMD
+    }
+
+    /*
+     * How @LoadBalancer picks an instance for a request
+     * ROUND_ROBIN -> instances in turn, weighted
+     * LEAST_REQUESTS -> instance with the fewest requests in flight per weight
+     * POWER_OF_TWO -> two weighted random instances, the less loaded one wins
+     */
+    public enum LoadBalancing {
+        ROUND_ROBIN,
+        LEAST_REQUESTS,
+        POWER_OF_TWO
     }
 
     // Define the enum here
@@ -0,0 +1,64 @@
+package com.gateway;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * Admin endpoint reloading the registry, kept apart from the catch all mapping of @Controller
+ * POST with an empty body reloads gateway.registry.file, POST with a YAML body loads that instead
+ * Like a PRIVATE route it only answers callers from the internal network
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RegistryController {
+
+    private static final Logger log = LoggerFactory.getLogger(RegistryController.class);
+
+    private final RegistryReloader reloader;
+    private final TrustedNetworks trustedNetworks;
+
+    @Autowired
+    public RegistryController(RegistryReloader reloader, TrustedNetworks trustedNetworks) {
+        this.reloader = reloader;
+        this.trustedNetworks = trustedNetworks;
+    }
+
+    @PostMapping("${gateway.registry.reload-path:/_gateway/registry/reload}")
+    public ResponseEntity<String> reload(HttpServletRequest request, @RequestBody(required = false) byte[] body) {
+        if (!trustedNetworks.isInternal(request, null)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Access denied: registry");
+        }
+        return reload(reloader, body);
+    }
+
+    /*
+     * Shared with @ReactiveAdminController
+     */
+    static ResponseEntity<String> reload(RegistryReloader reloader, byte[] body) {
+        try {
+            RegistryReloadedEvent event = body != null && body.length > 0
+                    ? reloader.reload(new ByteArrayResource(body))
+                    : reloader.reload();
+            return ResponseEntity.ok("Reloaded " + event.current().size() + " services, changed: " + event.changed());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IOException e) {
+            log.error("Failed to reload registry: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to reload registry");
+        }
+    }
+}
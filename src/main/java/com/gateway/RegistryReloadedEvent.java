@@ -0,0 +1,12 @@
+package com.gateway;
+
+import java.util.List;
+import java.util.Set;
+
+/*
+ * Published by @RegistryReloader once a new registry snapshot is in place
+ * changed holds the names of services that were removed or whose settings differ,
+ * runtime state kept per service name (pools, breakers, budgets...) must be dropped for them
+ */
+public record RegistryReloadedEvent(List<Registry.Service> previous, List<Registry.Service> current, Set<String> changed) {
+}
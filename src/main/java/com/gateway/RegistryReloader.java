@@ -0,0 +1,176 @@
+package com.gateway;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/*
+ * RegistryReloader replaces the services of @Registry without a restart
+ * The YAML is bound with the same rules as at startup, validated and compiled into a new snapshot
+ * off the request path, then swapped in, requests in flight finish on the snapshot they started with
+ * Services whose settings changed are announced with a @RegistryReloadedEvent so their runtime state is rebuilt,
+ * the others keep their connection pools, breakers and health
+ *
+ * gateway.registry.file is polled for changes, the admin endpoint of @RegistryController triggers a reload on demand
+ */
+@Component
+public class RegistryReloader {
+
+    private static final Logger log = LoggerFactory.getLogger(RegistryReloader.class);
+    private static final ObjectMapper MAPPER = JsonMapper.builder().addModule(new JavaTimeModule()).build();
+
+    private final Registry registry;
+    private final ApplicationEventPublisher events;
+    private final GatewayProperties.RegistrySource settings;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "registry-reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long lastModified;
+    private long lastSize;
+
+    public RegistryReloader(Registry registry, ApplicationEventPublisher events, GatewayProperties properties) {
+        this.registry = registry;
+        this.events = events;
+        this.settings = properties.getRegistry();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (settings.getFile() == null || settings.getFile().isBlank()) {
+            return;
+        }
+        Path file = Path.of(settings.getFile());
+        lastModified = lastModified(file);
+        lastSize = size(file);
+        long interval = Math.max(100, settings.getPollInterval().toMillis());
+        poller.scheduleWithFixedDelay(() -> poll(file), interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Watching {} for registry changes every {} ms", file, interval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        poller.shutdownNow();
+    }
+
+    /*
+     * Reloads gateway.registry.file
+     */
+    public RegistryReloadedEvent reload() throws IOException {
+        if (settings.getFile() == null || settings.getFile().isBlank()) {
+            throw new IllegalStateException("gateway.registry.file is not set");
+        }
+        return reload(new FileSystemResource(settings.getFile()));
+    }
+
+    /*
+     * Reloads from a YAML document holding services.list
+     * Throws IllegalArgumentException if the services are invalid, the current registry then stays in place
+     */
+    public synchronized RegistryReloadedEvent reload(Resource yaml) throws IOException {
+        List<Registry.Service> services = load(yaml);
+        List<Registry.Service> previous = registry.getList();
+        registry.update(services);
+
+        RegistryReloadedEvent event = new RegistryReloadedEvent(previous, services, changed(previous, services));
+        events.publishEvent(event);
+        log.info("Registry reloaded with {} services, changed: {}", services.size(), event.changed());
+        return event;
+    }
+
+    static List<Registry.Service> load(Resource yaml) throws IOException {
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader().load("registry", yaml);
+        Binder binder = new Binder(ConfigurationPropertySources.from(sources));
+        return binder.bind("services.list", Bindable.listOf(Registry.Service.class)).orElse(List.of());
+    }
+
+    /*
+     * Names of the services added, removed or configured differently
+     * Services are compared through their JSON form so every nested setting counts
+     */
+    static Set<String> changed(List<Registry.Service> previous, List<Registry.Service> current) throws IOException {
+        Map<String, String> before = fingerprints(previous);
+        Map<String, String> after = fingerprints(current);
+        Set<String> changed = new LinkedHashSet<>();
+        before.forEach((name, fingerprint) -> {
+            if (!fingerprint.equals(after.get(name))) {
+                changed.add(name);
+            }
+        });
+        after.keySet().stream().filter(name -> !before.containsKey(name)).forEach(changed::add);
+        return changed;
+    }
+
+    private static Map<String, String> fingerprints(List<Registry.Service> services) throws IOException {
+        Map<String, String> fingerprints = new HashMap<>();
+        for (Registry.Service service : services) {
+            fingerprints.putIfAbsent(service.getName(), MAPPER.writeValueAsString(service));
+        }
+        return fingerprints;
+    }
+
+    /*
+     * Cheap check on modification time and size first, the file is only parsed when one of them moved
+     */
+    private void poll(Path file) {
+        long modified = lastModified(file);
+        long size = size(file);
+        if (modified == lastModified && size == lastSize) {
+            return;
+        }
+        lastModified = modified;
+        lastSize = size;
+        try {
+            reload();
+        } catch (IllegalArgumentException e) {
+            log.error("Rejected registry change in {}: {}", file, e.getMessage());
+        } catch (Exception e) {
+            log.error("Failed to reload registry from {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
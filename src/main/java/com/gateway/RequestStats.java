@@ -0,0 +1,29 @@
+package com.gateway;
+
+/*
+ * RequestStats collects what one request spent where, filled in by Service.forwardRequest
+ * authNanos is the time spent verifying the token, upstreamNanos the time spent waiting
+ * on upstream answers over all attempts, the rest of totalNanos is gateway overhead
+ */
+public final class RequestStats {
+
+    private final long start = System.nanoTime();
+    private RouteMatch match;
+    private long authNanos;
+    private long upstreamNanos;
+
+    public long getStart() { return start; }
+
+    public RouteMatch getMatch() { return match; }
+    public void setMatch(RouteMatch match) { this.match = match; }
+
+    public long getAuthNanos() { return authNanos; }
+    public void addAuthNanos(long nanos) { this.authNanos += nanos; }
+
+    public long getUpstreamNanos() { return upstreamNanos; }
+    public void addUpstreamNanos(long nanos) { this.upstreamNanos += nanos; }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - start;
+    }
+}
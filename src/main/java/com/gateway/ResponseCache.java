@@ -0,0 +1,485 @@
+package com.gateway;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * ResponseCache keeps upstream answers of the routes that opt in with cache.enabled
+ * Entries are keyed by service, method and path, the request headers named in the Vary of the answer
+ * must match too, one variant is kept per path
+ * Freshness follows Cache-Control (s-maxage, max-age, no-cache, no-store, private) and Expires,
+ * a stale entry with an ETag is revalidated with If-None-Match and refreshed on 304
+ * Concurrent misses on the same path wait for one upstream fetch
+ * Entries are spread over segments, each segment is an LRU map bounded by bytes with its own lock
+ *
+ * Exposure checks happen before the cache, a cached answer is only served to callers allowed on the route
+ */
+@Component
+public class ResponseCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final long maxEntrySize;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public ResponseCache(GatewayProperties properties) {
+        GatewayProperties.ResponseCache settings = properties.getResponseCache();
+        this.maxEntrySize = settings.getMaxEntrySize().toBytes();
+        long segmentSize = Math.max(1, settings.getMaxSize().toBytes() / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /*
+     * Fetches the answer from the upstream, headers lets the cache adjust the forwarded request headers
+     */
+    @FunctionalInterface
+    public interface Fetcher {
+        ResponseEntity<?> fetch(Consumer<HttpHeaders> headers) throws IOException;
+    }
+
+    /*
+     * true if the request may be answered from the cache of its route
+     * A client asking for no-store always goes to the upstream
+     */
+    public boolean isCacheable(Registry.Route route, HttpMethod method, HttpServletRequest request) {
+        return route != null
+                && route.getCache().isEnabled()
+                && method == HttpMethod.GET
+                && !Forwarder.hasBody(request)
+                && !directives(request.getHeader(HttpHeaders.CACHE_CONTROL)).containsKey("no-store");
+    }
+
+    /*
+     * @serve answers from the cache when a fresh entry matches, otherwise fetches, revalidates or
+     * joins a fetch already running for the same path
+     * A stored answer is captured while it is streamed to the first client, the entry exists
+     * once the whole body went through
+     */
+    public ResponseEntity<?> serve(Registry.Service service, Registry.Route route, String path,
+                                   HttpServletRequest request, Fetcher fetcher) throws IOException {
+        String key = service.getName() + " GET " + path;
+        Segment segment = segment(key);
+        Entry entry = segment.lookup(key);
+        if (entry != null && !entry.matches(request)) {
+            entry = null;
+        }
+        boolean revalidate = directives(request.getHeader(HttpHeaders.CACHE_CONTROL)).containsKey("no-cache");
+        if (entry != null && !revalidate && entry.isFresh(System.nanoTime())) {
+            hits.increment();
+            return entry.toResponse(request);
+        }
+
+        /*
+         * Single flight, only the first caller goes to the upstream, the rest wait for the entry it stores
+         * Waiters fall back to their own fetch if nothing was stored or the variant does not match
+         */
+        CompletableFuture<Entry> call = new CompletableFuture<>();
+        CompletableFuture<Entry> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            Entry shared = await(running, service.getClient().getReadTimeout().toMillis());
+            if (!running.isDone()) {
+                /*
+                 * The first caller never finished streaming, stop sending others to wait on it
+                 */
+                inFlight.remove(key, running);
+            }
+            if (shared != null && shared.matches(request)) {
+                hits.increment();
+                return shared.toResponse(request);
+            }
+            misses.increment();
+            return fetcher.fetch(ResponseCache::removeConditionals);
+        }
+        call.whenComplete((stored, error) -> inFlight.remove(key, call));
+
+        Entry stale = entry;
+        ResponseEntity<?> response;
+        try {
+            if (stale != null && stale.etag != null) {
+                revalidations.increment();
+                response = fetcher.fetch(headers -> {
+                    removeConditionals(headers);
+                    headers.set(HttpHeaders.IF_NONE_MATCH, stale.etag);
+                });
+                if (response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+                    drain(response);
+                    long fresh = freshness(route, response.getHeaders(), request);
+                    Entry refreshed = stale.refreshed(fresh >= 0 ? fresh : stale.freshNanos);
+                    segment.store(key, refreshed);
+                    call.complete(refreshed);
+                    return refreshed.toResponse(request);
+                }
+            } else {
+                misses.increment();
+                response = fetcher.fetch(ResponseCache::removeConditionals);
+            }
+        } catch (IOException | RuntimeException e) {
+            call.complete(null);
+            throw e;
+        }
+        return capture(key, segment, route, request, response, call);
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getRevalidations() { return revalidations.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getBytes() { return bytes.get(); }
+
+    /*
+     * Wraps a storable answer so its body is kept while it streams to the client
+     * Completes call with the stored entry, or null right away when the answer cannot be stored
+     */
+    private ResponseEntity<?> capture(String key, Segment segment, Registry.Route route, HttpServletRequest request,
+                                      ResponseEntity<?> response, CompletableFuture<Entry> call) {
+        HttpHeaders headers = response.getHeaders();
+        long fresh = freshness(route, headers, request);
+        String etag = headers.getETag();
+        boolean storable = response.getStatusCode().value() == HttpStatus.OK.value()
+                && response.getBody() instanceof StreamingResponseBody
+                && fresh >= 0
+                && (fresh > 0 || etag != null)
+                && !headers.containsKey(HttpHeaders.SET_COOKIE)
+                && !headers.getVary().contains("*")
+                && headers.getContentLength() <= maxEntrySize;
+        if (!storable) {
+            call.complete(null);
+            return response;
+        }
+
+        List<String> varyNames = new ArrayList<>();
+        for (String name : headers.getVary()) {
+            varyNames.add(name.toLowerCase(Locale.ROOT));
+        }
+        List<String> varyValues = varyValues(varyNames, request);
+        StreamingResponseBody body = (StreamingResponseBody) response.getBody();
+
+        return ResponseEntity.status(response.getStatusCode()).headers(headers).body((StreamingResponseBody) out -> {
+            CaptureOutputStream capture = new CaptureOutputStream(out, maxEntrySize);
+            Entry stored = null;
+            try {
+                body.writeTo(capture);
+                if (!capture.overflowed) {
+                    stored = new Entry(headers, capture.captured.toByteArray(), etag, varyNames, varyValues,
+                            System.nanoTime(), fresh);
+                    segment.store(key, stored);
+                }
+            } finally {
+                call.complete(stored);
+            }
+        });
+    }
+
+    /*
+     * Freshness lifetime in nanos of an answer for a shared cache, -1 if it must not be stored
+     * Answers to requests with credentials are only stored when the upstream marks them shareable
+     */
+    static long freshness(Registry.Route route, HttpHeaders headers, HttpServletRequest request) {
+        Map<String, String> directives = directives(headers.getCacheControl());
+        if (directives.containsKey("no-store") || directives.containsKey("private")) {
+            return -1;
+        }
+        if (hasCredentials(request)
+                && !directives.containsKey("public")
+                && !directives.containsKey("s-maxage")
+                && !directives.containsKey("must-revalidate")) {
+            return -1;
+        }
+        if (directives.containsKey("no-cache")) {
+            return 0;
+        }
+
+        long seconds;
+        if (directives.containsKey("s-maxage")) {
+            seconds = seconds(directives.get("s-maxage"));
+        } else if (directives.containsKey("max-age")) {
+            seconds = seconds(directives.get("max-age"));
+        } else if (headers.getExpires() >= 0) {
+            long date = headers.getDate() >= 0 ? headers.getDate() : System.currentTimeMillis();
+            seconds = Math.max(0, (headers.getExpires() - date) / 1000);
+        } else {
+            return route.getCache().getDefaultTtl().toNanos();
+        }
+        String age = headers.getFirst(HttpHeaders.AGE);
+        if (age != null) {
+            seconds -= seconds(age);
+        }
+        return TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+    }
+
+    /*
+     * Authorization header or the token cookie, both authenticate PROTECTED routes, see Utils.extractToken
+     */
+    private static boolean hasCredentials(HttpServletRequest request) {
+        if (request.getHeader(HttpHeaders.AUTHORIZATION) != null) {
+            return true;
+        }
+        if (request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (Utils.TOKEN_COOKIE.equals(cookie.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Cache-Control directives by lower case name, values without quotes, e.g. max-age=60 -> {max-age: 60}
+     */
+    static Map<String, String> directives(String cacheControl) {
+        if (cacheControl == null || cacheControl.isBlank()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> directives = new HashMap<>();
+        for (String part : cacheControl.split(",")) {
+            String directive = part.trim();
+            if (directive.isEmpty()) {
+                continue;
+            }
+            int equals = directive.indexOf('=');
+            if (equals < 0) {
+                directives.put(directive.toLowerCase(Locale.ROOT), "");
+            } else {
+                String value = directive.substring(equals + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                directives.put(directive.substring(0, equals).trim().toLowerCase(Locale.ROOT), value);
+            }
+        }
+        return directives;
+    }
+
+    private static long seconds(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /*
+     * Validators of the client are not forwarded, the cache needs a full answer to store
+     */
+    private static void removeConditionals(HttpHeaders headers) {
+        headers.remove(HttpHeaders.IF_NONE_MATCH);
+        headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+    }
+
+    private static List<String> varyValues(List<String> names, HttpServletRequest request) {
+        List<String> values = new ArrayList<>(names.size());
+        for (String name : names) {
+            values.add(String.join(",", Collections.list(request.getHeaders(name))));
+        }
+        return values;
+    }
+
+    /*
+     * Writes out the body of an answer nobody reads so its connection and permits are released
+     */
+    private static void drain(ResponseEntity<?> response) throws IOException {
+        if (response.getBody() instanceof StreamingResponseBody body) {
+            body.writeTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static Entry await(CompletableFuture<Entry> running, long timeoutMillis) throws IOException {
+        try {
+            return running.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a cached response");
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    private Segment segment(String key) {
+        return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+    }
+
+    /*
+     * One stored answer, immutable, a refresh after 304 creates a new entry sharing the body
+     */
+    private static final class Entry {
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final String etag;
+        private final List<String> varyNames;
+        private final List<String> varyValues;
+        private final long storedAt;
+        private final long freshNanos;
+        private final int size;
+
+        Entry(HttpHeaders headers, byte[] body, String etag, List<String> varyNames, List<String> varyValues,
+              long storedAt, long freshNanos) {
+            HttpHeaders copy = new HttpHeaders();
+            copy.putAll(headers);
+            copy.remove(HttpHeaders.AGE);
+            this.headers = HttpHeaders.readOnlyHttpHeaders(copy);
+            this.body = body;
+            this.etag = etag;
+            this.varyNames = varyNames;
+            this.varyValues = varyValues;
+            this.storedAt = storedAt;
+            this.freshNanos = freshNanos;
+            this.size = body.length + headers.toString().length();
+        }
+
+        Entry refreshed(long freshNanos) {
+            return new Entry(headers, body, etag, varyNames, varyValues, System.nanoTime(), freshNanos);
+        }
+
+        boolean isFresh(long now) {
+            return now - storedAt < freshNanos;
+        }
+
+        boolean matches(HttpServletRequest request) {
+            return varyNames.isEmpty() || varyValues.equals(varyValues(varyNames, request));
+        }
+
+        /*
+         * 304 when the client already holds this version, the stored answer with its Age otherwise
+         */
+        ResponseEntity<?> toResponse(HttpServletRequest request) {
+            HttpHeaders response = new HttpHeaders();
+            response.putAll(headers);
+            response.set(HttpHeaders.AGE, Long.toString(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - storedAt)));
+            if (etag != null && matchesIfNoneMatch(request.getHeaders(HttpHeaders.IF_NONE_MATCH))) {
+                response.remove(HttpHeaders.CONTENT_LENGTH);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(response).build();
+            }
+            return ResponseEntity.ok().headers(response).body((StreamingResponseBody) out -> out.write(body));
+        }
+
+        private boolean matchesIfNoneMatch(Enumeration<String> values) {
+            String tag = weakless(etag);
+            while (values != null && values.hasMoreElements()) {
+                for (String candidate : values.nextElement().split(",")) {
+                    String trimmed = candidate.trim();
+                    if (trimmed.equals("*") || weakless(trimmed).equals(tag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static String weakless(String tag) {
+            return tag.startsWith("W/") ? tag.substring(2) : tag;
+        }
+    }
+
+    /*
+     * Passes every byte to the client and keeps a copy until more than limit bytes went through
+     */
+    private static final class CaptureOutputStream extends FilterOutputStream {
+        private final long limit;
+        private ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        private boolean overflowed;
+
+        CaptureOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            keep(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            keep(b, off, len);
+        }
+
+        private void keep(byte[] b, int off, int len) {
+            if (overflowed) {
+                return;
+            }
+            if (captured.size() + (long) len > limit) {
+                overflowed = true;
+                captured = null;
+                return;
+            }
+            captured.write(b, off, len);
+        }
+    }
+
+    /*
+     * Access ordered LinkedHashMap, least recently used entries are dropped while the segment holds more than maxBytes
+     */
+    private class Segment extends LinkedHashMap<String, Entry> {
+        private final long maxBytes;
+        private long used;
+
+        Segment(long maxBytes) {
+            super(16, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized Entry lookup(String key) {
+            return get(key);
+        }
+
+        synchronized void store(String key, Entry entry) {
+            Entry previous = put(key, entry);
+            used += entry.size;
+            bytes.addAndGet(entry.size);
+            if (previous != null) {
+                used -= previous.size;
+                bytes.addAndGet(-previous.size);
+            }
+            Iterator<Entry> eldest = values().iterator();
+            while (used > maxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                used -= evicted.size;
+                bytes.addAndGet(-evicted.size);
+                evictions.increment();
+            }
+        }
+    }
+}
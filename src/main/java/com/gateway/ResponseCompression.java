@@ -0,0 +1,302 @@
+package com.gateway;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * ResponseCompression encodes answers of routes with compression.enabled for clients that send Accept-Encoding
+ * gzip is preferred over deflate at equal q, identity bodies are compressed while they stream to the client,
+ * nothing is buffered beyond one pooled buffer
+ *
+ * Never compressed: bodies with a Content-Encoding, Cache-Control no-transform, partial content,
+ * HEAD, 204 and 304 answers, types outside the mime types of the route, bodies shorter than minSize
+ * Bodies of unknown length are compressed, the upstream chose chunked for them
+ * Deflaters hold native zlib state, they are pooled per encoding and reset between responses
+ */
+@Component
+public class ResponseCompression {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final DeflaterPool gzip;
+    private final DeflaterPool deflate;
+    private final BufferPool bufferPool;
+
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    public ResponseCompression(GatewayProperties properties) {
+        GatewayProperties.Compression settings = properties.getCompression();
+        this.gzip = new DeflaterPool(settings.getLevel(), true, settings.getPoolSize());
+        this.deflate = new DeflaterPool(settings.getLevel(), false, settings.getPoolSize());
+        this.bufferPool = new BufferPool(properties.getForwarding().getBufferSize(), settings.getPoolSize());
+    }
+
+    /*
+     * Returns response as is, with Vary: Accept-Encoding added, or with its body encoded
+     * An encoded body loses Content-Length and gets a weak ETag, the bytes on the wire are not the upstream ones
+     */
+    public ResponseEntity<?> apply(Registry.Route route, HttpMethod method, HttpServletRequest request,
+                                   ResponseEntity<?> response) {
+        if (route == null || !route.getCompression().isEnabled() || method == HttpMethod.HEAD
+                || !(response.getBody() instanceof StreamingResponseBody body)) {
+            return response;
+        }
+        int status = response.getStatusCode().value();
+        HttpHeaders headers = response.getHeaders();
+        if (status < 200 || status == 204 || status == 206 || status == 304 || !isCompressible(route.getCompression(), headers)) {
+            return response;
+        }
+
+        HttpHeaders encoded = new HttpHeaders();
+        encoded.addAll(headers);
+        if (!variesOnEncoding(headers.getVary())) {
+            encoded.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        String encoding = negotiate(request.getHeaders(HttpHeaders.ACCEPT_ENCODING));
+        long length = headers.getContentLength();
+        if (encoding == null || (length >= 0 && length < route.getCompression().getMinSize().toBytes())) {
+            return ResponseEntity.status(response.getStatusCode()).headers(encoded).body(body);
+        }
+
+        encoded.remove(HttpHeaders.CONTENT_LENGTH);
+        encoded.set(HttpHeaders.CONTENT_ENCODING, encoding);
+        String etag = headers.getETag();
+        if (etag != null && !etag.startsWith("W/")) {
+            encoded.setETag("W/" + etag);
+        }
+
+        DeflaterPool pool = "gzip".equals(encoding) ? gzip : deflate;
+        StreamingResponseBody compressed = out -> {
+            Deflater deflater = pool.acquire();
+            byte[] buffer = bufferPool.acquire();
+            try {
+                DeflatingStream deflating = new DeflatingStream(out, deflater, buffer, pool == gzip);
+                body.writeTo(deflating);
+                deflating.finish();
+                responses.increment();
+                bytesIn.add(deflater.getBytesRead());
+                bytesOut.add(deflating.written);
+            } finally {
+                bufferPool.release(buffer);
+                pool.release(deflater);
+            }
+        };
+        return ResponseEntity.status(response.getStatusCode()).headers(encoded).body(compressed);
+    }
+
+    public long getResponses() { return responses.sum(); }
+    public long getBytesIn() { return bytesIn.sum(); }
+    public long getBytesOut() { return bytesOut.sum(); }
+
+    static boolean isCompressible(Registry.Compression settings, HttpHeaders headers) {
+        String contentEncoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (contentEncoding != null && !contentEncoding.equalsIgnoreCase("identity")) {
+            return false;
+        }
+        if (headers.containsKey(HttpHeaders.CONTENT_RANGE)
+                || ResponseCache.directives(headers.getCacheControl()).containsKey("no-transform")) {
+            return false;
+        }
+        String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        if (contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        String type = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase(Locale.ROOT);
+        for (String allowed : settings.getMimeTypes()) {
+            String pattern = allowed.toLowerCase(Locale.ROOT);
+            if (pattern.endsWith("/*") ? type.startsWith(pattern.substring(0, pattern.length() - 1)) : type.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Header names are case insensitive, * already varies on every header
+     */
+    static boolean variesOnEncoding(List<String> vary) {
+        for (String name : vary) {
+            if (name.equalsIgnoreCase(HttpHeaders.ACCEPT_ENCODING) || name.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * gzip or deflate, whichever the client rates higher, null if it takes neither
+     * Codings not listed get the q of *, and 0 without one
+     */
+    static String negotiate(Enumeration<String> acceptEncoding) {
+        float gzipQ = -1;
+        float deflateQ = -1;
+        float anyQ = -1;
+        while (acceptEncoding != null && acceptEncoding.hasMoreElements()) {
+            for (String part : acceptEncoding.nextElement().split(",")) {
+                String[] params = part.split(";");
+                String coding = params[0].trim().toLowerCase(Locale.ROOT);
+                float q = 1;
+                for (int i = 1; i < params.length; i++) {
+                    String param = params[i].trim();
+                    if (param.startsWith("q=") || param.startsWith("Q=")) {
+                        try {
+                            q = Float.parseFloat(param.substring(2));
+                        } catch (NumberFormatException e) {
+                            q = 0;
+                        }
+                    }
+                }
+                switch (coding) {
+                    case "gzip", "x-gzip" -> gzipQ = Math.max(gzipQ, q);
+                    case "deflate" -> deflateQ = Math.max(deflateQ, q);
+                    case "*" -> anyQ = Math.max(anyQ, q);
+                    default -> { }
+                }
+            }
+        }
+        float gzipRating = gzipQ >= 0 ? gzipQ : Math.max(anyQ, 0);
+        float deflateRating = deflateQ >= 0 ? deflateQ : Math.max(anyQ, 0);
+        if (gzipRating > 0 && gzipRating >= deflateRating) {
+            return "gzip";
+        }
+        return deflateRating > 0 ? "deflate" : null;
+    }
+
+    /*
+     * Idle Deflaters of one encoding, nowrap gives raw deflate for gzip framing, zlib framing otherwise
+     * An empty pool creates a new Deflater, a full pool frees the returned one
+     */
+    private static final class DeflaterPool {
+        private final int level;
+        private final boolean nowrap;
+        private final ArrayBlockingQueue<Deflater> idle;
+
+        DeflaterPool(int level, boolean nowrap, int capacity) {
+            this.level = level;
+            this.nowrap = nowrap;
+            this.idle = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        }
+
+        Deflater acquire() {
+            Deflater deflater = idle.poll();
+            return deflater != null ? deflater : new Deflater(level, nowrap);
+        }
+
+        void release(Deflater deflater) {
+            deflater.reset();
+            if (!idle.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /*
+     * Compresses into out through one buffer, with the gzip header and trailer around the deflate stream if gzip
+     * @flush emits everything written so far, @finish ends the stream without closing out
+     */
+    private static final class DeflatingStream extends OutputStream {
+        private final OutputStream out;
+        private final Deflater deflater;
+        private final byte[] buffer;
+        private final CRC32 crc;
+        private long written;
+        private boolean finished;
+
+        DeflatingStream(OutputStream out, Deflater deflater, byte[] buffer, boolean gzip) throws IOException {
+            this.out = out;
+            this.deflater = deflater;
+            this.buffer = buffer;
+            this.crc = gzip ? new CRC32() : null;
+            if (gzip) {
+                out.write(GZIP_HEADER);
+                written += GZIP_HEADER.length;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (finished) {
+                throw new IOException("Compressed stream already finished");
+            }
+            if (length == 0) {
+                return;
+            }
+            if (crc != null) {
+                crc.update(bytes, offset, length);
+            }
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                drain(Deflater.NO_FLUSH);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!finished) {
+                while (drain(Deflater.SYNC_FLUSH) == buffer.length) {
+                    // the buffer was filled, there may be more
+                }
+            }
+            out.flush();
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(Deflater.NO_FLUSH);
+            }
+            if (crc != null) {
+                byte[] trailer = new byte[8];
+                writeIntLE(trailer, 0, (int) crc.getValue());
+                writeIntLE(trailer, 4, (int) deflater.getBytesRead());
+                out.write(trailer);
+                written += trailer.length;
+            }
+            out.flush();
+        }
+
+        private int drain(int flush) throws IOException {
+            int length = deflater.deflate(buffer, 0, buffer.length, flush);
+            if (length > 0) {
+                out.write(buffer, 0, length);
+                written += length;
+            }
+            return length;
+        }
+
+        private static void writeIntLE(byte[] bytes, int offset, int value) {
+            bytes[offset] = (byte) value;
+            bytes[offset + 1] = (byte) (value >>> 8);
+            bytes[offset + 2] = (byte) (value >>> 16);
+            bytes[offset + 3] = (byte) (value >>> 24);
+        }
+    }
+}
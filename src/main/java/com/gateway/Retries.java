@@ -0,0 +1,136 @@
+package com.gateway;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * Retries decides if a failed upstream call may be tried again, configured by services.list[*].retry
+ * Only idempotent methods without a request body are retried, a streamed body cannot be sent twice
+ * Each service has a retry budget so retries can not multiply the load on a service that is already failing
+ */
+@Component
+public class Retries {
+
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS = Set.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE, HttpMethod.TRACE);
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    public boolean isRetryable(HttpMethod method, HttpServletRequest request) {
+        return IDEMPOTENT_METHODS.contains(method) && !Forwarder.hasBody(request);
+    }
+
+    /*
+     * 502, 503 and 504 mean the request did not get processed by a healthy instance
+     */
+    public static boolean isRetryableStatus(HttpStatusCode status) {
+        int code = status.value();
+        return code == 502 || code == 503 || code == 504;
+    }
+
+    /*
+     * Called once per request, every request earns the service budgetPercent of a retry
+     */
+    public void onRequest(Registry.Service service) {
+        budget(service).deposit();
+    }
+
+    /*
+     * Takes one retry from the budget of the service, false when it is used up
+     */
+    public boolean tryRetry(Registry.Service service) {
+        return budget(service).withdraw();
+    }
+
+    /*
+     * Waits a random time up to min(maxBackoff, backoff * 2^(attempt - 1)) before the next attempt
+     */
+    public void backoff(Registry.Service service, int attempt) throws IOException {
+        Registry.Retry settings = service.getRetry();
+        long cap = Math.min(settings.getMaxBackoff().toMillis(),
+                settings.getBackoff().toMillis() << Math.min(attempt - 1, 16));
+        if (cap <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /*
+     * Budgets of changed services start over with the new settings
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        event.changed().forEach(budgets::remove);
+    }
+
+    private Budget budget(Registry.Service service) {
+        return budgets.computeIfAbsent(service.getName(),
+                name -> new Budget(service.getRetry().getBudgetPercent(), service.getRetry().getMinRetriesPerSecond()));
+    }
+
+    /*
+     * Lock free retry budget, balance is counted in thousandths of a retry
+     * Every request adds budgetPercent * 10, a retry costs 1000, the balance never exceeds
+     * what the last 1000 requests earned
+     * minRetriesPerSecond retries per second are free so low traffic services can still retry
+     * Also the hedge budget of a route, see @Hedging
+     */
+    static final class Budget {
+        private static final long RETRY_COST = 1000;
+
+        private final long deposit;
+        private final long cap;
+        private final int minRetriesPerSecond;
+        private final AtomicLong balance = new AtomicLong();
+        private final AtomicLong second = new AtomicLong();
+        private final AtomicInteger freeRetries = new AtomicInteger();
+
+        Budget(int budgetPercent, int minRetriesPerSecond) {
+            this.deposit = budgetPercent * RETRY_COST / 100;
+            this.cap = deposit * 1000;
+            this.minRetriesPerSecond = minRetriesPerSecond;
+        }
+
+        void deposit() {
+            balance.accumulateAndGet(deposit, (current, add) -> Math.min(cap, current + add));
+        }
+
+        boolean withdraw() {
+            long now = System.nanoTime() / 1_000_000_000L;
+            long current = second.get();
+            if (current != now && second.compareAndSet(current, now)) {
+                freeRetries.set(0);
+            }
+            if (freeRetries.incrementAndGet() <= minRetriesPerSecond) {
+                return true;
+            }
+            while (true) {
+                long available = balance.get();
+                if (available < RETRY_COST) {
+                    return false;
+                }
+                if (balance.compareAndSet(available, available - RETRY_COST)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
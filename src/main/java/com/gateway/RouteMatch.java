@@ -0,0 +1,52 @@
+package com.gateway;
+
+import java.util.Map;
+
+/*
+ * RouteMatch is the result of matching one request against the @RouteTable
+ * It is computed once in Service.forwardRequest and carried through the rest of the request
+ * route is null when no route of the service matched, exposure then falls back to the service default
+ * params holds the values of the :params of the matched route, e.g. /api/institutes/:id -> {id=42}
+ */
+public final class RouteMatch {
+
+    /*
+     * Request attribute under which the match is stored for later stages of the same request
+     */
+    public static final String ATTRIBUTE = RouteMatch.class.getName();
+
+    private final Registry.Service service;
+    private final Registry.Route route;
+    private final String method;
+    private final String path;
+    private final Map<String, String> params;
+
+    public RouteMatch(Registry.Service service, Registry.Route route, String method, String path, Map<String, String> params) {
+        this.service = service;
+        this.route = route;
+        this.method = method;
+        this.path = path;
+        this.params = params;
+    }
+
+    public Registry.Service getService() { return service; }
+
+    public Registry.Route getRoute() { return route; }
+
+    public String getMethod() { return method; }
+
+    public String getPath() { return path; }
+
+    public Map<String, String> getParams() { return params; }
+
+    /*
+     * Route template such as /api/institutes/:id, or the raw path when no route matched
+     */
+    public String getTemplate() {
+        return route != null ? route.getPath() : path;
+    }
+
+    public Registry.Exposure getExposure() {
+        return route != null ? route.getExposure() : service.getDefaultExposure();
+    }
+}
@@ -0,0 +1,262 @@
+package com.gateway;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * RouteTable is the compiled, read only form of @Registry
+ * Services are found by name through a hash map
+ * Routes of a service are kept in a trie with one level per path segment
+ * Segments starting with ':' become a wildcard node, literal segments are tried before the wildcard
+ * A trie node keeps its routes per method, a route without a method matches every method
+ *
+ * Lookups walk the request path by index, no split, no substring
+ * The only allocations are the @RouteMatch result and the params of the matched route
+ * Cost is O(path segments) instead of O(routes x split)
+ */
+public final class RouteTable {
+
+    private final List<Registry.Service> list;
+    private final Map<String, CompiledService> services;
+
+    private RouteTable(List<Registry.Service> list, Map<String, CompiledService> services) {
+        this.list = list;
+        this.services = services;
+    }
+
+    /*
+     * Builds the table, when names or routes repeat the first one in the list wins
+     * as it did with the linear scan
+     */
+    public static RouteTable compile(List<Registry.Service> list) {
+        Map<String, CompiledService> services = new HashMap<>();
+        for (Registry.Service service : list) {
+            if (services.containsKey(service.getName())) {
+                continue;
+            }
+            Node root = new Node();
+            for (Registry.Route route : service.getRoutes()) {
+                Node node = root;
+                String[] segments = route.getPath().split("/");
+                List<String> paramNames = new ArrayList<>();
+                List<Integer> paramIndexes = new ArrayList<>();
+                for (int i = 0; i < segments.length; i++) {
+                    node = node.child(segments[i]);
+                    if (segments[i].startsWith(":")) {
+                        paramNames.add(segments[i].substring(1));
+                        paramIndexes.add(i);
+                    }
+                }
+                node.add(new RouteEntry(route,
+                        route.getMethod() != null ? route.getMethod().toUpperCase(Locale.ROOT) : null,
+                        paramNames.toArray(String[]::new),
+                        paramIndexes.stream().mapToInt(Integer::intValue).toArray()));
+            }
+            root.freeze();
+            services.put(service.getName(), new CompiledService(service, root));
+        }
+        return new RouteTable(List.copyOf(list), Map.copyOf(services));
+    }
+
+    /*
+     * Services the table was compiled from, in configuration order
+     */
+    public List<Registry.Service> getServices() {
+        return list;
+    }
+
+    /*
+     * Returns the service registered under name or null
+     */
+    public Registry.Service findService(String name) {
+        CompiledService compiled = services.get(name);
+        return compiled != null ? compiled.service() : null;
+    }
+
+    /*
+     * Matches method and requestPath against the routes of the service
+     * Returns null for an unknown service, a match without route when no route fits
+     * Segments are compared the same way as Validator.PatternMatcher, trailing slashes are ignored
+     * Path parameters are only extracted when the matched route declares some
+     */
+    public RouteMatch match(String serviceName, String method, String requestPath) {
+        CompiledService compiled = services.get(serviceName);
+        if (compiled == null) {
+            return null;
+        }
+
+        int end = requestPath.length();
+        while (end > 0 && requestPath.charAt(end - 1) == '/') {
+            end--;
+        }
+        RouteEntry entry = end == 0 && !requestPath.isEmpty()
+                ? compiled.root().find(method)
+                : match(compiled.root(), method, requestPath, 0, end);
+
+        if (entry == null) {
+            return new RouteMatch(compiled.service(), null, method, requestPath, Map.of());
+        }
+        return new RouteMatch(compiled.service(), entry.route(), method, requestPath, entry.params(requestPath, end));
+    }
+
+    /*
+     * Returns the route of the service matching method and requestPath or null
+     */
+    public Registry.Route findRoute(String serviceName, String method, String requestPath) {
+        RouteMatch match = match(serviceName, method, requestPath);
+        return match != null ? match.getRoute() : null;
+    }
+
+    /*
+     * Matches the segment starting at start and everything after it
+     * Falls back to the wildcard child when the literal branch has no route for the method further down
+     */
+    private static RouteEntry match(Node node, String method, String path, int start, int end) {
+        if (start > end) {
+            return node.find(method);
+        }
+
+        int slash = path.indexOf('/', start);
+        if (slash < 0 || slash > end) {
+            slash = end;
+        }
+
+        Node literal = node.literal(path, start, slash);
+        if (literal != null) {
+            RouteEntry entry = match(literal, method, path, slash + 1, end);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        if (node.param != null) {
+            return match(node.param, method, path, slash + 1, end);
+        }
+        return null;
+    }
+
+    /*
+     * A route at a trie node with its upper cased method and the positions of its :params
+     */
+    private record RouteEntry(Registry.Route route, String method, String[] paramNames, int[] paramIndexes) {
+
+        boolean accepts(String requestMethod) {
+            return method == null || method.equalsIgnoreCase(requestMethod);
+        }
+
+        Map<String, String> params(String path, int end) {
+            if (paramNames.length == 0) {
+                return Map.of();
+            }
+            Map<String, String> params = new LinkedHashMap<>();
+            int segment = 0;
+            int start = 0;
+            int param = 0;
+            while (param < paramIndexes.length && start <= end) {
+                int slash = path.indexOf('/', start);
+                if (slash < 0 || slash > end) {
+                    slash = end;
+                }
+                if (segment == paramIndexes[param]) {
+                    params.put(paramNames[param], path.substring(start, slash));
+                    param++;
+                }
+                segment++;
+                start = slash + 1;
+            }
+            return params;
+        }
+    }
+
+    private record CompiledService(Registry.Service service, Node root) {
+    }
+
+    /*
+     * One trie level, literal children are frozen into arrays sorted by segment hash
+     * so a lookup is a binary search on the hash and a region compare on the path
+     */
+    private static final class Node {
+        private static final int[] NO_HASHES = new int[0];
+
+        private Map<String, Node> building = new HashMap<>();
+        private int[] hashes = NO_HASHES;
+        private String[] keys = new String[0];
+        private Node[] children = new Node[0];
+        private Node param;
+        private RouteEntry[] routes = new RouteEntry[0];
+
+        Node child(String segment) {
+            if (segment.startsWith(":")) {
+                if (param == null) {
+                    param = new Node();
+                }
+                return param;
+            }
+            return building.computeIfAbsent(segment, key -> new Node());
+        }
+
+        /*
+         * Routes keep their list order, the first one accepting the method wins
+         */
+        void add(RouteEntry entry) {
+            routes = Arrays.copyOf(routes, routes.length + 1);
+            routes[routes.length - 1] = entry;
+        }
+
+        RouteEntry find(String method) {
+            for (RouteEntry entry : routes) {
+                if (entry.accepts(method)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        void freeze() {
+            List<Map.Entry<String, Node>> entries = new ArrayList<>(building.entrySet());
+            entries.sort(Comparator.comparingInt((Map.Entry<String, Node> e) -> e.getKey().hashCode())
+                    .thenComparing(Map.Entry::getKey));
+
+            hashes = new int[entries.size()];
+            keys = new String[entries.size()];
+            children = new Node[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                keys[i] = entries.get(i).getKey();
+                hashes[i] = keys[i].hashCode();
+                children[i] = entries.get(i).getValue();
+                children[i].freeze();
+            }
+            if (param != null) {
+                param.freeze();
+            }
+            building = null;
+        }
+
+        Node literal(String path, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + path.charAt(i);
+            }
+
+            int i = Arrays.binarySearch(hashes, hash);
+            if (i < 0) {
+                return null;
+            }
+            while (i > 0 && hashes[i - 1] == hash) {
+                i--;
+            }
+            int length = end - start;
+            for (; i < hashes.length && hashes[i] == hash; i++) {
+                if (keys[i].length() == length && path.regionMatches(start, keys[i], 0, length)) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+    }
+}
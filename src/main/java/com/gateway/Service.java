@@ -1,35 +1,69 @@
 package com.gateway;
 
-import java.util.Collections;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
 import jakarta.servlet.http.HttpServletRequest;
 
 @org.springframework.stereotype.Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class Service {
 
     private static final Logger log = LoggerFactory.getLogger(Service.class);
 
-    private final RestTemplate restTemplate = new RestTemplate();
     private final Registry registry;
     private final Utils utils;
     private final Validator validator;
+    private final Forwarder forwarder;
+    private final UpstreamClients clients;
+    private final Bulkhead bulkhead;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final LoadBalancer loadBalancer;
+    private final CircuitBreakers circuitBreakers;
+    private final Retries retries;
+    private final Metrics metrics;
+    private final ResponseCache responseCache;
+    private final RateLimiter rateLimiter;
+    private final TrustedNetworks trustedNetworks;
+    private final ResponseCompression compression;
+    private final AccessLog accessLog;
+    private final Hedging hedging;
 
     @Autowired
-    public Service(Registry registry, Utils utils, Validator validator) {
+    public Service(Registry registry, Utils utils, Validator validator, Forwarder forwarder, UpstreamClients clients,
+                   Bulkhead bulkhead, ConcurrencyLimits concurrencyLimits, LoadBalancer loadBalancer,
+                   CircuitBreakers circuitBreakers, Retries retries, Metrics metrics, ResponseCache responseCache,
+                   RateLimiter rateLimiter, TrustedNetworks trustedNetworks, ResponseCompression compression,
+                   AccessLog accessLog, Hedging hedging) {
         this.registry = registry;
         this.utils = utils;
         this.validator = validator;
+        this.forwarder = forwarder;
+        this.clients = clients;
+        this.bulkhead = bulkhead;
+        this.concurrencyLimits = concurrencyLimits;
+        this.loadBalancer = loadBalancer;
+        this.circuitBreakers = circuitBreakers;
+        this.retries = retries;
+        this.metrics = metrics;
+        this.responseCache = responseCache;
+        this.rateLimiter = rateLimiter;
+        this.trustedNetworks = trustedNetworks;
+        this.compression = compression;
+        this.accessLog = accessLog;
+        this.hedging = hedging;
     }
 
     /*
@@ -37,51 +71,54 @@ public class Service {
      * microservice
      * Few Args are required request, method, serviceName
      * Method contains GET, POST, PUT and DELETE as per REST API
+     * Bodies are streamed both ways by @Forwarder, the upstream body is written
+     * to the client after this method returns
+     * Every answer is counted in @Metrics, latencies are measured up to the response headers
+     * and written to the @AccessLog once the body went out, nothing else is logged per request above debug
      */
     public ResponseEntity<?> forwardRequest(HttpServletRequest request) {
+        RequestStats stats = new RequestStats();
+        ResponseEntity<?> response = handle(request, stats);
+        int status = response.getStatusCode().value();
+        metrics.record(stats, status);
+        return accessLog.wrap(stats, request, status, response);
+    }
+
+    private ResponseEntity<?> handle(HttpServletRequest request, RequestStats stats) {
         try {
             String url = request.getRequestURI();
 
             /*
-             * Finds instance of the required service, firstly available if not return
-             * Service Unavailable
-             * service will contain information such as name, host, port, routes in which
-             * routes exposure, method etc...
-             * serviceName is received from the @extractServiceNameFromUrl
-             */
-            String serviceName = utils.extractServiceNameFromUrl(url);
-            Registry.Service service = utils.getService(serviceName, registry);
-
-            /*
+             * @serviceName is received from the @extractServiceNameFromUrl
+             *
              * @requestPath removes the service name from the url
              * 
-             * @body read all content from the incoming request, create new one for
-             * redirection
-             * 
              * @method gets the method type for request e.g., GET, POST...
              */
+            String serviceName = utils.extractServiceNameFromUrl(url);
             String requestPath = utils.removeServiceNameFromUrl(url);
-            byte[] body = request.getInputStream().readAllBytes();
             HttpMethod method = HttpMethod.valueOf(request.getMethod());
 
             /*
-             * Copy all the header coming with the request
-             * Create a new request with header
+             * Finds the required service and the route for method + path, if no service
+             * return Service Unavailable
+             * The match holds the service (name, host, port...), the route, its :params and exposure
+             * It is computed once and kept as a request attribute for the later stages
              */
-            HttpHeaders headers = new HttpHeaders();
-            Collections.list(request.getHeaderNames())
-                    .forEach(name -> headers.addAll(name, Collections.list(request.getHeaders(name))));
+            RouteMatch match = validator.checkExposure(serviceName, method.name(), requestPath);
+            request.setAttribute(RouteMatch.ATTRIBUTE, match);
+            stats.setMatch(match);
+            Registry.Service service = match.getService();
+            Registry.Exposure exposure = match.getExposure();
 
             /*
-             * Incoming url : /academic-service/abc/123
-             * Required url : http://host:port/routePath
+             * Rate limits of the route and the service, checked before anything is sent anywhere
+             * Limits keyed on the token subject of PROTECTED routes are checked once the token is verified
              */
-            String targetUrl = utils.createTargetUrl(service, requestPath);
-            HttpEntity<byte[]> entity = new HttpEntity<>(body, headers);
-
-            log.info("✅ Request Forwarded : {}", targetUrl);
-
-            Registry.Exposure exposure = validator.checkExposure(serviceName, requestPath);
+            long wait = rateLimiter.check(match, request);
+            if (wait > 0) {
+                return tooManyRequests(wait, serviceName, url);
+            }
 
             try {
                 /*
@@ -89,21 +126,21 @@ public class Service {
                  * 
                  * EXPOSURE: PUBLIC, Route request to the destination without any checks
                  * 
-                 * EXPOSURE: PRIVATE, Request can only be made by internal network @isInternalIp
+                 * EXPOSURE: PRIVATE, Request can only be made by internal network, see @TrustedNetworks
                  * 
                  * EXPOSURE: PROTECTED, Check if the incoming request contains token or not,
                  * authenticate this token with @isAuthenticated
                  */
                 switch (exposure) {
                     case PUBLIC:
-                        log.info("PUBLIC route accessed: {}", targetUrl);
-                        return restTemplate.exchange(targetUrl, method, entity, String.class);
+                        log.debug("PUBLIC route accessed: {}", url);
+                        return forward(match, requestPath, method, request, stats);
 
                     case PRIVATE:
-                        String clientIp = request.getRemoteAddr();
-                        if (utils.isInternalIp(clientIp)) {
-                            log.info("PRIVATE route accessed from internal IP: {}", clientIp);
-                            return restTemplate.exchange(targetUrl, method, entity, String.class);
+                        String clientIp = trustedNetworks.clientIp(request);
+                        if (trustedNetworks.isInternal(clientIp, service)) {
+                            log.debug("PRIVATE route accessed from internal IP: {}", clientIp);
+                            return forward(match, requestPath, method, request, stats);
                         } else {
                             log.warn("Blocked PRIVATE route request from external IP: {}", clientIp);
                             return ResponseEntity.status(HttpStatus.FORBIDDEN)
@@ -111,9 +148,16 @@ public class Service {
                         }
 
                     case PROTECTED:
-                        if (utils.isAuthenticated(request, restTemplate, registry)) {
-                            log.info("PROTECTED route accessed by authenticated user");
-                            return restTemplate.exchange(targetUrl, method, entity, String.class);
+                        long authStart = System.nanoTime();
+                        boolean authenticated = authenticate(request, service);
+                        stats.addAuthNanos(System.nanoTime() - authStart);
+                        if (authenticated) {
+                            long verifiedWait = rateLimiter.checkVerified(match, request);
+                            if (verifiedWait > 0) {
+                                return tooManyRequests(verifiedWait, serviceName, url);
+                            }
+                            log.debug("PROTECTED route accessed by authenticated user");
+                            return forward(match, requestPath, method, request, stats);
                         } else {
                             log.warn("Blocked PROTECTED route: unauthenticated user");
                             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
@@ -125,11 +169,14 @@ public class Service {
                         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                                 .body("Unknown exposure type");
                 }
-            } catch (ResourceAccessException e) {
+            } catch (Forwarder.PayloadTooLargeException e) {
+                log.warn("Rejected request to {}: {}", url, e.getMessage());
+                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+            } catch (IOException | ResourceAccessException e) {
                 /*
                  * If the service is down or not running, gracefully handle it
                  */
-                log.error("Service {} is unavailable at {}: {}", serviceName, targetUrl, e.getMessage());
+                log.error("Service {} is unavailable for {}: {}", serviceName, url, e.getMessage());
                 return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
                         .body("Service " + serviceName + " is currently unavailable.");
             }
@@ -139,4 +186,228 @@ public class Service {
         }
 
     }
+
+    /*
+     * 429 with Retry-After rounded up to whole seconds
+     */
+    private static ResponseEntity<?> tooManyRequests(long wait, String serviceName, String url) {
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999));
+        log.warn("Rate limit of service {} exceeded for {}", serviceName, url);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+                .body("Too many requests, retry after " + retryAfter + "s");
+    }
+
+    /*
+     * Parts of one batch share their verdicts, see Batches.Verdicts
+     */
+    private boolean authenticate(HttpServletRequest request, Registry.Service service) {
+        if (request.getAttribute(Batches.Verdicts.ATTRIBUTE) instanceof Batches.Verdicts verdicts) {
+            return verdicts.verify(service, () -> utils.isAuthenticated(request, service, clients, registry));
+        }
+        return utils.isAuthenticated(request, service, clients, registry);
+    }
+
+    /*
+     * @forward answers from @ResponseCache on routes that enable it, everything else goes to @exchange
+     * The exposure of the route has been checked at this point, cached answers get the same checks
+     * The answer is encoded by @ResponseCompression last, the cache keeps the upstream bytes
+     */
+    private ResponseEntity<?> forward(RouteMatch match, String requestPath, HttpMethod method,
+                                      HttpServletRequest request, RequestStats stats) throws IOException {
+        Registry.Service service = match.getService();
+        ResponseEntity<?> response;
+        if (!responseCache.isCacheable(match.getRoute(), method, request)) {
+            response = exchange(match, requestPath, method, request, stats, headers -> { });
+        } else {
+            response = responseCache.serve(service, match.getRoute(), requestPath, request,
+                    headers -> exchange(match, requestPath, method, request, stats, headers));
+        }
+        return compression.apply(match.getRoute(), method, request, response);
+    }
+
+    /*
+     * @exchange sends the request to an instance of the service through its pooled client
+     *
+     * Incoming url : /academic-service/abc/123
+     * Required url : http://host:port/routePath
+     * host:port is the instance of the service picked by @LoadBalancer, instances that failed
+     * their health checks or were ejected are skipped, with none left the request fails fast with 503
+     *
+     * Each attempt takes a slot under the @ConcurrencyLimits of the service, passes its circuit breaker
+     * and takes a @Bulkhead slot, see @call
+     * The slots and the in flight count of the endpoint are held until the upstream body
+     * has been streamed to the client
+     *
+     * Idempotent requests without a body are tried again on connection errors, 502, 503 and 504
+     * with jittered backoff, as long as the retry budget of the service allows
+     * On routes with hedge.enabled the first attempt is raced against a second one by @Hedging
+     * headers adjusts the forwarded request headers, see Forwarder.exchange
+     */
+    private ResponseEntity<?> exchange(RouteMatch match, String requestPath, HttpMethod method,
+                                       HttpServletRequest request, RequestStats stats,
+                                       Consumer<HttpHeaders> headers) throws IOException {
+        Registry.Service service = match.getService();
+        retries.onRequest(service);
+        int maxAttempts = retries.isRetryable(method, request) ? Math.max(1, service.getRetry().getMaxAttempts()) : 1;
+        boolean hedged = hedging.isHedged(match.getRoute(), method, request);
+
+        for (int attempt = 1; ; attempt++) {
+            boolean lastAttempt = attempt >= maxAttempts;
+
+            Call call;
+            try {
+                if (hedged && attempt == 1) {
+                    long start = System.nanoTime();
+                    try {
+                        call = hedging.race(match.getRoute(),
+                                () -> call(match, requestPath, method, request, headers, nanos -> { }),
+                                raced -> raced.rejection() == null, Call::discard);
+                    } finally {
+                        stats.addUpstreamNanos(System.nanoTime() - start);
+                    }
+                } else {
+                    call = call(match, requestPath, method, request, headers, stats::addUpstreamNanos);
+                }
+            } catch (Forwarder.PayloadTooLargeException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                if (!lastAttempt && retries.tryRetry(service)) {
+                    log.warn("Attempt {} to service {} failed, retrying: {}", attempt, service.getName(), e.getMessage());
+                    retries.backoff(service, attempt);
+                    continue;
+                }
+                throw e;
+            }
+
+            if (call.rejection() != null) {
+                return call.rejection();
+            }
+
+            Forwarder.UpstreamResponse response = call.response();
+            if (!lastAttempt && Retries.isRetryableStatus(response.getStatusCode()) && retries.tryRetry(service)) {
+                log.warn("Attempt {} to {} answered {}, retrying", attempt, call.targetUrl(), response.getStatusCode());
+                call.discard();
+                retries.backoff(service, attempt);
+                continue;
+            }
+
+            return Forwarder.whenComplete(response.toResponseEntity(), call::release);
+        }
+    }
+
+    /*
+     * @call is one attempt: concurrency limit, breaker, instance, bulkhead slot, then the exchange with the upstream
+     * Returns the answer of the gateway if the attempt was rejected before reaching the upstream,
+     * or the upstream response with the slots and the endpoint still held
+     * A request over the concurrency limit of its exposure is shed with 503 before anything else
+     * The outcome is reported to the limit, to the breaker and to the endpoint for passive outlier detection,
+     * failed exchanges are thrown, time spent on the upstream goes to upstreamNanos
+     */
+    private Call call(RouteMatch match, String requestPath, HttpMethod method, HttpServletRequest request,
+                      Consumer<HttpHeaders> headers, LongConsumer upstreamNanos) throws IOException {
+        Registry.Service service = match.getService();
+        ConcurrencyLimits.Permit limit = concurrencyLimits.tryAcquire(service, match.getExposure());
+        if (limit == null) {
+            log.warn("Service {} is over its concurrency limit, shedding {} request {}",
+                    service.getName(), match.getExposure(), requestPath);
+            return Call.rejected(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Service " + service.getName() + " is overloaded, try again later."));
+        }
+
+        CircuitBreakers.Breaker breaker = circuitBreakers.get(service);
+        if (!breaker.tryAcquire()) {
+            limit.release();
+            log.warn("Circuit of service {} is open, rejecting {}", service.getName(), requestPath);
+            return Call.rejected(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Service " + service.getName() + " is currently unavailable."));
+        }
+
+        LoadBalancer.Endpoint endpoint = loadBalancer.choose(service);
+        if (endpoint == null) {
+            breaker.cancel();
+            limit.release();
+            log.warn("No available instance of service {}", service.getName());
+            return Call.rejected(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Service " + service.getName() + " is currently unavailable."));
+        }
+        String targetUrl = utils.createTargetUrl(endpoint, requestPath);
+
+        Bulkhead.Permit permit = bulkhead.tryAcquire(service);
+        if (permit == null) {
+            breaker.cancel();
+            limit.release();
+            log.warn("Service {} is at its concurrency limit, rejecting {}", service.getName(), targetUrl);
+            return Call.rejected(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Service " + service.getName() + " is busy, try again later."));
+        }
+
+        log.debug("✅ Request Forwarded : {}", targetUrl);
+
+        endpoint.acquire();
+        long start = System.nanoTime();
+        Forwarder.UpstreamResponse response;
+        try {
+            response = forwarder.exchange(clients.getRequestFactory(service), targetUrl, method, request, headers);
+        } catch (Forwarder.PayloadTooLargeException e) {
+            upstreamNanos.accept(System.nanoTime() - start);
+            breaker.cancel();
+            endpoint.release();
+            permit.release();
+            limit.release();
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            upstreamNanos.accept(System.nanoTime() - start);
+            if (Thread.currentThread().isInterrupted()) {
+                // cancelled by @Hedging after losing the race, not a failure of the upstream
+                breaker.cancel();
+            } else {
+                breaker.record(true, System.nanoTime() - start);
+                limit.sample(System.nanoTime() - start, true);
+                endpoint.recordFailure();
+            }
+            endpoint.release();
+            permit.release();
+            limit.release();
+            throw e;
+        }
+
+        long latency = System.nanoTime() - start;
+        upstreamNanos.accept(latency);
+        boolean failed = response.getStatusCode().is5xxServerError();
+        breaker.record(failed, latency);
+        limit.sample(latency, Retries.isRetryableStatus(response.getStatusCode()));
+        endpoint.recordResponse(response.getStatusCode().value(), latency);
+        return new Call(null, response, endpoint, permit, limit, targetUrl);
+    }
+
+    /*
+     * Outcome of @call, either rejection or response with the endpoint and the slots it holds
+     */
+    private record Call(ResponseEntity<?> rejection, Forwarder.UpstreamResponse response,
+                        LoadBalancer.Endpoint endpoint, Bulkhead.Permit permit, ConcurrencyLimits.Permit limit,
+                        String targetUrl) {
+
+        static Call rejected(ResponseEntity<?> rejection) {
+            return new Call(rejection, null, null, null, null, null);
+        }
+
+        void release() {
+            if (endpoint != null) {
+                endpoint.release();
+                permit.release();
+                limit.release();
+            }
+        }
+
+        /*
+         * Drops the response unread and frees what the call holds
+         */
+        void discard() {
+            if (response != null) {
+                response.close();
+            }
+            release();
+        }
+    }
 }
@@ -0,0 +1,191 @@
+package com.gateway;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+/*
+ * TokenCache remembers the verdict of the auth service for a token
+ * Tokens are never stored, entries are keyed by the SHA-256 hash of the token
+ * Accepted tokens live for ttl, rejected tokens for the shorter negativeTtl
+ * Entries are spread over segments, each segment is a small LRU map with its own lock
+ * Concurrent requests carrying the same uncached token wait for a single auth call
+ */
+@Component
+public class TokenCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TokenCache(GatewayProperties properties) {
+        GatewayProperties.AuthCache settings = properties.getAuthCache();
+        this.enabled = settings.isEnabled();
+        this.ttlNanos = settings.getTtl().toNanos();
+        this.negativeTtlNanos = settings.getNegativeTtl().toNanos();
+        int segmentSize = Math.max(1, settings.getMaxEntries() / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /*
+     * @verify returns the cached verdict for the token or asks the loader for it
+     * Exceptions from the loader are not cached, they are rethrown to every waiting caller
+     */
+    public boolean verify(String token, Supplier<Boolean> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String key = hash(token);
+        Segment segment = segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+
+        Boolean cached = segment.lookup(key, System.nanoTime());
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        /*
+         * Single flight, only the first caller runs the loader, the rest join its result
+         */
+        CompletableFuture<Boolean> call = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            boolean valid = loader.get();
+            segment.store(key, valid, System.nanoTime() + (valid ? ttlNanos : negativeTtlNanos));
+            call.complete(valid);
+            return valid;
+        } catch (RuntimeException e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /*
+     * Same as @verify without blocking the caller, for @ReactiveService
+     * The loader returns the pending verdict, callers of either method join the same auth call
+     */
+    public CompletableFuture<Boolean> verifyAsync(String token, Supplier<CompletableFuture<Boolean>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        String key = hash(token);
+        Segment segment = segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+
+        Boolean cached = segment.lookup(key, System.nanoTime());
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        misses.increment();
+
+        CompletableFuture<Boolean> call = new CompletableFuture<>();
+        CompletableFuture<Boolean> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            return running.copy();
+        }
+
+        CompletableFuture<Boolean> pending;
+        try {
+            pending = loader.get();
+        } catch (RuntimeException e) {
+            pending = CompletableFuture.failedFuture(e);
+        }
+        pending.whenComplete((valid, error) -> {
+            if (error == null) {
+                segment.store(key, valid, System.nanoTime() + (valid ? ttlNanos : negativeTtlNanos));
+                call.complete(valid);
+            } else {
+                call.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            }
+            inFlight.remove(key, call);
+        });
+        return call.copy();
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+
+    static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Entry(boolean valid, long expiresAt) {
+    }
+
+    /*
+     * Access ordered LinkedHashMap, the least recently used entry is dropped once maxEntries is reached
+     */
+    private class Segment extends LinkedHashMap<String, Entry> {
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        synchronized Boolean lookup(String key, long now) {
+            Entry entry = get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt() - now <= 0) {
+                remove(key);
+                return null;
+            }
+            return entry.valid();
+        }
+
+        synchronized void store(String key, boolean valid, long expiresAt) {
+            put(key, new Entry(valid, expiresAt));
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
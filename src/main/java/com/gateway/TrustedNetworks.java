@@ -0,0 +1,138 @@
+package com.gateway;
+
+import java.net.InetSocketAddress;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * TrustedNetworks decides who is on the internal network, for PRIVATE routes and the admin endpoints
+ * The CIDR lists of gateway.trust and services.list[*].internal-networks are parsed once into @IpRanges
+ *
+ * The client is the peer address, unless the peer is one of the trustedProxies, then the forwarded header
+ * is read right to left and the first address that is not a trusted proxy is the client
+ * Entries left of it were written by the client itself and are never believed
+ */
+@Component
+public class TrustedNetworks {
+
+    private final IpRanges internal;
+    private final IpRanges proxies;
+    private final String forwardedHeader;
+    private final Map<String, IpRanges> services = new ConcurrentHashMap<>();
+
+    public TrustedNetworks(GatewayProperties properties) {
+        GatewayProperties.Trust trust = properties.getTrust();
+        this.internal = IpRanges.of(trust.getInternalNetworks());
+        this.proxies = IpRanges.of(trust.getTrustedProxies());
+        this.forwardedHeader = trust.getForwardedHeader();
+    }
+
+    /*
+     * true if the client of the request is in the internal networks of the service,
+     * service null checks against the gateway wide list
+     */
+    public boolean isInternal(HttpServletRequest request, Registry.Service service) {
+        return isInternal(clientIp(request), service);
+    }
+
+    public boolean isInternal(String clientIp, Registry.Service service) {
+        return ranges(service).contains(clientIp);
+    }
+
+    /*
+     * Address of the client behind any trusted proxies, as written by the proxy
+     */
+    public String clientIp(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (proxies.isEmpty() || !proxies.contains(remote)) {
+            return remote;
+        }
+        return clientIp(remote, forwarded(request));
+    }
+
+    /*
+     * Same for the reactive engine, see @ReactiveService, an unknown peer is the empty address
+     */
+    public String clientIp(ServerHttpRequest request) {
+        InetSocketAddress address = request.getRemoteAddress();
+        String remote = address == null ? ""
+                : address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+        if (proxies.isEmpty() || !proxies.contains(remote)) {
+            return remote;
+        }
+        List<String> values = request.getHeaders().get(forwardedHeader);
+        return clientIp(remote, values == null || values.isEmpty() ? null : String.join(",", values));
+    }
+
+    private String clientIp(String remote, String forwarded) {
+        if (forwarded == null) {
+            return remote;
+        }
+
+        int clientFrom = -1;
+        int clientTo = -1;
+        int end = forwarded.length();
+        while (end > 0) {
+            int comma = forwarded.lastIndexOf(',', end - 1);
+            int from = comma + 1;
+            int to = end;
+            while (from < to && forwarded.charAt(from) <= ' ') {
+                from++;
+            }
+            while (to > from && forwarded.charAt(to - 1) <= ' ') {
+                to--;
+            }
+            if (from < to) {
+                clientFrom = from;
+                clientTo = to;
+                if (!proxies.contains(forwarded, from, to)) {
+                    break;
+                }
+            }
+            end = comma;
+        }
+        return clientFrom < 0 ? remote : forwarded.substring(clientFrom, clientTo);
+    }
+
+    /*
+     * All lines of the forwarded header in order, proxies may append a line instead of extending the last
+     */
+    private String forwarded(HttpServletRequest request) {
+        Enumeration<String> values = request.getHeaders(forwardedHeader);
+        if (values == null || !values.hasMoreElements()) {
+            return null;
+        }
+        String first = values.nextElement();
+        if (!values.hasMoreElements()) {
+            return first;
+        }
+        StringBuilder all = new StringBuilder(first);
+        while (values.hasMoreElements()) {
+            all.append(',').append(values.nextElement());
+        }
+        return all.toString();
+    }
+
+    private IpRanges ranges(Registry.Service service) {
+        if (service == null || service.getInternalNetworks().isEmpty()) {
+            return internal;
+        }
+        return services.computeIfAbsent(service.getName(), name -> IpRanges.of(service.getInternalNetworks()));
+    }
+
+    /*
+     * Lists of changed services are parsed again on their next request
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        event.changed().forEach(services::remove);
+    }
+}
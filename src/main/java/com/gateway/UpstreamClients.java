@@ -0,0 +1,151 @@
+package com.gateway;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import jakarta.annotation.PreDestroy;
+
+/*
+ * UpstreamClients keeps one http client per registered service
+ * Connections to a service host:port are kept alive and reused across requests
+ * Timeouts and pool size come from services.list[*].client, the engine from gateway.client.engine
+ * Clients are created on first use and live until the gateway shuts down or the service is reloaded
+ */
+@Component
+public class UpstreamClients {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamClients.class);
+
+    private final GatewayProperties.Engine engine;
+    private final Duration drainTimeout;
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+
+    public UpstreamClients(GatewayProperties properties) {
+        this.engine = properties.getClient().getEngine();
+        Duration streamTimeout = properties.getForwarding().getStreamTimeout();
+        this.drainTimeout = streamTimeout.isZero() ? Duration.ofMinutes(5) : streamTimeout;
+    }
+
+    /*
+     * Request factory used by @Forwarder to stream requests to the service
+     */
+    public ClientHttpRequestFactory getRequestFactory(Registry.Service service) {
+        return getClient(service).requestFactory();
+    }
+
+    /*
+     * RestTemplate on top of the same pool, used for small internal calls such as @isAuthenticated
+     */
+    public RestTemplate getRestTemplate(Registry.Service service) {
+        return getClient(service).restTemplate();
+    }
+
+    private Client getClient(Registry.Service service) {
+        return clients.computeIfAbsent(service.getName(), name -> {
+            ClientHttpRequestFactory requestFactory = createRequestFactory(service);
+            log.info("Created {} client for service {}", engine, name);
+            return new Client(requestFactory, new RestTemplate(requestFactory));
+        });
+    }
+
+    private ClientHttpRequestFactory createRequestFactory(Registry.Service service) {
+        Registry.Client settings = service.getClient();
+        int instances = Math.max(1, service.getInstances().size());
+        switch (engine) {
+            case JDK:
+                HttpClient httpClient = HttpClient.newBuilder()
+                        .connectTimeout(settings.getConnectTimeout())
+                        .followRedirects(HttpClient.Redirect.NEVER)
+                        .build();
+                JdkClientHttpRequestFactory jdkFactory = new JdkClientHttpRequestFactory(httpClient);
+                jdkFactory.setReadTimeout(settings.getReadTimeout());
+                return jdkFactory;
+
+            case POOLED:
+            default:
+                /*
+                 * Pool is per service, each instance host:port is a route with its own maxConnections
+                 * Redirects, retries, cookies and decompression are left to the client of the gateway
+                 */
+                PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                        .setMaxConnTotal(settings.getMaxConnections() * instances)
+                        .setMaxConnPerRoute(settings.getMaxConnections())
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(Timeout.of(settings.getConnectTimeout()))
+                                .setSocketTimeout(Timeout.of(settings.getReadTimeout()))
+                                .build())
+                        .build();
+
+                CloseableHttpClient pooledClient = HttpClients.custom()
+                        .setConnectionManager(connectionManager)
+                        .setDefaultRequestConfig(RequestConfig.custom()
+                                .setConnectionRequestTimeout(Timeout.of(settings.getAcquireTimeout()))
+                                .setResponseTimeout(Timeout.of(settings.getReadTimeout()))
+                                .build())
+                        .evictExpiredConnections()
+                        .evictIdleConnections(TimeValue.of(settings.getIdleTimeout()))
+                        .disableAutomaticRetries()
+                        .disableRedirectHandling()
+                        .disableCookieManagement()
+                        .disableContentCompression()
+                        .build();
+                return new HttpComponentsClientHttpRequestFactory(pooledClient);
+        }
+    }
+
+    /*
+     * Clients of changed services are replaced on their next use
+     * The old ones still carry requests in flight, they are closed once a body could still be streaming
+     */
+    @EventListener
+    public void onRegistryReloaded(RegistryReloadedEvent event) {
+        for (String name : event.changed()) {
+            Client retired = clients.remove(name);
+            if (retired != null) {
+                CompletableFuture.delayedExecutor(drainTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                        .execute(() -> close(name, retired));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        clients.forEach(this::close);
+        clients.clear();
+    }
+
+    private void close(String name, Client client) {
+        try {
+            if (client.requestFactory() instanceof DisposableBean disposable) {
+                disposable.destroy();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to close client for service {}: {}", name, e.getMessage());
+        }
+    }
+
+    private record Client(ClientHttpRequestFactory requestFactory, RestTemplate restTemplate) {
+    }
+}
@@ -1,19 +1,28 @@
 package com.gateway;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpCookie;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 
 import jakarta.servlet.http.HttpServletRequest;
+import reactor.core.publisher.Mono;
 
 @Component
 public class Utils {
@@ -21,79 +30,231 @@ public class Utils {
     private static final Logger log = LoggerFactory.getLogger(Utils.class);
 
     /*
-     * @isInternalIp checks if the request is coming from the internal network or
-     * not
-     * since it is internal network, ip addresses will start with certain suffixes
+     * Cookie carrying the token of browser clients, read when there is no Authorization header
      */
-    public boolean isInternalIp(String ip) {
-        return ip.startsWith("10.")
-                || ip.startsWith("192.168.")
-                || ip.startsWith("127.")
-                || ip.equals("0:0:0:0:0:0:0:1")
-                || ip.equals("::1");
-    }
+    static final String TOKEN_COOKIE = "AuthToken";
+
+    private final TokenCache tokenCache;
+    private final Bulkhead bulkhead;
+    private final LoadBalancer loadBalancer;
+    private final JwtVerifier jwtVerifier;
 
+    public Utils(TokenCache tokenCache, Bulkhead bulkhead, LoadBalancer loadBalancer, JwtVerifier jwtVerifier) {
+        this.tokenCache = tokenCache;
+        this.bulkhead = bulkhead;
+        this.loadBalancer = loadBalancer;
+        this.jwtVerifier = jwtVerifier;
+    }
 
     /*
      * @isAuthenticated validates token provided by the user, incoming with the
      * request
      * It calls the auth service registered and validates
+     * The call goes through the pooled client of the auth service from @UpstreamClients
+     * Verdicts are cached by @TokenCache so repeated tokens skip the auth call
+     * Services with auth.mode local verify JWTs with @JwtVerifier instead, the auth service is only
+     * asked about tokens it cannot decide, and only while auth.fallback is on
      * We extract the token either from the `Header` or `Cookies`
      * 
      * 
      * If no token return false
      * 
      */
-    public boolean isAuthenticated(HttpServletRequest request, RestTemplate restTemplate, Registry registry) {
+    public boolean isAuthenticated(HttpServletRequest request, Registry.Service service, UpstreamClients clients,
+                                   Registry registry) {
         try {
-            // 1. Extract token from Authorization header
-            String token = null;
+            // 1. Extract token from Authorization header or cookies
+            String token = extractToken(request);
+
+            // 2. No token found
+            if (token == null)
+                return false;
 
-            String authHeader = request.getHeader("Authorization");
-            if (authHeader != null && authHeader.startsWith("Bearer ")) {
-                token = authHeader.substring(7);
+            // 3. Verify a signed token in process
+            Boolean local = verifyLocally(token, service);
+            if (local != null) {
+                return local;
             }
 
-            // 2. If no header token, check cookies
-            if (token == null && request.getCookies() != null) {
-                for (jakarta.servlet.http.Cookie cookie : request.getCookies()) {
-                    if ("AuthToken".equals(cookie.getName())) {
-                        token = cookie.getValue();
-                        break;
-                    }
+            // 4. Reuse a recent verdict for this token or call Auth Service once to verify it
+            return tokenCache.verify(token, () -> verifyToken(token, clients, registry));
+
+        } catch (HttpClientErrorException.NotFound e) {
+            log.error("Auth endpoint not found: {}", e.getMessage());
+            return false;
+        } catch (Exception e) {
+            log.error("Unexpected error while authenticating token: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /*
+     * Same checks without blocking, for @ReactiveService
+     * The auth service is called through the reactive client of the auth service from @ReactiveClients,
+     * callers waiting on the same token share the call through @TokenCache
+     */
+    public Mono<Boolean> isAuthenticated(ServerHttpRequest request, Registry.Service service, ReactiveClients clients,
+                                         Registry registry) {
+        return Mono.defer(() -> {
+            String token = extractToken(request);
+            if (token == null) {
+                return Mono.just(false);
+            }
+            Boolean local = verifyLocally(token, service);
+            if (local != null) {
+                return Mono.just(local);
+            }
+            return Mono.fromFuture(tokenCache.verifyAsync(token, () -> verifyTokenAsync(token, clients, registry)));
+        }).onErrorResume(e -> {
+            log.error("Unexpected error while authenticating token: {}", e.getMessage());
+            return Mono.just(false);
+        });
+    }
+
+    /*
+     * Verdict of @JwtVerifier for services with auth.mode local, null when the auth service has to decide
+     */
+    private Boolean verifyLocally(String token, Registry.Service service) {
+        Registry.Auth auth = service.getAuth();
+        if (auth.getMode() != Registry.AuthMode.LOCAL) {
+            return null;
+        }
+        JwtVerifier.Verdict verdict = jwtVerifier.verify(token, auth);
+        if (verdict != JwtVerifier.Verdict.UNKNOWN) {
+            return verdict == JwtVerifier.Verdict.VALID;
+        }
+        if (!auth.isFallback()) {
+            return false;
+        }
+        log.debug("Token of service {} not verifiable locally, asking the auth service", service.getName());
+        return null;
+    }
+
+    /*
+     * Token sent by the client, from the `Authorization: Bearer` header or else the `AuthToken` cookie
+     * null if there is none
+     */
+    public String extractToken(HttpServletRequest request) {
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            return authHeader.substring(7);
+        }
+
+        // If no header token, check cookies
+        if (request.getCookies() != null) {
+            for (jakarta.servlet.http.Cookie cookie : request.getCookies()) {
+                if (TOKEN_COOKIE.equals(cookie.getName())) {
+                    return cookie.getValue();
                 }
             }
+        }
+        return null;
+    }
 
-            // 3. No token found
-            if (token == null)
-                return false;
+    public String extractToken(ServerHttpRequest request) {
+        String authHeader = request.getHeaders().getFirst("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            return authHeader.substring(7);
+        }
+        HttpCookie cookie = request.getCookies().getFirst(TOKEN_COOKIE);
+        return cookie != null ? cookie.getValue() : null;
+    }
+
+    /*
+     * @verifyToken asks the auth service if the token is valid
+     * A rejected token returns false so the verdict can be cached
+     * Any other failure is thrown and is not cached
+     * The call takes a @Bulkhead slot of the auth service like any forwarded request
+     */
+    private boolean verifyToken(String token, UpstreamClients clients, Registry registry) {
+        Registry.Service service = getService("auth", registry);
 
-            // 4. Call Auth Service to verify token
-            Registry.Service service = getService("auth", registry);
+        String route = getSpecificRouteFromRegistry(service, "/auth/token");
 
-            String route = getSpecificRouteFromRegistry(service, "/auth/token");
+        LoadBalancer.Endpoint endpoint = loadBalancer.choose(service);
+        if (endpoint == null) {
+            throw new IllegalStateException("No available instance of the auth service");
+        }
+        String authEndpoint = createTargetUrl(endpoint, route);
 
-            String authEndpoint = createTargetUrl(service, route);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + token);
+        HttpEntity<Void> entity = new HttpEntity<>(headers);
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + token);
-            HttpEntity<Void> entity = new HttpEntity<>(headers);
+        Bulkhead.Permit permit = bulkhead.tryAcquire(service);
+        if (permit == null) {
+            throw new IllegalStateException("Auth service is at its concurrency limit");
+        }
 
-            ResponseEntity<String> response = restTemplate.exchange(authEndpoint, HttpMethod.POST, entity,
+        endpoint.acquire();
+        try {
+            ResponseEntity<String> response = clients.getRestTemplate(service).exchange(authEndpoint, HttpMethod.POST, entity,
                     String.class);
 
+            endpoint.recordSuccess(0);
             return response.getStatusCode() == HttpStatus.OK;
-
+        } catch (ResourceAccessException e) {
+            endpoint.recordFailure();
+            throw e;
+        } catch (HttpServerErrorException e) {
+            endpoint.recordResponse(e.getStatusCode().value(), 0);
+            throw e;
         } catch (HttpClientErrorException.Unauthorized e) {
             log.warn("Unauthorized: Token rejected by Auth service. {}", e.getMessage());
-            return false; 
-        } catch (HttpClientErrorException.NotFound e) {
-            log.error("Auth endpoint not found: {}", e.getMessage());
-            return false;
-        } catch (Exception e) {
-            log.error("Unexpected error while authenticating token: {}", e.getMessage(), e);
             return false;
+        } finally {
+            endpoint.release();
+            permit.release();
+        }
+    }
+
+    /*
+     * @verifyTokenAsync is @verifyToken on the reactive client, with the same outcomes
+     * 200 is valid, 401 and other 2xx are rejected and cached, 5xx, other 4xx and connection errors fail the future
+     * A full @Bulkhead of the auth service fails right away instead of waiting for a slot
+     */
+    private CompletableFuture<Boolean> verifyTokenAsync(String token, ReactiveClients clients, Registry registry) {
+        Registry.Service service = getService("auth", registry);
+
+        String route = getSpecificRouteFromRegistry(service, "/auth/token");
+
+        LoadBalancer.Endpoint endpoint = loadBalancer.choose(service);
+        if (endpoint == null) {
+            throw new IllegalStateException("No available instance of the auth service");
         }
+        String authEndpoint = createTargetUrl(endpoint, route);
+
+        Bulkhead.Permit permit = bulkhead.tryAcquireNow(service);
+        if (permit == null) {
+            throw new IllegalStateException("Auth service is at its concurrency limit");
+        }
+
+        endpoint.acquire();
+        return clients.getWebClient(service).post()
+                .uri(authEndpoint)
+                .header("Authorization", "Bearer " + token)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                .map((HttpStatusCode status) -> {
+                    if (status.is5xxServerError()) {
+                        endpoint.recordResponse(status.value(), 0);
+                        throw new IllegalStateException("Auth service answered " + status.value());
+                    }
+                    if (status.value() == HttpStatus.UNAUTHORIZED.value()) {
+                        log.warn("Unauthorized: Token rejected by Auth service.");
+                        return false;
+                    }
+                    if (status.is4xxClientError()) {
+                        throw new IllegalStateException("Auth endpoint answered " + status.value());
+                    }
+                    endpoint.recordSuccess(0);
+                    return status.value() == HttpStatus.OK.value();
+                })
+                .doOnError(WebClientRequestException.class, e -> endpoint.recordFailure())
+                .doFinally(signal -> {
+                    endpoint.release();
+                    permit.release();
+                })
+                .toFuture();
     }
 
     /*
@@ -123,14 +284,14 @@ public class Utils {
 
     /*
      * Helper method to find service info from in-memory YAML config
-     * Find service by name and registry
+     * Find service by name in the compiled @RouteTable of the registry
      */
     public Registry.Service getService(String serviceName, Registry registry) {
-        return registry.getList()
-                .stream()
-                .filter(s -> s.getName().equals(serviceName))
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Service Unavailable: " + serviceName));
+        Registry.Service service = registry.getRouteTable().findService(serviceName);
+        if (service == null) {
+            throw new IllegalStateException("Service Unavailable: " + serviceName);
+        }
+        return service;
     }
 
         /*
@@ -158,11 +319,55 @@ public class Utils {
     }
 
     /*
-     * Build target url from the existing request, e.g.,
+     * Hop-by-hop headers only describe the connection they arrived on
+     * They must not be copied from the client to the upstream or back
+     * Host is dropped so the upstream receives its own host:port
+     */
+    private static final Set<String> HOP_BY_HOP_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization",
+            "te", "trailer", "transfer-encoding", "upgrade", "host");
+
+    /*
+     * Copy all the headers coming with the request into the upstream request headers
+     */
+    public void copyRequestHeaders(HttpServletRequest request, HttpHeaders target) {
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                target.addAll(name, Collections.list(request.getHeaders(name)));
+            }
+        }
+    }
+
+    /*
+     * Same for the headers of a reactive request
+     */
+    public void copyRequestHeaders(HttpHeaders source, HttpHeaders target) {
+        source.forEach((name, values) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                target.addAll(name, values);
+            }
+        });
+    }
+
+    /*
+     * Copy the upstream response headers that should be returned to the client
+     */
+    public HttpHeaders copyResponseHeaders(HttpHeaders source) {
+        HttpHeaders headers = new HttpHeaders();
+        source.forEach((name, values) -> {
+            if (!HOP_BY_HOP_HEADERS.contains(name.toLowerCase())) {
+                headers.addAll(name, values);
+            }
+        });
+        return headers;
+    }
+
+    /*
+     * Build target url from the existing request and the instance picked by @LoadBalancer, e.g.,
      * http://localhost:8080/institutes/abc
      */
-    public String createTargetUrl(Registry.Service service, String url) {
-        return "http://" + service.getHost() + ":" + service.getPort() + url;
+    public String createTargetUrl(LoadBalancer.Endpoint endpoint, String url) {
+        return "http://" + endpoint.getHost() + ":" + endpoint.getPort() + url;
     }
 
 }
@@ -16,41 +16,31 @@ public class Validator {
     }
 
     /**
-     * Returns the Exposure of the matched route.
-     * If no specific route matches, returns the service's defaultExposure.
+     * Matches the request against the routes of the service, method included.
+     * The returned match carries the route, its path params and the Exposure of the route.
+     * If no specific route matches, the exposure is the service's defaultExposure.
      */
-    public Registry.Exposure checkExposure(String serviceName, String requestPath) {
+    public RouteMatch checkExposure(String serviceName, String method, String requestPath) {
         /*
-         * First find the required service for which we are checking the exposure
-         */
-        Registry.Service service = registry.getList()
-                .stream()
-                .filter(s -> s.getName().equals(serviceName))
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Service not found: " + serviceName));
-
-        /*
-         * After fetching the service
-         * Find the exposure of the incoming request
-         * Return the exposure
+         * Find the service and the route for method + path in one pass over the compiled route trie
+         * Return the match, its exposure is one of
          * ENUM -> PUBLIC, PRIVATE, PROTECTED
          */
-        Registry.Exposure exposure = service.getRoutes()
-                .stream()
-                .filter(route -> PatternMatcher(route.getPath(), requestPath))
-                .findFirst()
-                .map(Registry.Route::getExposure)
-                .orElse(service.getDefaultExposure());
+        RouteMatch match = registry.getRouteTable().match(serviceName, method, requestPath);
+        if (match == null) {
+            throw new IllegalStateException("Service not found: " + serviceName);
+        }
 
-        log.info("Exposure for service '{}' and route '{}': {}", serviceName, requestPath, exposure);
+        log.debug("Exposure for service '{}' and route '{} {}': {}", serviceName, method, match.getTemplate(), match.getExposure());
 
-        return exposure;
+        return match;
     }
 
     /*
      * PatterMatcher ensures that defined routes and requested route is same
      * This is required due to route being dynamic with variables such as /:id
      * This ensures that patterns are matched correctly
+     * Request handling uses the compiled @RouteTable, this is the reference segment comparison it follows
     */
     public Boolean PatternMatcher(String routePath, String requestPath){
         String[] routeParts = routePath.split("/");
@@ -0,0 +1,31 @@
+package com.gateway;
+
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/*
+ * Streamed response bodies from @Forwarder are copied to the client outside the request thread
+ * Each copy blocks on the upstream socket, so it runs on its own virtual thread
+ * instead of the small default task pool, with or without spring.threads.virtual.enabled
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class WebConfig implements WebMvcConfigurer {
+
+    private final GatewayProperties.Forwarding properties;
+
+    public WebConfig(GatewayProperties properties) {
+        this.properties = properties.getForwarding();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor()));
+        configurer.setDefaultTimeout(properties.getStreamTimeout().toMillis());
+    }
+}
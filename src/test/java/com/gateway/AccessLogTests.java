@@ -0,0 +1,132 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class AccessLogTests {
+
+	@TempDir
+	Path dir;
+
+	private AccessLog accessLog(Path file, int bufferSize) throws IOException {
+		GatewayProperties properties = new GatewayProperties();
+		properties.getAccessLog().setFile(file.toString());
+		properties.getAccessLog().setBufferSize(bufferSize);
+		return new AccessLog(properties, new TrustedNetworks(properties));
+	}
+
+	private static RequestStats stats() {
+		Registry.Route route = new Registry.Route();
+		route.setPath("/api/institutes/:id");
+		route.setMethod("GET");
+		route.setExposure(Registry.Exposure.PUBLIC);
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		service.getRoutes().add(route);
+		RequestStats stats = new RequestStats();
+		stats.setMatch(RouteTable.compile(List.of(service)).match("academic", "GET", "/api/institutes/42"));
+		stats.addUpstreamNanos(2_000_000);
+		return stats;
+	}
+
+	@Test
+	void ringBufferKeepsOrderAndReportsFull() {
+		RingBuffer<Integer> buffer = new RingBuffer<>(3);
+		assertEquals(4, buffer.capacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+		assertEquals(0, buffer.poll());
+		assertTrue(buffer.offer(4));
+		List<Integer> drained = new ArrayList<>();
+		for (Integer item; (item = buffer.poll()) != null; ) {
+			drained.add(item);
+		}
+		assertEquals(List.of(1, 2, 3, 4), drained);
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	void writesOneJsonLinePerRequestAfterTheBody() throws Exception {
+		Path file = dir.resolve("access.log");
+		AccessLog accessLog = accessLog(file, 64);
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/academic/api/institutes/42");
+		request.setRemoteAddr("203.0.113.7");
+		byte[] body = "institute \"42\"".getBytes(StandardCharsets.UTF_8);
+
+		ResponseEntity<?> response = accessLog.wrap(stats(), request, 200,
+				ResponseEntity.ok().body((StreamingResponseBody) out -> out.write(body)));
+		((StreamingResponseBody) response.getBody()).writeTo(new ByteArrayOutputStream());
+		accessLog.wrap(new RequestStats(), request, 503, ResponseEntity.status(503).body("Service académique occupé"));
+		accessLog.stop();
+
+		List<String> lines = Files.readAllLines(file);
+		assertEquals(2, lines.size());
+		JsonNode first = new ObjectMapper().readTree(lines.get(0));
+		assertEquals("academic", first.get("service").asText());
+		assertEquals("/api/institutes/:id", first.get("route").asText());
+		assertEquals("GET", first.get("method").asText());
+		assertEquals(200, first.get("status").asInt());
+		assertEquals(body.length, first.get("bytes").asLong());
+		assertEquals(2000, first.get("upstream_us").asLong());
+		assertTrue(first.get("duration_us").asLong() >= 0);
+		assertEquals("203.0.113.7", first.get("client_ip").asText());
+
+		JsonNode second = new ObjectMapper().readTree(lines.get(1));
+		assertTrue(second.get("route").isNull());
+		assertEquals(503, second.get("status").asInt());
+		assertEquals("Service académique occupé".getBytes(StandardCharsets.UTF_8).length, second.get("bytes").asLong());
+	}
+
+	@Test
+	void blockingOverflowDropsOnceTheWriterDied() throws Exception {
+		Path full = Path.of("/dev/full");
+		assumeTrue(Files.isWritable(full), "needs /dev/full to fail the writer");
+		GatewayProperties properties = new GatewayProperties();
+		properties.getAccessLog().setFile(full.toString());
+		properties.getAccessLog().setBufferSize(4);
+		properties.getAccessLog().setOverflow(GatewayProperties.AccessLogOverflow.BLOCK);
+		AccessLog accessLog = new AccessLog(properties, new TrustedNetworks(properties));
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/academic/api/institutes/42");
+
+		assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+			for (int i = 0; i < 100; i++) {
+				accessLog.wrap(stats(), request, 200, ResponseEntity.ok("institute"));
+			}
+		});
+		assertTrue(accessLog.getDropped() > 0);
+		accessLog.stop();
+	}
+
+	@Test
+	void escapesValues() {
+		StringBuilder line = new StringBuilder();
+		AccessLog.format(new AccessLog.Entry(0, "a\"b", null, "GET", 200, 0, 1, 0, 0, "\n"), line);
+
+		assertTrue(line.toString().startsWith("{\"time\":\"1970-01-01T00:00:00Z\",\"service\":\"a\\\"b\",\"route\":null,"));
+		assertTrue(line.toString().endsWith("\"client_ip\":\"\\n\"}\n"));
+	}
+}
@@ -0,0 +1,234 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BatchesTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final GatewayProperties properties = new GatewayProperties();
+	private final Batches batches = new Batches(properties);
+
+	@AfterEach
+	void stop() {
+		batches.stop();
+	}
+
+	private static byte[] json(String json) {
+		return json.replace('\'', '"').getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static MockHttpServletRequest batchRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/_gateway/batch");
+		request.setRemoteAddr("203.0.113.7");
+		request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer batch-token");
+		return request;
+	}
+
+	private List<JsonNode> run(String body, Batches.Handler handler) throws Exception {
+		StreamingResponseBody response = batches.run(batchRequest(), batches.parse(json(body)), handler);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.writeTo(out);
+		List<JsonNode> lines = new ArrayList<>();
+		for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+			lines.add(MAPPER.readTree(line));
+		}
+		return lines;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			throw new UncheckedIOException(new InterruptedIOException("cancelled"));
+		}
+	}
+
+	@Test
+	void invalidBatchesAreRejected() {
+		properties.getBatch().setMaxRequests(2);
+
+		assertThrows(IllegalArgumentException.class, () -> batches.parse(null));
+		assertThrows(IllegalArgumentException.class, () -> batches.parse(json("{'requests': []}")));
+		assertThrows(IllegalArgumentException.class, () -> batches.parse(json("{'requests': [{'path': '/a'}, {'path': '/b'}, {'path': '/c'}]}")));
+		IllegalArgumentException invalid = assertThrows(IllegalArgumentException.class,
+				() -> batches.parse(json("{'requests': [{'method': 'FETCH', 'path': '/a'}, {'method': 'GET'}]}")));
+		assertTrue(invalid.getMessage().contains("requests[0].method FETCH"));
+		assertTrue(invalid.getMessage().contains("requests[1].path"));
+	}
+
+	@Test
+	void batchBodyIsCappedByMaxBodySize() throws IOException {
+		properties.getForwarding().setMaxBodySize(DataSize.ofBytes(32));
+		Batches capped = new Batches(properties);
+		try {
+			MockHttpServletRequest small = batchRequest();
+			small.setContent(json("{'requests': [{'path': '/a'}]}"));
+			assertEquals(1, capped.parse(capped.readBody(small)).size());
+
+			MockHttpServletRequest large = batchRequest();
+			large.setContent(json("{'requests': [{'path': '/a'}, {'path': '/b'}]}"));
+			assertThrows(Forwarder.PayloadTooLargeException.class, () -> capped.readBody(large));
+
+			HttpServletRequestWrapper chunked = new HttpServletRequestWrapper(large) {
+				@Override
+				public long getContentLengthLong() {
+					return -1;
+				}
+			};
+			assertThrows(Forwarder.PayloadTooLargeException.class, () -> capped.readBody(chunked));
+		} finally {
+			capped.stop();
+		}
+	}
+
+	@Test
+	void partsAreAnsweredInTheOrderTheyFinish() throws Exception {
+		List<JsonNode> lines = run("{'requests': [{'id': 'slow', 'path': '/academic/slow'}, {'id': 'fast', 'path': '/academic/fast'}]}",
+				request -> {
+					if (request.getRequestURI().endsWith("slow")) {
+						sleep(200);
+					}
+					return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body("{\"path\":\"" + request.getRequestURI() + "\"}");
+				});
+
+		assertEquals(2, lines.size());
+		assertEquals("fast", lines.get(0).get("id").asText());
+		assertEquals(1, lines.get(0).get("index").asInt());
+		assertEquals(200, lines.get(0).get("status").asInt());
+		assertEquals("{\"path\":\"/academic/fast\"}", lines.get(0).get("body").asText());
+		assertEquals("slow", lines.get(1).get("id").asText());
+	}
+
+	@Test
+	void partsCarryTheIdentityOfTheBatch() throws Exception {
+		List<JsonNode> lines = run("{'requests': [{'method': 'post', 'path': '/academic/students?page=2', 'body': {'name': 'x'},"
+				+ " 'headers': {'Authorization': 'Bearer other', 'X-Forwarded-For': '10.0.0.1', 'X-Trace': ['a', 'b']}}]}",
+				request -> {
+					String body;
+					try {
+						body = StreamUtils.copyToString(request.getInputStream(), StandardCharsets.UTF_8);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return ResponseEntity.ok().body(request.getMethod() + " " + request.getRequestURI() + " " + request.getQueryString()
+							+ " " + request.getHeader(HttpHeaders.AUTHORIZATION) + " " + request.getHeader("X-Forwarded-For")
+							+ " " + request.getRemoteAddr() + " " + String.join(",", Collections.list(request.getHeaders("X-Trace")))
+							+ " " + request.getContentType() + " " + body);
+				});
+
+		assertEquals("POST /academic/students page=2 Bearer batch-token null 203.0.113.7 a,b application/json {\"name\":\"x\"}",
+				lines.get(0).get("body").asText());
+	}
+
+	@Test
+	void concurrencyIsCappedPerBatch() throws Exception {
+		properties.getBatch().setMaxConcurrency(2);
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+
+		List<JsonNode> lines = run("{'requests': [{'path': '/a'}, {'path': '/b'}, {'path': '/c'}, {'path': '/d'}, {'path': '/e'}]}",
+				request -> {
+					peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+					sleep(30);
+					inFlight.decrementAndGet();
+					return ResponseEntity.noContent().build();
+				});
+
+		assertEquals(5, lines.size());
+		assertEquals(2, peak.get());
+		assertFalse(lines.get(0).has("body"));
+	}
+
+	@Test
+	void partsStillRunningAtTheTimeoutAreCancelled() throws Exception {
+		properties.getBatch().setTimeout(Duration.ofMillis(100));
+		properties.getBatch().setMaxConcurrency(1);
+		CountDownLatch cancelled = new CountDownLatch(1);
+
+		List<JsonNode> lines = run("{'requests': [{'id': 'quick', 'path': '/a'}, {'id': 'stuck', 'path': '/b'}, {'id': 'queued', 'path': '/c'}]}",
+				request -> {
+					if (request.getRequestURI().equals("/b")) {
+						try {
+							Thread.sleep(10_000);
+						} catch (InterruptedException e) {
+							cancelled.countDown();
+						}
+					}
+					return ResponseEntity.ok("done");
+				});
+
+		assertEquals(List.of(200, 504, 504), lines.stream().map(line -> line.get("status").asInt()).toList());
+		assertEquals(List.of("quick", "stuck", "queued"), lines.stream().map(line -> line.get("id").asText()).toList());
+		assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void largeAndBinaryAnswers() throws Exception {
+		properties.getBatch().setMaxPartSize(DataSize.ofBytes(4));
+
+		List<JsonNode> lines = run("{'requests': [{'id': 'large', 'path': '/a'}, {'id': 'binary', 'path': '/b'}]}",
+				request -> {
+					byte[] bytes = request.getRequestURI().equals("/a") ? new byte[] {1, 2, 3, 4, 5} : new byte[] {1, 2, 3};
+					return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM)
+							.body((StreamingResponseBody) out -> out.write(bytes));
+				});
+
+		JsonNode large = lines.get(0).get("id").asText().equals("large") ? lines.get(0) : lines.get(1);
+		JsonNode binary = large == lines.get(0) ? lines.get(1) : lines.get(0);
+		assertEquals(502, large.get("status").asInt());
+		assertEquals("AQID", binary.get("bodyBase64").asText());
+		assertNull(binary.get("body"));
+	}
+
+	@Test
+	void remoteVerdictsAreSharedAcrossTheBatch() throws Exception {
+		Batches.Verdicts verdicts = new Batches.Verdicts();
+		Registry.Service academic = new Registry.Service();
+		academic.setName("academic");
+		Registry.Service library = new Registry.Service();
+		library.setName("library");
+		Registry.Service local = new Registry.Service();
+		local.setName("local");
+		local.getAuth().setMode(Registry.AuthMode.LOCAL);
+		AtomicInteger checks = new AtomicInteger();
+
+		assertTrue(verdicts.verify(academic, () -> checks.incrementAndGet() > 0));
+		assertTrue(verdicts.verify(library, () -> checks.incrementAndGet() > 0));
+		assertFalse(verdicts.verify(local, () -> checks.incrementAndGet() < 0));
+		assertFalse(verdicts.verify(local, () -> checks.incrementAndGet() > 0));
+		assertEquals(2, checks.get());
+	}
+}
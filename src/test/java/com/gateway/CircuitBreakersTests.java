@@ -0,0 +1,60 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakersTests {
+
+	private static CircuitBreakers.Breaker breaker() {
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		Registry.CircuitBreaker settings = service.getCircuitBreaker();
+		settings.setWindowSize(10);
+		settings.setMinimumCalls(4);
+		settings.setFailureRateThreshold(50);
+		settings.setOpenDuration(Duration.ofMillis(20));
+		settings.setHalfOpenCalls(2);
+		return new CircuitBreakers().get(service);
+	}
+
+	@Test
+	void opensOnFailureRateAndRecoversThroughHalfOpen() throws InterruptedException {
+		CircuitBreakers.Breaker breaker = breaker();
+
+		breaker.record(false, 0);
+		breaker.record(false, 0);
+		breaker.record(true, 0);
+		assertEquals(CircuitBreakers.State.CLOSED, breaker.getState());
+		breaker.record(true, 0);
+		assertEquals(CircuitBreakers.State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquire());
+
+		Thread.sleep(40);
+		assertTrue(breaker.tryAcquire());
+		assertTrue(breaker.tryAcquire());
+		assertFalse(breaker.tryAcquire());
+		assertEquals(CircuitBreakers.State.HALF_OPEN, breaker.getState());
+
+		breaker.record(false, 0);
+		breaker.record(false, 0);
+		assertEquals(CircuitBreakers.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	void failedTrialCallOpensAgain() throws InterruptedException {
+		CircuitBreakers.Breaker breaker = breaker();
+		for (int i = 0; i < 4; i++) {
+			breaker.record(true, 0);
+		}
+		Thread.sleep(40);
+
+		assertTrue(breaker.tryAcquire());
+		breaker.record(true, 0);
+		assertEquals(CircuitBreakers.State.OPEN, breaker.getState());
+	}
+}
@@ -0,0 +1,147 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyLimitsTests {
+
+	private final ConcurrencyLimits limits = new ConcurrencyLimits();
+
+	private static Registry.Service service(Registry.LimitAlgorithm algorithm) {
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		Registry.ConcurrencyLimit settings = service.getConcurrencyLimit();
+		settings.setEnabled(true);
+		settings.setAlgorithm(algorithm);
+		settings.setInitialLimit(10);
+		settings.setMinLimit(2);
+		settings.setMaxLimit(100);
+		settings.setWindowSize(10);
+		return service;
+	}
+
+	/*
+	 * One window of answers after latencyMillis, sent with as many requests in flight as the limit allows
+	 */
+	private void window(Registry.Service service, long latencyMillis, boolean drop) {
+		int size = service.getConcurrencyLimit().getWindowSize();
+		for (int samples = 0; samples < size; ) {
+			List<ConcurrencyLimits.Permit> held = new ArrayList<>();
+			ConcurrencyLimits.Permit permit;
+			while (held.size() < size - samples
+					&& (permit = limits.tryAcquire(service, Registry.Exposure.PRIVATE)) != null) {
+				held.add(permit);
+			}
+			for (ConcurrencyLimits.Permit taken : held) {
+				taken.sample(TimeUnit.MILLISECONDS.toNanos(latencyMillis), drop);
+				taken.release();
+			}
+			samples += held.size();
+		}
+	}
+
+	private static int take(ConcurrencyLimits limits, Registry.Service service, Registry.Exposure exposure) {
+		int taken = 0;
+		while (limits.tryAcquire(service, exposure) != null) {
+			taken++;
+		}
+		return taken;
+	}
+
+	@Test
+	void disabledServiceIsNotLimited() {
+		Registry.Service service = service(Registry.LimitAlgorithm.GRADIENT);
+		service.getConcurrencyLimit().setEnabled(false);
+
+		for (int i = 0; i < 1000; i++) {
+			assertNotNull(limits.tryAcquire(service, Registry.Exposure.PUBLIC));
+		}
+		assertNull(limits.get(service));
+	}
+
+	@Test
+	void requestsOverTheLimitAreShed() {
+		Registry.Service service = service(Registry.LimitAlgorithm.GRADIENT);
+		List<ConcurrencyLimits.Permit> permits = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			permits.add(limits.tryAcquire(service, Registry.Exposure.PRIVATE));
+		}
+
+		assertNull(limits.tryAcquire(service, Registry.Exposure.PRIVATE));
+		assertEquals(1, limits.get(service).getShed(Registry.Exposure.PRIVATE));
+
+		permits.get(0).release();
+		permits.get(0).release();
+		assertNotNull(limits.tryAcquire(service, Registry.Exposure.PRIVATE));
+		assertNull(limits.tryAcquire(service, Registry.Exposure.PRIVATE));
+	}
+
+	@Test
+	void lowerPriorityExposuresAreShedFirst() {
+		Registry.Service service = service(Registry.LimitAlgorithm.GRADIENT);
+
+		assertEquals(8, take(limits, service, Registry.Exposure.PUBLIC));
+		assertEquals(1, take(limits, service, Registry.Exposure.PROTECTED));
+		assertEquals(1, take(limits, service, Registry.Exposure.PRIVATE));
+		assertEquals(10, limits.get(service).getInFlight());
+		assertEquals(1, limits.get(service).getShed(Registry.Exposure.PUBLIC));
+	}
+
+	@Test
+	void gradientShrinksWhenLatencyRises() {
+		Registry.Service service = service(Registry.LimitAlgorithm.GRADIENT);
+		for (int i = 0; i < 3; i++) {
+			window(service, 10, false);
+		}
+		int healthy = limits.get(service).getLimit();
+
+		for (int i = 0; i < 10; i++) {
+			window(service, 40, false);
+		}
+		assertTrue(limits.get(service).getLimit() < healthy,
+				"limit " + limits.get(service).getLimit() + " vs " + healthy);
+	}
+
+	@Test
+	void gradientOnlyGrowsWhileTheLimitIsUsed() {
+		Registry.Service service = service(Registry.LimitAlgorithm.GRADIENT);
+		for (int i = 0; i < 40; i++) {
+			window(service, 5, false);
+		}
+
+		// at most 10 requests are in flight at once, the limit stops about twice above that
+		int limit = limits.get(service).getLimit();
+		assertTrue(limit > 15 && limit <= 21, "limit " + limit);
+	}
+
+	@Test
+	void aimdGrowsByOneAndBacksOff() {
+		Registry.Service service = service(Registry.LimitAlgorithm.AIMD);
+
+		window(service, 10, false);
+		assertEquals(11, limits.get(service).getLimit());
+		window(service, 10, true);
+		assertEquals(9, limits.get(service).getLimit());
+		window(service, 50, false);
+		assertEquals(8, limits.get(service).getLimit());
+	}
+
+	@Test
+	void dropsStopAtTheMinimumLimit() {
+		Registry.Service service = service(Registry.LimitAlgorithm.GRADIENT);
+		for (int i = 0; i < 50; i++) {
+			window(service, 10, true);
+		}
+
+		assertEquals(2, limits.get(service).getLimit());
+		assertEquals(0, limits.get(service).getInFlight());
+	}
+}
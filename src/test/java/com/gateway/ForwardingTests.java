@@ -0,0 +1,158 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * The servlet engine end to end, a running gateway in front of a stub upstream
+ * Answers are read whole so a body that is not streamed through fails here
+ */
+class ForwardingTests {
+
+	private HttpServer upstream;
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+	private ConfigurableApplicationContext gateway;
+	private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+	@BeforeEach
+	void start() throws IOException {
+		upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 16);
+		upstream.createContext("/", exchange -> {
+			upstreamCalls.incrementAndGet();
+			String path = exchange.getRequestURI().getPath();
+			byte[] body = (path.startsWith("/big") ? "hello ".repeat(1000) : "hello " + path).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "text/plain");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		upstream.start();
+
+		gateway = new SpringApplicationBuilder(GatewayApplication.class)
+				.properties(
+						"server.port=0",
+						"services.list[0].name=stub",
+						"services.list[0].host=localhost",
+						"services.list[0].port=" + upstream.getAddress().getPort(),
+						"services.list[0].default-exposure=public",
+						"services.list[0].client.max-concurrent-requests=2",
+						"services.list[0].routes[0].path=/cached/:id",
+						"services.list[0].routes[0].method=GET",
+						"services.list[0].routes[0].exposure=public",
+						"services.list[0].routes[0].cache.enabled=true",
+						"services.list[0].routes[0].cache.default-ttl=60s",
+						"services.list[0].routes[1].path=/big",
+						"services.list[0].routes[1].method=GET",
+						"services.list[0].routes[1].exposure=public",
+						"services.list[0].routes[1].compression.enabled=true")
+				.run();
+	}
+
+	@AfterEach
+	void stop() {
+		gateway.close();
+		upstream.stop(0);
+	}
+
+	private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+		int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+		return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build(),
+				HttpResponse.BodyHandlers.ofString());
+	}
+
+	@Test
+	void streamsTheUpstreamBody() throws Exception {
+		HttpResponse<String> response = get("/stub/hello");
+
+		assertEquals(200, response.statusCode());
+		assertEquals("hello /hello", response.body());
+		assertEquals("text/plain", response.headers().firstValue("Content-Type").orElse(null));
+	}
+
+	@Test
+	void releasesTheSlotsOfEveryAnswer() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			HttpResponse<String> response = get("/stub/item/" + i);
+			assertEquals(200, response.statusCode(), "request " + i);
+			assertEquals("hello /item/" + i, response.body());
+		}
+	}
+
+	@Test
+	void answersOfTheGatewayItselfKeepTheirText() throws Exception {
+		HttpResponse<String> response = get("/unknown/hello");
+
+		assertEquals(500, response.statusCode());
+		assertEquals("Service not found: unknown", response.body());
+		assertEquals("text/plain;charset=UTF-8", response.headers().firstValue("Content-Type").orElse(null));
+	}
+
+	@Test
+	void cachedAnswersAreServedWithTheirBody() throws Exception {
+		assertEquals("hello /cached/1", get("/stub/cached/1").body());
+		assertEquals("hello /cached/1", get("/stub/cached/1").body());
+		assertEquals(1, upstreamCalls.get());
+	}
+
+	@Test
+	void compressedAnswersDecodeToTheUpstreamBody() throws Exception {
+		int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+		HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/stub/big"))
+				.header("Accept-Encoding", "gzip").GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+
+		assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+			assertArrayEquals("hello ".repeat(1000).getBytes(StandardCharsets.UTF_8), in.readAllBytes());
+		}
+	}
+
+	@Test
+	void batchesAnswerEveryPartAsJsonLines() throws Exception {
+		int port = ((WebServerApplicationContext) gateway).getWebServer().getPort();
+		String batch = "{\"requests\": [{\"id\": \"a\", \"path\": \"/stub/a\"}, {\"id\": \"b\", \"path\": \"/stub/b\"}]}";
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/_gateway/batch"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(batch)).build(), HttpResponse.BodyHandlers.ofString());
+
+		assertEquals(200, response.statusCode());
+		assertEquals("application/x-ndjson", response.headers().firstValue("Content-Type").orElse(null));
+		Map<String, String> bodies = new HashMap<>();
+		for (String line : response.body().split("\n")) {
+			JsonNode part = new ObjectMapper().readTree(line);
+			assertEquals(200, part.get("status").asInt());
+			bodies.put(part.get("id").asText(), part.get("body").asText());
+		}
+		assertEquals(Map.of("a", "hello /a", "b", "hello /b"), bodies);
+
+		HttpResponse<String> invalid = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/_gateway/batch"))
+				.POST(HttpRequest.BodyPublishers.ofString("{}")).build(), HttpResponse.BodyHandlers.ofString());
+		assertEquals(400, invalid.statusCode());
+		assertEquals("Batch needs a non empty requests array", invalid.body());
+	}
+}
@@ -0,0 +1,212 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+class HedgingTests {
+
+	private final Hedging hedging = new Hedging();
+	private final List<String> discarded = new CopyOnWriteArrayList<>();
+
+	@AfterEach
+	void stop() {
+		hedging.stop();
+	}
+
+	private static Registry.Route route(Duration delay) {
+		Registry.Route route = new Registry.Route();
+		route.setPath("/api/institutes");
+		route.setMethod("GET");
+		route.setExposure(Registry.Exposure.PUBLIC);
+		route.getHedge().setEnabled(true);
+		route.getHedge().setDelay(delay);
+		return route;
+	}
+
+	/*
+	 * First call is slow until interrupted, later calls answer right away
+	 */
+	private static Hedging.Attempt<String> slowThenFast(AtomicInteger calls, CountDownLatch cancelled) {
+		return () -> {
+			if (calls.incrementAndGet() == 1) {
+				try {
+					Thread.sleep(10_000);
+					return "slow";
+				} catch (InterruptedException e) {
+					cancelled.countDown();
+					throw new InterruptedIOException("cancelled");
+				}
+			}
+			return "fast";
+		};
+	}
+
+	@Test
+	void onlyIdempotentRequestsWithoutBodyAreHedged() {
+		Registry.Route route = route(Duration.ofMillis(10));
+		MockHttpServletRequest get = new MockHttpServletRequest("GET", "/academic/api/institutes");
+		MockHttpServletRequest withBody = new MockHttpServletRequest("GET", "/academic/api/institutes");
+		withBody.setContent(new byte[] {1});
+
+		assertTrue(hedging.isHedged(route, HttpMethod.GET, get));
+		assertTrue(hedging.isHedged(route, HttpMethod.HEAD, get));
+		assertFalse(hedging.isHedged(route, HttpMethod.POST, get));
+		assertFalse(hedging.isHedged(route, HttpMethod.GET, withBody));
+		route.getHedge().setEnabled(false);
+		assertFalse(hedging.isHedged(route, HttpMethod.GET, get));
+	}
+
+	@Test
+	void slowFirstAttemptLosesToTheHedge() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch cancelled = new CountDownLatch(1);
+
+		String result = hedging.race(route(Duration.ofMillis(20)), slowThenFast(calls, cancelled),
+				value -> true, discarded::add);
+
+		assertEquals("fast", result);
+		assertEquals(2, calls.get());
+		assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+		assertEquals(1, hedging.getIssued());
+		assertEquals(1, hedging.getWon());
+	}
+
+	@Test
+	void fastFirstAttemptIsNotHedged() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+
+		String result = hedging.race(route(Duration.ofSeconds(5)), () -> "call-" + calls.incrementAndGet(),
+				value -> true, discarded::add);
+
+		assertEquals("call-1", result);
+		assertEquals(1, calls.get());
+		assertEquals(0, hedging.getIssued());
+	}
+
+	@Test
+	void rejectedHedgeDoesNotWin() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+
+		String result = hedging.race(route(Duration.ofMillis(20)), () -> {
+			if (calls.incrementAndGet() == 1) {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				return "upstream";
+			}
+			return "rejected";
+		}, value -> !value.equals("rejected"), discarded::add);
+
+		assertEquals("upstream", result);
+		assertEquals(List.of("rejected"), discarded);
+		assertEquals(1, hedging.getIssued());
+		assertEquals(0, hedging.getWon());
+	}
+
+	@Test
+	void failureIsReportedOnlyWhenBothAttemptsFail() {
+		AtomicInteger calls = new AtomicInteger();
+
+		IOException failure = assertThrows(IOException.class, () -> hedging.<String>race(route(Duration.ofMillis(20)), () -> {
+			int call = calls.incrementAndGet();
+			try {
+				Thread.sleep(call == 1 ? 100 : 0);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			throw new ConnectException("attempt " + call);
+		}, value -> true, discarded::add));
+
+		assertEquals("attempt 1", failure.getMessage());
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	void emptyBudgetWaitsForTheFirstAttempt() throws Exception {
+		Registry.Route route = route(Duration.ofMillis(5));
+		route.getHedge().setBudgetPercent(0);
+		route.getHedge().setMinHedgesPerSecond(0);
+		AtomicInteger calls = new AtomicInteger();
+
+		String result = hedging.race(route, () -> {
+			calls.incrementAndGet();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			return "done";
+		}, value -> true, discarded::add);
+
+		assertEquals("done", result);
+		assertEquals(1, calls.get());
+		assertEquals(0, hedging.getIssued());
+	}
+
+	@Test
+	void percentileDelayWaitsForEnoughSamples() throws Exception {
+		Registry.Route route = route(null);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch cancelled = new CountDownLatch(1);
+
+		assertEquals("slow", hedging.race(route, () -> calls.incrementAndGet() == 1 ? "slow" : "fast",
+				value -> true, discarded::add));
+		assertEquals(0, hedging.getIssued());
+
+		Hedging warm = new Hedging();
+		try {
+			for (int i = 0; i < 200; i++) {
+				warm.record(route, TimeUnit.MILLISECONDS.toNanos(2));
+			}
+			calls.set(0);
+			assertEquals("fast", warm.race(route, slowThenFast(calls, cancelled), value -> true, discarded::add));
+			assertEquals(1, warm.getWon());
+		} finally {
+			warm.stop();
+		}
+	}
+
+	@Test
+	void percentileDelayForgetsOldLatencies() throws Exception {
+		Registry.Route route = route(null);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch cancelled = new CountDownLatch(1);
+
+		Hedging windowed = new Hedging(TimeUnit.MILLISECONDS.toNanos(50));
+		try {
+			for (int i = 0; i < 200; i++) {
+				windowed.record(route, TimeUnit.SECONDS.toNanos(8));
+			}
+			Thread.sleep(120);
+			for (int i = 0; i < 200; i++) {
+				windowed.record(route, TimeUnit.MILLISECONDS.toNanos(2));
+			}
+
+			long start = System.nanoTime();
+			assertEquals("fast", windowed.race(route, slowThenFast(calls, cancelled), value -> true, discarded::add));
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+			assertEquals(1, windowed.getWon());
+		} finally {
+			windowed.stop();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JwtVerifierTests {
+
+	private static final Base64.Encoder BASE64 = Base64.getUrlEncoder().withoutPadding();
+
+	@TempDir
+	Path dir;
+
+	private final JwtVerifier verifier = new JwtVerifier(new Registry(), new GatewayProperties());
+	private final Registry.Auth auth = new Registry.Auth();
+	private KeyPair rsa;
+	private KeyPair ec;
+
+	@BeforeEach
+	void keys() throws Exception {
+		KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+		rsaGenerator.initialize(2048);
+		rsa = rsaGenerator.generateKeyPair();
+		KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+		ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+		ec = ecGenerator.generateKeyPair();
+
+		RSAPublicKey rsaKey = (RSAPublicKey) rsa.getPublic();
+		ECPublicKey ecKey = (ECPublicKey) ec.getPublic();
+		String jwks = """
+				{"keys": [
+				  {"kty": "RSA", "kid": "rsa-1", "use": "sig", "n": "%s", "e": "%s"},
+				  {"kty": "EC", "kid": "ec-1", "crv": "P-256", "x": "%s", "y": "%s"},
+				  {"kty": "RSA", "kid": "enc-1", "use": "enc", "n": "%s", "e": "%s"}
+				]}
+				""".formatted(unsigned(rsaKey.getModulus(), 0), unsigned(rsaKey.getPublicExponent(), 0),
+				unsigned(ecKey.getW().getAffineX(), 32), unsigned(ecKey.getW().getAffineY(), 32),
+				unsigned(rsaKey.getModulus(), 0), unsigned(rsaKey.getPublicExponent(), 0));
+		Path file = dir.resolve("jwks.json");
+		Files.writeString(file, jwks);
+
+		auth.setMode(Registry.AuthMode.LOCAL);
+		auth.setJwks(file.toUri().toString());
+		auth.setIssuer("https://auth.example.com");
+		auth.setAudience(List.of("gateway"));
+		verifier.refresh(auth.getJwks());
+	}
+
+	@AfterEach
+	void stop() {
+		verifier.stop();
+	}
+
+	private static String unsigned(BigInteger value, int length) {
+		byte[] bytes = value.toByteArray();
+		if (bytes.length > 1 && bytes[0] == 0) {
+			bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+		}
+		if (bytes.length < length) {
+			byte[] padded = new byte[length];
+			System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+			bytes = padded;
+		}
+		return BASE64.encodeToString(bytes);
+	}
+
+	private static String token(String alg, String kid, PrivateKey key, String jdkAlgorithm, String claims)
+			throws GeneralSecurityException {
+		String header = "{\"alg\":\"" + alg + "\",\"typ\":\"JWT\"" + (kid != null ? ",\"kid\":\"" + kid + "\"" : "") + "}";
+		String signed = BASE64.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "."
+				+ BASE64.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+		Signature signature = Signature.getInstance(jdkAlgorithm);
+		signature.initSign(key);
+		signature.update(signed.getBytes(StandardCharsets.US_ASCII));
+		return signed + "." + BASE64.encodeToString(signature.sign());
+	}
+
+	private static String claims(long expiresIn, String issuer, String audience) {
+		long now = System.currentTimeMillis() / 1000;
+		return "{\"sub\":\"u1\",\"iss\":\"" + issuer + "\",\"aud\":" + audience + ",\"iat\":" + now
+				+ ",\"exp\":" + (now + expiresIn) + "}";
+	}
+
+	private String rsaToken(String claims) throws GeneralSecurityException {
+		return token("RS256", "rsa-1", rsa.getPrivate(), "SHA256withRSA", claims);
+	}
+
+	@Test
+	void acceptsRsaAndEcSignedTokens() throws Exception {
+		String valid = claims(300, "https://auth.example.com", "[\"other\", \"gateway\"]");
+
+		assertEquals(JwtVerifier.Verdict.VALID, verifier.verify(rsaToken(valid), auth));
+		assertEquals(JwtVerifier.Verdict.VALID, verifier.verify(
+				token("ES256", "ec-1", ec.getPrivate(), "SHA256withECDSAinP1363Format", valid), auth));
+	}
+
+	@Test
+	void rejectsBadSignaturesAndClaims() throws Exception {
+		String valid = claims(300, "https://auth.example.com", "\"gateway\"");
+		String token = rsaToken(valid);
+		String tampered = token.substring(0, token.indexOf('.') + 1)
+				+ BASE64.encodeToString(valid.replace("u1", "admin").getBytes(StandardCharsets.UTF_8))
+				+ token.substring(token.lastIndexOf('.'));
+
+		assertEquals(JwtVerifier.Verdict.INVALID, verifier.verify(tampered, auth));
+		assertEquals(JwtVerifier.Verdict.INVALID, verifier.verify(rsaToken(claims(-60, "https://auth.example.com", "\"gateway\"")), auth));
+		assertEquals(JwtVerifier.Verdict.INVALID, verifier.verify(rsaToken(claims(300, "https://evil.example.com", "\"gateway\"")), auth));
+		assertEquals(JwtVerifier.Verdict.INVALID, verifier.verify(rsaToken(claims(300, "https://auth.example.com", "\"billing\"")), auth));
+		assertEquals(JwtVerifier.Verdict.INVALID, verifier.verify(
+				token("ES256", "rsa-1", ec.getPrivate(), "SHA256withECDSAinP1363Format", valid), auth));
+		assertEquals(JwtVerifier.Verdict.INVALID, verifier.verify(
+				BASE64.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+						+ BASE64.encodeToString(valid.getBytes(StandardCharsets.UTF_8)) + ".", auth));
+	}
+
+	@Test
+	void toleratesClockSkew() throws Exception {
+		assertEquals(JwtVerifier.Verdict.VALID, verifier.verify(rsaToken(claims(-10, "https://auth.example.com", "\"gateway\"")), auth));
+	}
+
+	@Test
+	void leavesUndecidableTokensToTheAuthService() throws Exception {
+		String valid = claims(300, "https://auth.example.com", "\"gateway\"");
+
+		assertEquals(JwtVerifier.Verdict.UNKNOWN, verifier.verify("opaque-session-token", auth));
+		assertEquals(JwtVerifier.Verdict.UNKNOWN, verifier.verify(
+				token("RS256", "rsa-2", rsa.getPrivate(), "SHA256withRSA", valid), auth));
+		assertEquals(JwtVerifier.Verdict.UNKNOWN, verifier.verify(
+				token("RS256", "enc-1", rsa.getPrivate(), "SHA256withRSA", valid), auth));
+	}
+}
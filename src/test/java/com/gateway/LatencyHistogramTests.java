@@ -0,0 +1,48 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTests {
+
+	@Test
+	void everyValueLandsInABucketThatContainsIt() {
+		for (long value = 0; value < 1_000_000; value++) {
+			int index = LatencyHistogram.index(value);
+			long lower = index == 0 ? 0 : LatencyHistogram.upperBound(index - 1) + 1;
+			long upper = LatencyHistogram.upperBound(index);
+			assertTrue(lower <= value && value <= upper, "value " + value);
+			assertTrue((upper - lower) * 8 <= Math.max(8, lower), "bucket of " + value + " too wide");
+		}
+	}
+
+	@Test
+	void quantilesStayWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1_000_000L);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getSumSeconds(), 0.001);
+		long median = histogram.quantileMicros(0.5);
+		long p99 = histogram.quantileMicros(0.99);
+		assertTrue(median >= 500_000 && median <= 500_000 * 1.125, "median " + median);
+		assertTrue(p99 >= 990_000 && p99 <= 990_000 * 1.125, "p99 " + p99);
+	}
+
+	@Test
+	void countsAtOrBelowBound() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(2_000);
+		histogram.record(3_000);
+		histogram.record(5_000_000_000L);
+
+		assertEquals(0, histogram.countAtOrBelow(1));
+		assertEquals(2, histogram.countAtOrBelow(1_000_000));
+		assertEquals(3, histogram.countAtOrBelow(10_000_000));
+		assertEquals(0, new LatencyHistogram().quantileMicros(0.99));
+	}
+}
@@ -0,0 +1,172 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class LoadBalancerTests {
+
+	private static Registry.Service service(Registry.LoadBalancing strategy, int... weights) {
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		service.setLoadBalancing(strategy);
+		for (int i = 0; i < weights.length; i++) {
+			Registry.Instance instance = new Registry.Instance();
+			instance.setHost("10.0.0." + i);
+			instance.setPort(8090);
+			instance.setWeight(weights[i]);
+			service.getInstances().add(instance);
+		}
+		return service;
+	}
+
+	@Test
+	void roundRobinFollowsWeights() {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		Registry.Service service = service(Registry.LoadBalancing.ROUND_ROBIN, 3, 1);
+
+		Map<String, Integer> picks = new HashMap<>();
+		for (int i = 0; i < 400; i++) {
+			picks.merge(loadBalancer.choose(service).getHost(), 1, Integer::sum);
+		}
+		assertEquals(300, picks.get("10.0.0.0"));
+		assertEquals(100, picks.get("10.0.0.1"));
+	}
+
+	@Test
+	void leastRequestsAvoidsBusyEndpoint() {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		Registry.Service service = service(Registry.LoadBalancing.LEAST_REQUESTS, 1, 1);
+		List<LoadBalancer.Endpoint> endpoints = loadBalancer.endpoints(service);
+
+		endpoints.get(0).acquire();
+		for (int i = 0; i < 10; i++) {
+			assertSame(endpoints.get(1), loadBalancer.choose(service));
+		}
+	}
+
+	@Test
+	void fallsBackToServiceHostAndPort() {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		Registry.Service service = service(Registry.LoadBalancing.POWER_OF_TWO);
+		service.setHost("localhost");
+		service.setPort(8090);
+
+		assertEquals("localhost:8090", loadBalancer.choose(service).getAddress());
+	}
+
+	private static void failTimes(LoadBalancer.Endpoint endpoint, int times) {
+		for (int i = 0; i < times; i++) {
+			endpoint.recordFailure();
+		}
+	}
+
+	@Test
+	void onlyGatewayErrorsCountAgainstAnEndpoint() {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		Registry.Service service = service(Registry.LoadBalancing.ROUND_ROBIN, 1, 1);
+		service.getOutlierDetection().setConsecutiveFailures(3);
+		LoadBalancer.Endpoint endpoint = loadBalancer.endpoints(service).get(0);
+
+		for (int i = 0; i < 10; i++) {
+			endpoint.recordResponse(500, 1_000_000);
+		}
+		assertTrue(endpoint.isAvailable());
+
+		endpoint.recordResponse(502, 1_000_000);
+		endpoint.recordResponse(503, 1_000_000);
+		endpoint.recordResponse(504, 1_000_000);
+		assertFalse(endpoint.isAvailable());
+	}
+
+	@Test
+	void lastAvailableEndpointIsNeverEjected() {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		Registry.Service single = service(Registry.LoadBalancing.ROUND_ROBIN, 1);
+		failTimes(loadBalancer.endpoints(single).get(0), 50);
+		assertNotNull(loadBalancer.choose(single));
+
+		LoadBalancer pairs = new LoadBalancer();
+		Registry.Service pair = service(Registry.LoadBalancing.ROUND_ROBIN, 1, 1);
+		List<LoadBalancer.Endpoint> endpoints = pairs.endpoints(pair);
+		Registry.HealthCheck healthCheck = new Registry.HealthCheck();
+		healthCheck.setUnhealthyThreshold(1);
+		endpoints.get(1).recordProbe(false, healthCheck);
+		failTimes(endpoints.get(0), 50);
+		assertSame(endpoints.get(0), pairs.choose(pair));
+	}
+
+	@Test
+	void ejectionsAreCappedByMaxEjectionPercent() {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		Registry.Service service = service(Registry.LoadBalancing.ROUND_ROBIN, 1, 1, 1, 1);
+		List<LoadBalancer.Endpoint> endpoints = loadBalancer.endpoints(service);
+
+		endpoints.forEach(endpoint -> failTimes(endpoint, 5));
+
+		assertEquals(2, endpoints.stream().filter(LoadBalancer.Endpoint::isAvailable).count());
+		for (int i = 0; i < 10; i++) {
+			assertTrue(loadBalancer.choose(service).isAvailable());
+		}
+	}
+
+	@Test
+	void ejectedEndpointIsAdmittedAgainWithGrowingBackoff() throws InterruptedException {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		Registry.Service service = service(Registry.LoadBalancing.ROUND_ROBIN, 1, 1);
+		service.getOutlierDetection().setConsecutiveFailures(1);
+		service.getOutlierDetection().setBaseEjectionTime(Duration.ofMillis(200));
+		LoadBalancer.Endpoint endpoint = loadBalancer.endpoints(service).get(0);
+
+		endpoint.recordFailure();
+		assertFalse(endpoint.isAvailable());
+		Thread.sleep(300);
+		assertTrue(endpoint.isAvailable());
+
+		endpoint.recordFailure();
+		Thread.sleep(300);
+		assertFalse(endpoint.isAvailable());
+		Thread.sleep(200);
+		assertTrue(endpoint.isAvailable());
+
+		endpoint.recordSuccess(1_000_000);
+		endpoint.recordFailure();
+		Thread.sleep(300);
+		assertTrue(endpoint.isAvailable());
+	}
+
+	@Test
+	void healthChecksFollowTheirThresholds() {
+		LoadBalancer loadBalancer = new LoadBalancer();
+		Registry.Service service = service(Registry.LoadBalancing.ROUND_ROBIN, 1, 1);
+		List<LoadBalancer.Endpoint> endpoints = loadBalancer.endpoints(service);
+		Registry.HealthCheck healthCheck = service.getHealthCheck();
+
+		endpoints.get(0).recordProbe(false, healthCheck);
+		endpoints.get(0).recordProbe(false, healthCheck);
+		endpoints.get(0).recordProbe(true, healthCheck);
+		endpoints.get(0).recordProbe(false, healthCheck);
+		endpoints.get(0).recordProbe(false, healthCheck);
+		assertTrue(endpoints.get(0).isHealthy());
+
+		endpoints.get(0).recordProbe(false, healthCheck);
+		assertFalse(endpoints.get(0).isHealthy());
+		for (int i = 0; i < 10; i++) {
+			assertSame(endpoints.get(1), loadBalancer.choose(service));
+		}
+
+		endpoints.get(0).recordProbe(true, healthCheck);
+		assertFalse(endpoints.get(0).isHealthy());
+		endpoints.get(0).recordProbe(true, healthCheck);
+		assertTrue(endpoints.get(0).isHealthy());
+	}
+}
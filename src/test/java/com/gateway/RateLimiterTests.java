@@ -0,0 +1,202 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+class RateLimiterTests {
+
+	private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+	/*
+	 * Local stand-in for a shared store, allows everything and records the bucket keys
+	 */
+	private static class RecordingStore implements RateLimitStore {
+		private final List<String> keys = new ArrayList<>();
+
+		@Override
+		public long acquire(String key, long intervalNanos, long burstNanos) {
+			keys.add(key);
+			return 0;
+		}
+	}
+
+	private static RateLimiter limiter(RateLimitStore store) {
+		StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("store", store));
+		return new RateLimiter(beans.getBeanProvider(RateLimitStore.class), new GatewayProperties(), new Utils(null, null, null, null),
+				new TrustedNetworks(new GatewayProperties()));
+	}
+
+	private static RouteMatch match(Registry.Service service) {
+		return service.getRoutes().isEmpty()
+				? RouteTable.compile(List.of(service)).match(service.getName(), "GET", "/api/x")
+				: RouteTable.compile(List.of(service)).match(service.getName(), "GET", service.getRoutes().get(0).getPath());
+	}
+
+	@Test
+	void allowsBurstThenSpacesRequests() {
+		try (LocalRateLimitStore store = new LocalRateLimitStore(Duration.ofMinutes(1))) {
+			long interval = SECOND / 10;
+			for (int i = 0; i < 5; i++) {
+				assertEquals(0, store.acquire("a", interval, interval * 5));
+			}
+			long wait = store.acquire("a", interval, interval * 5);
+			assertTrue(wait > 0 && wait <= interval, "wait " + wait);
+			assertEquals(0, store.acquire("b", interval, interval * 5));
+		}
+	}
+
+	@Test
+	void sweeperRunsOnceStarted() throws InterruptedException {
+		try (LocalRateLimitStore store = new LocalRateLimitStore(Duration.ofMillis(5))) {
+			store.acquire("short", 1_000_000, 1_000_000);
+			Thread.sleep(50);
+			assertEquals(1, store.size());
+			store.start();
+			for (int i = 0; i < 100 && store.size() > 0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, store.size());
+		}
+	}
+
+	@Test
+	void sweepsBucketsThatFilledUpAgain() throws InterruptedException {
+		try (LocalRateLimitStore store = new LocalRateLimitStore(Duration.ofMinutes(1))) {
+			store.acquire("short", 1_000_000, 1_000_000);
+			store.acquire("long", SECOND * 60, SECOND * 60);
+			Thread.sleep(5);
+			store.sweep();
+			assertEquals(1, store.size());
+		}
+	}
+
+	@Test
+	void rejectsOverServiceLimitWithRetryDelay() {
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		service.setDefaultExposure(Registry.Exposure.PUBLIC);
+		service.getRateLimit().setLimit(2);
+		service.getRateLimit().setPeriod(Duration.ofMinutes(1));
+
+		try (LocalRateLimitStore store = new LocalRateLimitStore(Duration.ofMinutes(1))) {
+			RateLimiter limiter = limiter(store);
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "/academic/api/x");
+			RouteMatch match = match(service);
+
+			assertEquals(0, limiter.check(match, request));
+			assertEquals(0, limiter.check(match, request));
+			assertTrue(limiter.check(match, request) > SECOND * 25);
+
+			MockHttpServletRequest other = new MockHttpServletRequest("GET", "/academic/api/x");
+			other.setRemoteAddr("10.0.0.9");
+			assertEquals(0, limiter.check(match, other));
+		}
+	}
+
+	@Test
+	void keysBucketsByRouteAndClient() {
+		Registry.Route route = new Registry.Route();
+		route.setPath("/api/institutes/:id");
+		route.setMethod("GET");
+		route.setExposure(Registry.Exposure.PROTECTED);
+		route.getRateLimit().setLimit(10);
+		route.getRateLimit().setKey(Registry.RateLimitKey.SUBJECT);
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		service.setDefaultExposure(Registry.Exposure.PROTECTED);
+		service.getRoutes().add(route);
+		service.getRateLimit().setLimit(100);
+		service.getRateLimit().setKey(Registry.RateLimitKey.HEADER);
+		service.getRateLimit().setHeader("X-Api-Key");
+
+		RecordingStore store = new RecordingStore();
+		RateLimiter limiter = limiter(store);
+		String payload = Base64.getUrlEncoder().withoutPadding()
+				.encodeToString("{\"sub\":\"user-42\"}".getBytes(StandardCharsets.UTF_8));
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/academic/api/institutes/1");
+		request.addHeader("Authorization", "Bearer header." + payload + ".signature");
+		request.addHeader("X-Api-Key", "key-1");
+
+		assertEquals(0, limiter.check(match(service), request));
+		assertEquals(List.of("academic|header:key-1"), store.keys);
+		assertEquals(0, limiter.checkVerified(match(service), request));
+		assertEquals(List.of("academic|header:key-1", "academic GET /api/institutes/:id|sub:user-42"), store.keys);
+	}
+
+	@Test
+	void subjectIsOnlyTrustedOnceVerified() {
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		service.setDefaultExposure(Registry.Exposure.PUBLIC);
+		service.getRateLimit().setLimit(10);
+		service.getRateLimit().setKey(Registry.RateLimitKey.SUBJECT);
+
+		RecordingStore store = new RecordingStore();
+		RateLimiter limiter = limiter(store);
+		for (String sub : List.of("forged-1", "forged-2")) {
+			String payload = Base64.getUrlEncoder().withoutPadding()
+					.encodeToString(("{\"sub\":\"" + sub + "\"}").getBytes(StandardCharsets.UTF_8));
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "/academic/api/x");
+			request.setRemoteAddr("203.0.113.7");
+			request.addHeader("Authorization", "Bearer header." + payload + ".signature");
+			limiter.check(match(service), request);
+			limiter.checkVerified(match(service), request);
+		}
+		assertEquals(List.of("academic|ip:203.0.113.7", "academic|ip:203.0.113.7"), store.keys);
+	}
+
+	@Test
+	void reactiveRequestsShareTheBucketsOfServletRequests() {
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		service.setDefaultExposure(Registry.Exposure.PROTECTED);
+		service.getRateLimit().setLimit(10);
+		service.getRateLimit().setKey(Registry.RateLimitKey.SUBJECT);
+
+		RecordingStore store = new RecordingStore();
+		RateLimiter limiter = limiter(store);
+		String payload = Base64.getUrlEncoder().withoutPadding()
+				.encodeToString("{\"sub\":\"user-42\"}".getBytes(StandardCharsets.UTF_8));
+		MockServerHttpRequest reactive = MockServerHttpRequest.get("/academic/api/x")
+				.remoteAddress(new InetSocketAddress("203.0.113.7", 443))
+				.header("Authorization", "Bearer header." + payload + ".signature").build();
+		MockHttpServletRequest servlet = new MockHttpServletRequest("GET", "/academic/api/x");
+		servlet.addHeader("Authorization", "Bearer header." + payload + ".signature");
+
+		assertEquals(0, limiter.check(match(service), reactive));
+		assertEquals(0, limiter.checkVerified(match(service), reactive));
+		assertEquals(0, limiter.checkVerified(match(service), servlet));
+		assertEquals(List.of("academic|sub:user-42", "academic|sub:user-42"), store.keys);
+
+		Registry.RateLimit limit = new Registry.RateLimit();
+		limit.setKey(Registry.RateLimitKey.HEADER);
+		limit.setHeader("X-Api-Key");
+		assertEquals("ip:203.0.113.7", limiter.clientKey(limit, reactive, false));
+	}
+
+	@Test
+	void fallsBackToAddressWithoutKey() {
+		RateLimiter limiter = limiter(new RecordingStore());
+		Registry.RateLimit limit = new Registry.RateLimit();
+		limit.setKey(Registry.RateLimitKey.HEADER);
+		limit.setHeader("X-Api-Key");
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setRemoteAddr("192.168.1.5");
+
+		assertEquals("ip:192.168.1.5", limiter.clientKey(limit, request, false));
+		assertEquals(TokenCache.hash("opaque"), RateLimiter.subject("opaque"));
+	}
+}
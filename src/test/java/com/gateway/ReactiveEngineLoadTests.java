@@ -0,0 +1,163 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Servlet engine vs reactive engine on the same traffic
+ * A stub upstream holds every request for UPSTREAM_DELAY_MS and answers BODY_SIZE bytes, in chunks
+ * The same burst of CLIENTS requests is sent through the gateway on Tomcat with platform threads,
+ * on Tomcat with virtual threads and on Netty with spring.main.web-application-type=reactive
+ * Printed per engine: answers that arrived whole, peak upstream concurrency, wall time, p50 and p99 latency
+ *
+ * Run with ./gradlew loadTest
+ */
+@Tag("load")
+class ReactiveEngineLoadTests {
+
+	private static final int CLIENTS = 400;
+	private static final int TOMCAT_THREADS = 50;
+	private static final int UPSTREAM_DELAY_MS = 300;
+	private static final int BODY_SIZE = 64 * 1024;
+
+	private HttpServer upstream;
+	private final byte[] body = new byte[BODY_SIZE];
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger peak = new AtomicInteger();
+
+	@BeforeEach
+	void startUpstream() throws IOException {
+		Arrays.fill(body, (byte) 'x');
+		upstream = HttpServer.create(new InetSocketAddress("localhost", 0), CLIENTS * 2);
+		upstream.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		upstream.createContext("/", exchange -> {
+			peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(UPSTREAM_DELAY_MS);
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream out = exchange.getResponseBody()) {
+					for (int offset = 0; offset < body.length; offset += 8192) {
+						out.write(body, offset, Math.min(8192, body.length - offset));
+						out.flush();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				inFlight.decrementAndGet();
+			}
+		});
+		upstream.start();
+	}
+
+	@AfterEach
+	void stopUpstream() {
+		upstream.stop(0);
+	}
+
+	@Test
+	void reactiveEngineMatchesServletEngine() throws Exception {
+		Result platform = run("servlet", "spring.threads.virtual.enabled=false");
+		Result virtual = run("servlet", "spring.threads.virtual.enabled=true");
+		Result reactive = run("reactive", "spring.threads.virtual.enabled=false");
+
+		System.out.printf("%-10s %8s %8s %10s %10s %10s%n", "engine", "ok", "peak", "wall ms", "p50 ms", "p99 ms");
+		print("platform", platform);
+		print("virtual", virtual);
+		print("reactive", reactive);
+
+		assertEquals(CLIENTS, platform.ok());
+		assertEquals(CLIENTS, virtual.ok());
+		assertEquals(CLIENTS, reactive.ok());
+		assertTrue(platform.peak() <= TOMCAT_THREADS, "platform peak " + platform.peak());
+		assertTrue(reactive.peak() > TOMCAT_THREADS * 2, "reactive peak " + reactive.peak());
+		assertTrue(reactive.wallMillis() < platform.wallMillis());
+	}
+
+	private static void print(String engine, Result result) {
+		System.out.printf("%-10s %8d %8d %10d %10.1f %10.1f%n", engine, result.ok(), result.peak(), result.wallMillis(),
+				result.latency().quantileMicros(0.5) / 1000.0, result.latency().quantileMicros(0.99) / 1000.0);
+	}
+
+	private Result run(String engine, String threads) throws Exception {
+		peak.set(0);
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(GatewayApplication.class)
+				.properties(
+						"server.port=0",
+						"spring.main.web-application-type=" + engine,
+						threads,
+						"server.tomcat.threads.max=" + TOMCAT_THREADS,
+						"server.tomcat.accept-count=" + CLIENTS * 2,
+						"gateway.access-log.enabled=false",
+						"services.list[0].name=stub",
+						"services.list[0].host=localhost",
+						"services.list[0].port=" + upstream.getAddress().getPort(),
+						"services.list[0].default-exposure=public",
+						"services.list[0].client.max-connections=" + CLIENTS,
+						"services.list[0].client.acquire-timeout=30s")
+				.run();
+		try {
+			int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+			URI uri = URI.create("http://localhost:" + port + "/stub/slow");
+
+			HttpClient client = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_1_1)
+					.executor(Executors.newVirtualThreadPerTaskExecutor())
+					.build();
+
+			LatencyHistogram latency = new LatencyHistogram();
+			long start = System.nanoTime();
+			List<Future<Boolean>> responses = new ArrayList<>();
+			try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+				for (int i = 0; i < CLIENTS; i++) {
+					responses.add(clients.submit(() -> {
+						long sent = System.nanoTime();
+						HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+								HttpResponse.BodyHandlers.ofByteArray());
+						latency.record(System.nanoTime() - sent);
+						return response.statusCode() == 200 && Arrays.equals(body, response.body());
+					}));
+				}
+			}
+			long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+			int ok = 0;
+			for (Future<Boolean> response : responses) {
+				if (response.get()) {
+					ok++;
+				}
+			}
+			return new Result(ok, peak.get(), wallMillis, latency);
+		} finally {
+			context.close();
+		}
+	}
+
+	private record Result(int ok, int peak, long wallMillis, LatencyHistogram latency) {
+	}
+}
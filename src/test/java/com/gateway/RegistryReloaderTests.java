@@ -0,0 +1,99 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+class RegistryReloaderTests {
+
+	private static final String YAML = """
+			services:
+			  list:
+			    - name: academic
+			      host: localhost
+			      port: 8090
+			      default-exposure: protected
+			      client:
+			        read-timeout: %s
+			      routes:
+			        - path: /api/institutes/:id
+			          method: GET
+			          exposure: public
+			    - name: auth
+			      host: localhost
+			      port: 5030
+			      default-exposure: private
+			""";
+
+	private final Registry registry = new Registry();
+	private final List<Object> events = new ArrayList<>();
+	private final RegistryReloader reloader = new RegistryReloader(registry, events::add, new GatewayProperties());
+
+	private static ByteArrayResource yaml(String text) {
+		return new ByteArrayResource(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void bindsYamlLikeStartup() throws Exception {
+		List<Registry.Service> services = RegistryReloader.load(yaml(YAML.formatted("10s")));
+
+		assertEquals(2, services.size());
+		Registry.Service academic = services.get(0);
+		assertEquals(Registry.Exposure.PROTECTED, academic.getDefaultExposure());
+		assertEquals(Duration.ofSeconds(10), academic.getClient().getReadTimeout());
+		assertEquals(Registry.Exposure.PUBLIC, academic.getRoutes().get(0).getExposure());
+	}
+
+	@Test
+	void swapsSnapshotAndReportsChangedServices() throws Exception {
+		reloader.reload(yaml(YAML.formatted("10s")));
+		RouteTable before = registry.getRouteTable();
+		Registry.Route route = before.findRoute("academic", "GET", "/api/institutes/1");
+
+		RegistryReloadedEvent event = reloader.reload(yaml(YAML.formatted("20s")));
+
+		assertEquals(Set.of("academic"), event.changed());
+		assertSame(event, events.get(events.size() - 1));
+		assertSame(route, before.findRoute("academic", "GET", "/api/institutes/1"));
+		assertEquals(Duration.ofSeconds(20), registry.getRouteTable().findService("academic").getClient().getReadTimeout());
+		assertEquals(2, registry.getList().size());
+	}
+
+	@Test
+	void keepsCurrentSnapshotWhenInvalid() throws Exception {
+		reloader.reload(yaml(YAML.formatted("10s")));
+		RouteTable current = registry.getRouteTable();
+
+		String invalid = YAML.formatted("10s").replace("path: /api/institutes/:id", "path: api/institutes/:id")
+				.replace("name: auth", "name: academic");
+		IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> reloader.reload(yaml(invalid)));
+
+		assertTrue(error.getMessage().contains("services.list[0].routes[0].path"), error.getMessage());
+		assertTrue(error.getMessage().contains("services.list[1].name academic is used twice"), error.getMessage());
+		assertSame(current, registry.getRouteTable());
+	}
+
+	@Test
+	void removedAndAddedServicesCountAsChanged() throws Exception {
+		reloader.reload(yaml(YAML.formatted("10s")));
+		String renamed = YAML.formatted("10s").replace("name: auth", "name: billing");
+
+		RegistryReloadedEvent event = reloader.reload(yaml(renamed));
+
+		assertEquals(Set.of("auth", "billing"), event.changed());
+		assertNull(registry.getRouteTable().findService("auth"));
+		assertNotNull(registry.getRouteTable().findService("billing"));
+	}
+}
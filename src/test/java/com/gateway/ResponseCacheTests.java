@@ -0,0 +1,202 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.Cookie;
+
+class ResponseCacheTests {
+
+	private final ResponseCache cache = new ResponseCache(new GatewayProperties());
+	private final Registry.Service service = service();
+	private final Registry.Route route = service.getRoutes().get(0);
+
+	/*
+	 * Upstream stand in, answers with the queued responses and records the forwarded headers
+	 */
+	private final List<ResponseEntity<?>> answers = new ArrayList<>();
+	private final List<HttpHeaders> forwarded = new ArrayList<>();
+
+	private static Registry.Service service() {
+		Registry.Route route = new Registry.Route();
+		route.setPath("/api/institutes/:id");
+		route.setMethod("GET");
+		route.setExposure(Registry.Exposure.PUBLIC);
+		route.getCache().setEnabled(true);
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		service.getRoutes().add(route);
+		return service;
+	}
+
+	private static ResponseEntity<StreamingResponseBody> answer(HttpStatus status, String body, String... headers) {
+		HttpHeaders responseHeaders = new HttpHeaders();
+		for (int i = 0; i < headers.length; i += 2) {
+			responseHeaders.add(headers[i], headers[i + 1]);
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		return ResponseEntity.status(status).headers(responseHeaders).body(out -> out.write(bytes));
+	}
+
+	private ResponseEntity<?> serve(MockHttpServletRequest request) throws IOException {
+		return cache.serve(service, route, "/api/institutes/42", request, customizer -> {
+			HttpHeaders headers = new HttpHeaders();
+			customizer.accept(headers);
+			forwarded.add(headers);
+			return answers.remove(0);
+		});
+	}
+
+	private static String body(ResponseEntity<?> response) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		((StreamingResponseBody) response.getBody()).writeTo(out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	private static MockHttpServletRequest get() {
+		return new MockHttpServletRequest("GET", "/academic/api/institutes/42");
+	}
+
+	@Test
+	void servesFreshAnswerWithoutUpstream() throws IOException {
+		answers.add(answer(HttpStatus.OK, "institute 42", HttpHeaders.CACHE_CONTROL, "max-age=60"));
+
+		assertEquals("institute 42", body(serve(get())));
+		ResponseEntity<?> cached = serve(get());
+
+		assertEquals(1, forwarded.size());
+		assertEquals(200, cached.getStatusCode().value());
+		assertEquals("institute 42", body(cached));
+		assertEquals("0", cached.getHeaders().getFirst(HttpHeaders.AGE));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	void revalidatesStaleEntryWithETag() throws IOException {
+		answers.add(answer(HttpStatus.OK, "institute 42", HttpHeaders.CACHE_CONTROL, "no-cache", HttpHeaders.ETAG, "\"v1\""));
+		answers.add(answer(HttpStatus.NOT_MODIFIED, ""));
+
+		body(serve(get()));
+		ResponseEntity<?> revalidated = serve(get());
+
+		assertEquals(2, forwarded.size());
+		assertEquals("\"v1\"", forwarded.get(1).getFirst(HttpHeaders.IF_NONE_MATCH));
+		assertEquals(200, revalidated.getStatusCode().value());
+		assertEquals("institute 42", body(revalidated));
+		assertEquals(1, cache.getRevalidations());
+	}
+
+	@Test
+	void answersClientValidatorWithNotModified() throws IOException {
+		answers.add(answer(HttpStatus.OK, "institute 42", HttpHeaders.CACHE_CONTROL, "max-age=60", HttpHeaders.ETAG, "\"v1\""));
+		MockHttpServletRequest first = get();
+		first.addHeader(HttpHeaders.IF_NONE_MATCH, "\"v0\"");
+		body(serve(first));
+
+		MockHttpServletRequest second = get();
+		second.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"v1\"");
+
+		assertNull(forwarded.get(0).getFirst(HttpHeaders.IF_NONE_MATCH));
+		assertEquals(304, serve(second).getStatusCode().value());
+	}
+
+	@Test
+	void doesNotStoreNoStorePrivateOrAuthorizedAnswers() throws IOException {
+		answers.add(answer(HttpStatus.OK, "a", HttpHeaders.CACHE_CONTROL, "no-store"));
+		answers.add(answer(HttpStatus.OK, "b", HttpHeaders.CACHE_CONTROL, "private, max-age=60"));
+		answers.add(answer(HttpStatus.OK, "c", HttpHeaders.CACHE_CONTROL, "max-age=60"));
+		answers.add(answer(HttpStatus.OK, "d", HttpHeaders.CACHE_CONTROL, "max-age=60"));
+
+		body(serve(get()));
+		body(serve(get()));
+		MockHttpServletRequest authorized = get();
+		authorized.addHeader(HttpHeaders.AUTHORIZATION, "Bearer token");
+		body(serve(authorized));
+
+		assertEquals("d", body(serve(get())));
+		assertEquals(4, forwarded.size());
+	}
+
+	@Test
+	void storesCookieAuthenticatedAnswersOnlyWhenShareable() throws IOException {
+		answers.add(answer(HttpStatus.OK, "alice", HttpHeaders.CACHE_CONTROL, "max-age=60"));
+		answers.add(answer(HttpStatus.OK, "bob", HttpHeaders.CACHE_CONTROL, "public, max-age=60"));
+
+		MockHttpServletRequest alice = get();
+		alice.setCookies(new Cookie("AuthToken", "alice-token"));
+		assertEquals("alice", body(serve(alice)));
+
+		MockHttpServletRequest bob = get();
+		bob.setCookies(new Cookie("AuthToken", "bob-token"));
+		assertEquals("bob", body(serve(bob)));
+		assertEquals("bob", body(serve(get())));
+		assertEquals(2, forwarded.size());
+	}
+
+	@Test
+	void keysOnVaryHeaders() throws IOException {
+		answers.add(answer(HttpStatus.OK, "json", HttpHeaders.CACHE_CONTROL, "max-age=60", HttpHeaders.VARY, "Accept"));
+		answers.add(answer(HttpStatus.OK, "xml", HttpHeaders.CACHE_CONTROL, "max-age=60", HttpHeaders.VARY, "Accept"));
+
+		MockHttpServletRequest json = get();
+		json.addHeader(HttpHeaders.ACCEPT, "application/json");
+		body(serve(json));
+
+		MockHttpServletRequest xml = get();
+		xml.addHeader(HttpHeaders.ACCEPT, "application/xml");
+		assertEquals("xml", body(serve(xml)));
+		assertEquals("xml", body(serve(xml)));
+		assertEquals(2, forwarded.size());
+	}
+
+	@Test
+	void defaultTtlAppliesWithoutUpstreamFreshness() {
+		MockHttpServletRequest request = get();
+		assertEquals(-1, ResponseCache.freshness(route, headers(HttpHeaders.CACHE_CONTROL, "private"), request));
+		assertEquals(0, ResponseCache.freshness(route, new HttpHeaders(), request));
+
+		route.getCache().setDefaultTtl(Duration.ofSeconds(30));
+		assertEquals(Duration.ofSeconds(30).toNanos(), ResponseCache.freshness(route, new HttpHeaders(), request));
+		assertEquals(Duration.ofSeconds(50).toNanos(), ResponseCache.freshness(route,
+				headers(HttpHeaders.CACHE_CONTROL, "max-age=60, s-maxage=\"70\"", HttpHeaders.AGE, "20"), request));
+	}
+
+	@Test
+	void onlyGetRequestsOfEnabledRoutesAreCacheable() {
+		MockHttpServletRequest noStore = get();
+		noStore.addHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+
+		assertTrue(cache.isCacheable(route, HttpMethod.GET, get()));
+		assertFalse(cache.isCacheable(route, HttpMethod.HEAD, get()));
+		assertFalse(cache.isCacheable(route, HttpMethod.GET, noStore));
+		assertFalse(cache.isCacheable(null, HttpMethod.GET, get()));
+		assertEquals(Map.of("max-age", "5", "public", ""), ResponseCache.directives(" Max-Age=5 , public"));
+	}
+
+	private static HttpHeaders headers(String... values) {
+		HttpHeaders headers = new HttpHeaders();
+		for (int i = 0; i < values.length; i += 2) {
+			headers.add(values[i], values[i + 1]);
+		}
+		return headers;
+	}
+}
@@ -0,0 +1,151 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+class ResponseCompressionTests {
+
+	private final ResponseCompression compression = new ResponseCompression(new GatewayProperties());
+	private final Registry.Route route = route();
+	private final byte[] json = "[{\"id\":1,\"name\":\"institute\"}]".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+	private static Registry.Route route() {
+		Registry.Route route = new Registry.Route();
+		route.setPath("/api/institutes");
+		route.setMethod("GET");
+		route.setExposure(Registry.Exposure.PUBLIC);
+		route.getCompression().setEnabled(true);
+		return route;
+	}
+
+	private ResponseEntity<StreamingResponseBody> answer(String... headers) {
+		HttpHeaders responseHeaders = new HttpHeaders();
+		responseHeaders.set(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8");
+		responseHeaders.setContentLength(json.length);
+		for (int i = 0; i < headers.length; i += 2) {
+			responseHeaders.set(headers[i], headers[i + 1]);
+		}
+		return ResponseEntity.ok().headers(responseHeaders).body(out -> {
+			out.write(json, 0, 1000);
+			out.flush();
+			out.write(json, 1000, json.length - 1000);
+		});
+	}
+
+	private static MockHttpServletRequest request(String acceptEncoding) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/academic/api/institutes");
+		if (acceptEncoding != null) {
+			request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+		}
+		return request;
+	}
+
+	private static byte[] body(ResponseEntity<?> response) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		((StreamingResponseBody) response.getBody()).writeTo(out);
+		return out.toByteArray();
+	}
+
+	@Test
+	void gzipsForClientsThatAcceptIt() throws IOException {
+		ResponseEntity<?> response = compression.apply(route, HttpMethod.GET, request("br, gzip, deflate"),
+				answer(HttpHeaders.ETAG, "\"v1\""));
+
+		assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(-1, response.getHeaders().getContentLength());
+		assertEquals("W/\"v1\"", response.getHeaders().getETag());
+		assertTrue(response.getHeaders().getVary().contains(HttpHeaders.ACCEPT_ENCODING));
+
+		byte[] compressed = body(response);
+		assertArrayEquals(json, new GZIPInputStream(new ByteArrayInputStream(compressed)).readAllBytes());
+		assertTrue(compressed.length < json.length / 10);
+		assertEquals(1, compression.getResponses());
+		assertEquals(json.length, compression.getBytesIn());
+		assertEquals(compressed.length, compression.getBytesOut());
+	}
+
+	@Test
+	void keepsAnUpstreamVaryOnAcceptEncoding() {
+		ResponseEntity<?> lower = compression.apply(route, HttpMethod.GET, request("gzip"), answer(HttpHeaders.VARY, "accept-encoding"));
+		assertEquals(List.of("accept-encoding"), lower.getHeaders().getVary());
+
+		ResponseEntity<?> any = compression.apply(route, HttpMethod.GET, request("gzip"), answer(HttpHeaders.VARY, "*"));
+		assertEquals(List.of("*"), any.getHeaders().getVary());
+
+		ResponseEntity<?> other = compression.apply(route, HttpMethod.GET, request("gzip"), answer(HttpHeaders.VARY, "Origin"));
+		assertEquals(List.of("Origin", HttpHeaders.ACCEPT_ENCODING), other.getHeaders().getVary());
+	}
+
+	@Test
+	void deflatesWhenPreferred() throws IOException {
+		ResponseEntity<?> response = compression.apply(route, HttpMethod.GET, request("gzip;q=0.5, deflate"), answer());
+
+		assertEquals("deflate", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertArrayEquals(json, new InflaterInputStream(new ByteArrayInputStream(body(response))).readAllBytes());
+	}
+
+	@Test
+	void neverCompressesTwice() throws IOException {
+		ResponseEntity<?> response = compression.apply(route, HttpMethod.GET, request("gzip"),
+				answer(HttpHeaders.CONTENT_ENCODING, "gzip"));
+
+		assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(json.length, response.getHeaders().getContentLength());
+		assertArrayEquals(json, body(response));
+	}
+
+	@Test
+	void leavesSmallOtherTypesAndDisabledRoutesAlone() throws IOException {
+		route.getCompression().setMinSize(DataSize.ofBytes(json.length + 1));
+		ResponseEntity<?> small = compression.apply(route, HttpMethod.GET, request("gzip"), answer());
+		assertNull(small.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertTrue(small.getHeaders().getVary().contains(HttpHeaders.ACCEPT_ENCODING));
+		assertArrayEquals(json, body(small));
+
+		route.getCompression().setMinSize(DataSize.ofBytes(0));
+		ResponseEntity<StreamingResponseBody> image = answer(HttpHeaders.CONTENT_TYPE, "image/png");
+		assertSame(image, compression.apply(route, HttpMethod.GET, request("gzip"), image));
+		ResponseEntity<StreamingResponseBody> noTransform = answer(HttpHeaders.CACHE_CONTROL, "public, no-transform");
+		assertSame(noTransform, compression.apply(route, HttpMethod.GET, request("gzip"), noTransform));
+		ResponseEntity<StreamingResponseBody> head = answer();
+		assertSame(head, compression.apply(route, HttpMethod.HEAD, request("gzip"), head));
+
+		route.getCompression().setEnabled(false);
+		ResponseEntity<StreamingResponseBody> disabled = answer();
+		assertSame(disabled, compression.apply(route, HttpMethod.GET, request("gzip"), disabled));
+		assertFalse(compression.getResponses() > 0);
+	}
+
+	@Test
+	void negotiatesByQuality() {
+		assertNull(ResponseCompression.negotiate(Collections.emptyEnumeration()));
+		assertNull(ResponseCompression.negotiate(Collections.enumeration(List.of("identity"))));
+		assertNull(ResponseCompression.negotiate(Collections.enumeration(List.of("gzip;q=0, deflate;q=0"))));
+		assertNull(ResponseCompression.negotiate(Collections.enumeration(List.of("*;q=0"))));
+		assertEquals("gzip", ResponseCompression.negotiate(Collections.enumeration(List.of("*"))));
+		assertEquals("gzip", ResponseCompression.negotiate(Collections.enumeration(List.of("deflate", "gzip"))));
+		assertEquals("deflate", ResponseCompression.negotiate(Collections.enumeration(List.of("gzip;q=0, *"))));
+		assertEquals("deflate", ResponseCompression.negotiate(Collections.enumeration(List.of("deflate;q=0.9, gzip;q=0.1"))));
+	}
+}
@@ -0,0 +1,106 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RouteTableTests {
+
+	private static Registry.Route route(String path, Registry.Exposure exposure) {
+		return route("GET", path, exposure);
+	}
+
+	private static Registry.Route route(String method, String path, Registry.Exposure exposure) {
+		Registry.Route route = new Registry.Route();
+		route.setPath(path);
+		route.setMethod(method);
+		route.setExposure(exposure);
+		return route;
+	}
+
+	private static Registry.Service service(String name, Registry.Route... routes) {
+		Registry.Service service = new Registry.Service();
+		service.setName(name);
+		service.setDefaultExposure(Registry.Exposure.PROTECTED);
+		service.getRoutes().addAll(List.of(routes));
+		return service;
+	}
+
+	@Test
+	void matchesLiteralAndParamSegments() {
+		Registry.Route byId = route("/api/institutes/:id", Registry.Exposure.PUBLIC);
+		Registry.Route students = route("/api/students", Registry.Exposure.PRIVATE);
+		RouteTable table = RouteTable.compile(List.of(service("academic", byId, students)));
+
+		assertSame(byId, table.findRoute("academic", "GET", "/api/institutes/42"));
+		assertSame(byId, table.findRoute("academic", "GET", "/api/institutes/42/"));
+		assertSame(students, table.findRoute("academic", "GET", "/api/students"));
+		assertNull(table.findRoute("academic", "GET", "/api/institutes"));
+		assertNull(table.findRoute("academic", "GET", "/api/institutes/42/courses"));
+		assertNull(table.findRoute("missing", "GET", "/api/students"));
+	}
+
+	@Test
+	void prefersLiteralOverParam() {
+		Registry.Route byId = route("/api/students/:id", Registry.Exposure.PROTECTED);
+		Registry.Route me = route("/api/students/me", Registry.Exposure.PUBLIC);
+		Registry.Route courses = route("/api/students/:id/courses", Registry.Exposure.PRIVATE);
+		RouteTable table = RouteTable.compile(List.of(service("academic", byId, me, courses)));
+
+		assertSame(me, table.findRoute("academic", "GET", "/api/students/me"));
+		assertSame(byId, table.findRoute("academic", "GET", "/api/students/7"));
+		assertSame(courses, table.findRoute("academic", "GET", "/api/students/me/courses"));
+	}
+
+	@Test
+	void agreesWithPatternMatcher() {
+		Validator validator = new Validator(new Registry());
+		String[] routes = { "/a/:x/c", "/a/b", "/:x", "/" };
+		String[] requests = { "/a/b/c", "/a/b", "/a/b/", "/a", "/", "", "/a/b/c/d", "/z/b/c" };
+
+		for (String path : routes) {
+			Registry.Route route = route(path, Registry.Exposure.PUBLIC);
+			RouteTable table = RouteTable.compile(List.of(service("s", route)));
+			for (String request : requests) {
+				assertEquals(validator.PatternMatcher(path, request), table.findRoute("s", "GET", request) == route,
+						path + " vs " + request);
+			}
+		}
+	}
+
+	@Test
+	void matchesOnMethod() {
+		Registry.Route list = route("GET", "/api/students", Registry.Exposure.PUBLIC);
+		Registry.Route create = route("POST", "/api/students", Registry.Exposure.PROTECTED);
+		Registry.Route me = route("GET", "/api/students/me", Registry.Exposure.PUBLIC);
+		Registry.Route update = route("PUT", "/api/students/:id", Registry.Exposure.PROTECTED);
+		Registry.Route any = route(null, "/api/health", Registry.Exposure.PUBLIC);
+		RouteTable table = RouteTable.compile(List.of(service("academic", list, create, me, update, any)));
+
+		assertSame(list, table.findRoute("academic", "GET", "/api/students"));
+		assertSame(create, table.findRoute("academic", "post", "/api/students"));
+		assertNull(table.findRoute("academic", "DELETE", "/api/students"));
+		assertSame(update, table.findRoute("academic", "PUT", "/api/students/me"));
+		assertSame(any, table.findRoute("academic", "DELETE", "/api/health"));
+	}
+
+	@Test
+	void extractsPathParams() {
+		Registry.Route courses = route("/api/students/:id/courses/:courseId", Registry.Exposure.PUBLIC);
+		RouteTable table = RouteTable.compile(List.of(service("academic", courses)));
+
+		RouteMatch match = table.match("academic", "GET", "/api/students/7/courses/cs101/");
+		assertSame(courses, match.getRoute());
+		assertEquals(Map.of("id", "7", "courseId", "cs101"), match.getParams());
+		assertEquals(Registry.Exposure.PUBLIC, match.getExposure());
+
+		RouteMatch miss = table.match("academic", "GET", "/api/unknown");
+		assertNull(miss.getRoute());
+		assertEquals(Registry.Exposure.PROTECTED, miss.getExposure());
+	}
+}
@@ -0,0 +1,110 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class TokenCacheTests {
+
+	private TokenCache cache(int maxEntries) {
+		GatewayProperties properties = new GatewayProperties();
+		properties.getAuthCache().setTtl(Duration.ofMinutes(1));
+		properties.getAuthCache().setNegativeTtl(Duration.ofMinutes(1));
+		properties.getAuthCache().setMaxEntries(maxEntries);
+		return new TokenCache(properties);
+	}
+
+	@Test
+	void cachesAcceptedAndRejectedTokens() {
+		TokenCache cache = cache(100);
+		AtomicInteger calls = new AtomicInteger();
+
+		assertTrue(cache.verify("good", () -> calls.incrementAndGet() > 0));
+		assertTrue(cache.verify("good", () -> calls.incrementAndGet() > 0));
+		assertFalse(cache.verify("bad", () -> calls.incrementAndGet() < 0));
+		assertFalse(cache.verify("bad", () -> calls.incrementAndGet() < 0));
+
+		assertEquals(2, calls.get());
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	void concurrentMissesShareOneCall() throws Exception {
+		TokenCache cache = cache(100);
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Future<?>[] results = new Future<?>[8];
+			for (int i = 0; i < results.length; i++) {
+				results[i] = executor.submit(() -> cache.verify("shared", () -> {
+					calls.incrementAndGet();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return true;
+				}));
+			}
+			Thread.sleep(100);
+			release.countDown();
+			for (Future<?> result : results) {
+				assertEquals(Boolean.TRUE, result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	void asyncCallersShareOneCallAndFailuresAreNotCached() throws Exception {
+		TokenCache cache = cache(100);
+		AtomicInteger calls = new AtomicInteger();
+		CompletableFuture<Boolean> pending = new CompletableFuture<>();
+
+		CompletableFuture<Boolean> first = cache.verifyAsync("shared", () -> {
+			calls.incrementAndGet();
+			return pending;
+		});
+		CompletableFuture<Boolean> second = cache.verifyAsync("shared", () -> {
+			calls.incrementAndGet();
+			return CompletableFuture.completedFuture(false);
+		});
+		assertFalse(first.isDone());
+		pending.complete(true);
+
+		assertTrue(first.get());
+		assertTrue(second.get());
+		assertTrue(cache.verify("shared", () -> false));
+		assertEquals(1, calls.get());
+
+		CompletableFuture<Boolean> failed = cache.verifyAsync("down",
+				() -> CompletableFuture.failedFuture(new IllegalStateException("auth down")));
+		assertTrue(failed.isCompletedExceptionally());
+		assertTrue(cache.verifyAsync("down", () -> CompletableFuture.completedFuture(true)).get());
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedEntries() {
+		TokenCache cache = cache(16);
+		for (int i = 0; i < 1000; i++) {
+			cache.verify("token-" + i, () -> true);
+		}
+		assertTrue(cache.getEvictions() > 0);
+	}
+}
@@ -0,0 +1,122 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+class TrustedNetworksTests {
+
+	private final IpRanges internal = IpRanges.of(new GatewayProperties().getTrust().getInternalNetworks());
+
+	private static TrustedNetworks networks(String... trustedProxies) {
+		GatewayProperties properties = new GatewayProperties();
+		properties.getTrust().setTrustedProxies(List.of(trustedProxies));
+		return new TrustedNetworks(properties);
+	}
+
+	private static MockHttpServletRequest request(String remoteAddr, String... forwarded) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/academic/internal/stats");
+		request.setRemoteAddr(remoteAddr);
+		for (String value : forwarded) {
+			request.addHeader("X-Forwarded-For", value);
+		}
+		return request;
+	}
+
+	@Test
+	void defaultNetworksCoverPrivateRanges() {
+		assertTrue(internal.contains("10.1.2.3"));
+		assertTrue(internal.contains("172.16.0.1"));
+		assertTrue(internal.contains("172.31.255.255"));
+		assertTrue(internal.contains("192.168.0.7"));
+		assertTrue(internal.contains("127.0.0.1"));
+		assertTrue(internal.contains("0:0:0:0:0:0:0:1"));
+		assertTrue(internal.contains("::1"));
+		assertTrue(internal.contains("fd12:3456:789a::1"));
+		assertTrue(internal.contains("::ffff:10.1.2.3"));
+
+		assertFalse(internal.contains("172.32.0.1"));
+		assertFalse(internal.contains("172.15.255.255"));
+		assertFalse(internal.contains("203.0.113.7"));
+		assertFalse(internal.contains("10.example.com"));
+		assertFalse(internal.contains("2001:db8::1"));
+		assertFalse(internal.contains("::ffff:203.0.113.7"));
+	}
+
+	@Test
+	void rejectsMalformedAddresses() {
+		for (String address : List.of("", "10.1.2", "10.1.2.3.4", "256.0.0.1", "10..2.3", "1::2::3", ":1", "1:", "1:2:3:4:5:6:7:8:9", "12345::")) {
+			assertFalse(internal.contains(address), address);
+		}
+		assertThrows(IllegalArgumentException.class, () -> IpRanges.of(List.of("10.0.0.0/33")));
+		assertThrows(IllegalArgumentException.class, () -> IpRanges.of(List.of("intranet.local/8")));
+		assertThrows(IllegalArgumentException.class, () -> IpRanges.of(List.of("10.0.0.0/-8")));
+		assertThrows(IllegalArgumentException.class, () -> IpRanges.of(List.of("fc00::/-7")));
+	}
+
+	@Test
+	void mergesOverlappingBlocks() {
+		IpRanges ranges = IpRanges.of(List.of("10.0.0.0/16", "10.0.128.0/17", "10.1.0.0/16", "2001:db8::/33", "2001:db8:8000::/33", "2001:db8::5"));
+
+		assertTrue(ranges.contains("10.0.200.1"));
+		assertTrue(ranges.contains("10.1.255.255"));
+		assertFalse(ranges.contains("10.2.0.0"));
+		assertTrue(ranges.contains("2001:db8:ffff::1"));
+		assertFalse(ranges.contains("2001:db9::"));
+	}
+
+	@Test
+	void clientBehindTrustedProxies() {
+		TrustedNetworks networks = networks("10.0.5.0/24");
+
+		assertEquals("203.0.113.7", networks.clientIp(request("10.0.5.1", "198.51.100.1, 203.0.113.7")));
+		assertEquals("203.0.113.7", networks.clientIp(request("10.0.5.1", "203.0.113.7, 10.0.5.2")));
+		assertEquals("203.0.113.7", networks.clientIp(request("10.0.5.1", "10.1.2.3", "203.0.113.7 ,10.0.5.2")));
+		assertEquals("10.0.5.3", networks.clientIp(request("10.0.5.1", "10.0.5.3, 10.0.5.2")));
+		assertEquals("10.0.5.1", networks.clientIp(request("10.0.5.1")));
+	}
+
+	@Test
+	void reactiveRequestsGetTheSameClient() {
+		TrustedNetworks networks = networks("10.0.5.0/24");
+		MockServerHttpRequest proxied = MockServerHttpRequest.get("/academic/internal/stats")
+				.remoteAddress(new InetSocketAddress("10.0.5.1", 41000))
+				.header("X-Forwarded-For", "10.1.2.3", "203.0.113.7 ,10.0.5.2")
+				.build();
+		MockServerHttpRequest direct = MockServerHttpRequest.get("/academic/internal/stats")
+				.remoteAddress(new InetSocketAddress("203.0.113.7", 41000))
+				.header("X-Forwarded-For", "10.1.2.3")
+				.build();
+
+		assertEquals("203.0.113.7", networks.clientIp(proxied));
+		assertEquals("203.0.113.7", networks.clientIp(direct));
+		assertEquals("", networks.clientIp(MockServerHttpRequest.get("/").build()));
+	}
+
+	@Test
+	void forwardedHeaderIsIgnoredFromUntrustedPeers() {
+		assertEquals("203.0.113.7", networks().clientIp(request("203.0.113.7", "10.1.2.3")));
+		assertEquals("203.0.113.7", networks("10.0.5.0/24").clientIp(request("203.0.113.7", "10.1.2.3")));
+		assertFalse(networks("10.0.5.0/24").isInternal(request("10.0.5.1", "10.1.2.3, 203.0.113.7"), null));
+	}
+
+	@Test
+	void serviceNetworksReplaceTheGatewayList() {
+		Registry.Service service = new Registry.Service();
+		service.setName("academic");
+		service.getInternalNetworks().add("10.20.0.0/16");
+		TrustedNetworks networks = networks();
+
+		assertTrue(networks.isInternal("10.20.1.1", service));
+		assertFalse(networks.isInternal("10.1.2.3", service));
+		assertTrue(networks.isInternal("10.1.2.3", null));
+	}
+}
@@ -0,0 +1,149 @@
+package com.gateway;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Concurrency ceiling of the gateway with platform worker threads vs virtual threads
+ * A stub upstream holds every request for UPSTREAM_DELAY_MS and records how many it holds at once
+ * The same burst of CLIENTS requests is sent through the gateway in both modes
+ * With platform threads the ceiling is server.tomcat.threads.max, with virtual threads it is the burst size
+ *
+ * Run with ./gradlew loadTest
+ */
+@Tag("load")
+class VirtualThreadLoadTests {
+
+	private static final int CLIENTS = 400;
+	private static final int TOMCAT_THREADS = 50;
+	private static final int UPSTREAM_DELAY_MS = 500;
+
+	private HttpServer upstream;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger peak = new AtomicInteger();
+
+	@BeforeEach
+	void startUpstream() throws IOException {
+		upstream = HttpServer.create(new InetSocketAddress("localhost", 0), CLIENTS * 2);
+		upstream.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		upstream.createContext("/", exchange -> {
+			peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(UPSTREAM_DELAY_MS);
+				byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				inFlight.decrementAndGet();
+			}
+		});
+		upstream.start();
+	}
+
+	@AfterEach
+	void stopUpstream() {
+		upstream.stop(0);
+	}
+
+	@Test
+	void virtualThreadsRaiseConcurrencyCeiling() throws Exception {
+		Result platform = run(false);
+		Result virtual = run(true);
+
+		System.out.printf("%-10s %10s %12s %12s%n", "mode", "ok", "peak", "wall ms");
+		System.out.printf("%-10s %10d %12d %12d%n", "platform", platform.ok(), platform.peak(), platform.wallMillis());
+		System.out.printf("%-10s %10d %12d %12d%n", "virtual", virtual.ok(), virtual.peak(), virtual.wallMillis());
+
+		assertEquals(CLIENTS, platform.ok());
+		assertEquals(CLIENTS, virtual.ok());
+		assertTrue(platform.peak() <= TOMCAT_THREADS, "platform peak " + platform.peak());
+		assertTrue(virtual.peak() > TOMCAT_THREADS * 2, "virtual peak " + virtual.peak());
+		assertTrue(virtual.wallMillis() < platform.wallMillis());
+	}
+
+	private Result run(boolean virtualThreads) throws Exception {
+		peak.set(0);
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(GatewayApplication.class)
+				.properties(
+						"server.port=0",
+						"spring.threads.virtual.enabled=" + virtualThreads,
+						"server.tomcat.threads.max=" + TOMCAT_THREADS,
+						"server.tomcat.accept-count=" + CLIENTS * 2,
+						"services.list[0].name=stub",
+						"services.list[0].host=localhost",
+						"services.list[0].port=" + upstream.getAddress().getPort(),
+						"services.list[0].default-exposure=public",
+						"services.list[0].client.max-connections=" + CLIENTS,
+						"services.list[0].client.acquire-timeout=30s")
+				.run();
+		try {
+			int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+			URI uri = URI.create("http://localhost:" + port + "/stub/slow");
+
+			HttpClient client = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_1_1)
+					.executor(Executors.newVirtualThreadPerTaskExecutor())
+					.build();
+
+			long start = System.nanoTime();
+			List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+			try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+				for (int i = 0; i < CLIENTS; i++) {
+					responses.add(clients.submit(() -> client.send(HttpRequest.newBuilder(uri).GET().build(),
+							HttpResponse.BodyHandlers.ofString())));
+				}
+			}
+			long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+			/*
+			 * An answer only counts when its body arrived intact
+			 */
+			int ok = 0;
+			for (Future<HttpResponse<String>> response : responses) {
+				try {
+					if (response.get().statusCode() == 200 && "ok".equals(response.get().body())) {
+						ok++;
+					}
+				} catch (ExecutionException e) {
+					// connection failed mid body, not an ok answer
+				}
+			}
+			return new Result(ok, peak.get(), wallMillis);
+		} finally {
+			context.close();
+		}
+	}
+
+	private record Result(int ok, int peak, long wallMillis) {
+	}
+}